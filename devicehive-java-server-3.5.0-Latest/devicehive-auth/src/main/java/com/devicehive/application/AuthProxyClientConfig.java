@@ -20,6 +20,7 @@ package com.devicehive.application;
  * #L%
  */
 
+import com.devicehive.api.CallbackExecutor;
 import com.devicehive.api.RequestResponseMatcher;
 import com.devicehive.proxy.AuthProxyClient;
 import com.devicehive.proxy.ProxyResponseHandler;
@@ -54,6 +55,18 @@ public class AuthProxyClientConfig {
     @Value("${response.topic.perfix}")
     private String responseTopicPrefix;
 
+    @Value("${rpc.client.response-timeout-ms:60000}")
+    private long responseTimeoutMs;
+
+    @Value("${rpc.client.callback.mode:ordered}")
+    private String callbackMode;
+
+    @Value("${rpc.client.callback.threads:16}")
+    private int callbackThreads;
+
+    @Value("${rpc.client.callback.queue-capacity:1024}")
+    private int callbackQueueCapacity;
+
     @PostConstruct
     private void init() {
         try {
@@ -75,7 +88,8 @@ public class AuthProxyClientConfig {
 
     @Bean
     public RequestResponseMatcher requestResponseMatcher() {
-        return new RequestResponseMatcher();
+        return new RequestResponseMatcher(responseTimeoutMs,
+                CallbackExecutor.forMode(callbackMode, callbackThreads, callbackQueueCapacity));
     }
 
     @Bean
@@ -24,6 +24,7 @@ import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.client.RpcClient;
 import com.devicehive.shim.config.KafkaRpcConfig;
 import com.devicehive.shim.kafka.client.KafkaRpcClient;
+import com.devicehive.api.CallbackExecutor;
 import com.devicehive.api.RequestResponseMatcher;
 import com.devicehive.shim.kafka.client.ServerResponseListener;
 import com.devicehive.shim.kafka.serializer.RequestSerializer;
@@ -101,14 +102,27 @@ public class AuthRpcClientConfig {
     @Value("${rpc.client.response-consumer.threads:3}")
     private int responseConsumerThreads;
 
+    @Value("${rpc.client.response-timeout-ms:60000}")
+    private long responseTimeoutMs;
+
+    @Value("${rpc.client.callback.mode:ordered}")
+    private String callbackMode;
+
+    @Value("${rpc.client.callback.threads:16}")
+    private int callbackThreads;
+
+    @Value("${rpc.client.callback.queue-capacity:1024}")
+    private int callbackQueueCapacity;
+
     @Bean
     public RequestResponseMatcher requestResponseMatcher() {
-        return new RequestResponseMatcher();
+        return new RequestResponseMatcher(responseTimeoutMs,
+                CallbackExecutor.forMode(callbackMode, callbackThreads, callbackQueueCapacity));
     }
 
     @Bean
     public Producer<String, Request> kafkaRequestProducer(Gson gson) {
-        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new RequestSerializer(gson));
+        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new RequestSerializer(kafkaRpcConfig.rpcCodec(gson)));
     }
 
     @Profile("!test")
@@ -139,7 +153,7 @@ public class AuthRpcClientConfig {
         ExecutorService executor = Executors.newFixedThreadPool(responseConsumerThreads);
         Properties consumerProps = kafkaRpcConfig.clientConsumerProps();
         return new ServerResponseListener(RESPONSE_TOPIC, responseConsumerThreads,
-                responseMatcher, consumerProps, executor, new ResponseSerializer(gson));
+                responseMatcher, consumerProps, executor, new ResponseSerializer(kafkaRpcConfig.rpcCodec(gson)));
     }
 
 }
@@ -22,16 +22,55 @@ package com.devicehive.application;
 
 import com.devicehive.model.eventbus.FilterRegistry;
 import com.devicehive.json.GsonFactory;
+import com.devicehive.service.history.HistoryStore;
+import com.devicehive.service.history.NoHistoryStore;
+import com.devicehive.service.history.SegmentLogHistoryStore;
+import com.devicehive.service.recent.RecentEntityStore;
 import com.devicehive.shim.api.server.MessageDispatcher;
 import com.google.gson.Gson;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import com.devicehive.eventbus.EventBus;
 import org.springframework.context.annotation.DependsOn;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class BackendConfig {
 
+    @Value("${eventbus.fanout.grouped:false}")
+    private boolean groupedFanOut;
+
+    @Value("${history.store:none}")
+    private String historyStoreType;
+
+    @Value("${history.path:history}")
+    private String historyPath;
+
+    @Value("${history.segment-size-mb:64}")
+    private int historySegmentSizeMb;
+
+    @Value("${history.partition-minutes:60}")
+    private long historyPartitionMinutes;
+
+    @Value("${history.retention-hours:168}")
+    private long historyRetentionHours;
+
+    @Value("${history.queue-capacity:65536}")
+    private int historyQueueCapacity;
+
+    @Value("${recent.enabled:false}")
+    private boolean recentEnabled;
+
+    @Value("${recent.capacity-per-device:128}")
+    private int recentCapacity;
+
+    @Value("${recent.retention-minutes:60}")
+    private long recentRetentionMinutes;
+
     @Bean
     public Gson gson() {
         return GsonFactory.createGson();
@@ -40,6 +79,25 @@ public class BackendConfig {
     @Bean
     @DependsOn("filterRegistry")
     public EventBus eventBus(MessageDispatcher dispatcher, FilterRegistry filterRegistry) {
-        return new EventBus(dispatcher, filterRegistry);
+        return new EventBus(dispatcher, filterRegistry, groupedFanOut);
+    }
+
+    @Bean(destroyMethod = "close")
+    public RecentEntityStore recentEntityStore() {
+        return new RecentEntityStore(recentEnabled ? recentCapacity : 0, TimeUnit.MINUTES.toMillis(recentRetentionMinutes));
+    }
+
+    @Bean(destroyMethod = "close")
+    public HistoryStore historyStore(Gson gson) throws IOException {
+        switch (historyStoreType) {
+            case "none":
+                return new NoHistoryStore();
+            case "segment-log":
+                return new SegmentLogHistoryStore(Paths.get(historyPath), historySegmentSizeMb << 20,
+                        TimeUnit.MINUTES.toMillis(historyPartitionMinutes), TimeUnit.HOURS.toMillis(historyRetentionHours),
+                        historyQueueCapacity, gson);
+            default:
+                throw new IllegalArgumentException("Unknown history store: " + historyStoreType);
+        }
     }
 }
@@ -28,6 +28,8 @@ import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.MessageDispatcher;
 import com.devicehive.vo.DeviceVO;
 
+import java.util.*;
+
 /**
  * Central class for interaction with devicehive-backend subscription mechanism.
  * Provides basic interfaces and operations for subscription, unsubscription and publishing of events.
@@ -36,14 +38,26 @@ public class EventBus {
 
     private final FilterRegistry registry;
     private final MessageDispatcher dispatcher;
+    private final boolean groupedFanOut;
 
     /**
      * Creates new instance of EventBus
      * @param dispatcher - interface, that controls message delivery strategy
      */
     public EventBus(MessageDispatcher dispatcher, FilterRegistry registry) {
+        this(dispatcher, registry, false);
+    }
+
+    /**
+     * Creates new instance of EventBus
+     * @param dispatcher - interface, that controls message delivery strategy
+     * @param groupedFanOut - if true, subscribers sharing the same replyTo topic receive one grouped response
+     *                      carrying all their correlation ids instead of a response per subscriber
+     */
+    public EventBus(MessageDispatcher dispatcher, FilterRegistry registry, boolean groupedFanOut) {
         this.dispatcher = dispatcher;
         this.registry = registry;
+        this.groupedFanOut = groupedFanOut;
     }
 
     public void subscribe(Filter filter, Subscriber subscriber) {
@@ -54,18 +68,46 @@ public class EventBus {
         registry.unregister(subscriber);
     }
 
+    public void unsubscribeAll(Collection<Long> subscriptionIds) {
+        registry.unregisterAll(subscriptionIds);
+    }
+
     public void publish(Event event) {
-        event.getApplicableFilters()
-                .stream()
-                .flatMap(filter -> registry.getSubscribers(filter).stream())
-                .forEach(subscriber -> {
-                    Response response = Response.newBuilder()
-                            .withBody(event)
-                            .withCorrelationId(subscriber.getCorrelationId())
-                            .withLast(false)
-                            .buildSuccess();
-                    dispatcher.send(subscriber.getReplyTo(), response);
-                });
+        if (groupedFanOut) {
+            publishGrouped(event);
+            return;
+        }
+        for (Filter filter : event.getApplicableFilters()) {
+            registry.forEachSubscriber(filter, subscriber -> {
+                Response response = Response.newBuilder()
+                        .withBody(event)
+                        .withCorrelationId(subscriber.getCorrelationId())
+                        .withLast(false)
+                        .buildSuccess();
+                dispatcher.send(subscriber.getReplyTo(), response);
+            });
+        }
+    }
+
+    private void publishGrouped(Event event) {
+        Map<String, List<String>> correlationIdsByReplyTo = new HashMap<>();
+        for (Filter filter : event.getApplicableFilters()) {
+            registry.forEachSubscriber(filter, subscriber ->
+                    correlationIdsByReplyTo.computeIfAbsent(subscriber.getReplyTo(), k -> new ArrayList<>())
+                            .add(subscriber.getCorrelationId()));
+        }
+
+        correlationIdsByReplyTo.forEach((replyTo, correlationIds) -> {
+            Response.Builder<Event> builder = Response.<Event>newBuilder()
+                    .withBody(event)
+                    .withLast(false);
+            if (correlationIds.size() == 1) {
+                builder.withCorrelationId(correlationIds.get(0));
+            } else {
+                builder.withCorrelationIds(correlationIds);
+            }
+            dispatcher.send(replyTo, builder.buildSuccess());
+        });
     }
 
     public void unsubscribeDevice(DeviceVO device) {
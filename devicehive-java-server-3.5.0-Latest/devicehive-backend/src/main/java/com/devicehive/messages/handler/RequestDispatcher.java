@@ -21,6 +21,7 @@ package com.devicehive.messages.handler;
  */
 
 import com.devicehive.application.RequestHandlersMapper;
+import com.devicehive.exceptions.HiveException;
 import com.devicehive.shim.api.Action;
 import com.devicehive.model.rpc.ErrorResponse;
 import com.devicehive.shim.api.Request;
@@ -34,6 +35,8 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Component("request-dispatcher")
 public class RequestDispatcher implements RequestHandler {
@@ -49,19 +52,38 @@ public class RequestDispatcher implements RequestHandler {
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Response handle(Request request) {
-        final Action action = request.getBody().getAction();
+        return handleAsync(request).join();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Response> handleAsync(Request request) {
+        final Action action = request.getAction();
+        CompletableFuture<Response> response;
         try {
-            return Optional.ofNullable(requestHandlersMapper.requestHandlerMap().get(action))
-                    .map(handler -> handler.handle(request))
+            response = Optional.ofNullable(requestHandlersMapper.requestHandlerMap().get(action))
+                    .map(handler -> handler.handleAsync(request))
                     .orElseThrow(() -> new RuntimeException("Action '" + action + "' is not supported."));
         } catch (Exception e) {
-            logger.error("Unable to handle request.", e);
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        return response.exceptionally(e -> {
+            final Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            // hive exceptions carry status of the failure, client errors are reported to the caller as they are
+            final int status = cause instanceof HiveException
+                    ? ((HiveException) cause).getCode()
+                    : HttpStatus.INTERNAL_SERVER_ERROR.value();
+            if (status >= HttpStatus.INTERNAL_SERVER_ERROR.value()) {
+                logger.error("Unable to handle request.", cause);
+            } else {
+                logger.debug("Request rejected with status {}: {}", status, cause.getMessage());
+            }
             return Response.newBuilder()
-                    .withBody(new ErrorResponse(e.getMessage()))
+                    .withBody(new ErrorResponse(cause.getMessage()))
                     .withLast(true)
-                    .buildFailed(HttpStatus.INTERNAL_SERVER_ERROR.value());
-        }
+                    .buildFailed(status);
+        });
     }
 }
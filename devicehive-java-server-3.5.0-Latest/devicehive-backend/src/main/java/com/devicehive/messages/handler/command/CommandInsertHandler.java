@@ -32,6 +32,8 @@ import com.devicehive.shim.api.server.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class CommandInsertHandler implements RequestHandler {
 
@@ -50,15 +52,23 @@ public class CommandInsertHandler implements RequestHandler {
 
     @Override
     public Response handle(Request request) {
+        return handleAsync(request).join();
+    }
+
+    /**
+     * Responds once the command is written to hazelcast, without blocking the worker until then.
+     */
+    @Override
+    public CompletableFuture<Response> handleAsync(Request request) {
         DeviceCommand deviceCommand = request.getBody().cast(CommandInsertRequest.class).getDeviceCommand();
         CommandEvent commandEvent = new CommandEvent(deviceCommand);
 
         eventBus.publish(commandEvent);
-        hazelcastService.store(deviceCommand);
 
         CommandInsertResponse payload = new CommandInsertResponse(deviceCommand);
-        return Response.newBuilder()
-                .withBody(payload)
-                .buildSuccess();
+        return hazelcastService.storeAsync(deviceCommand)
+                .thenApply(stored -> Response.newBuilder()
+                        .withBody(payload)
+                        .buildSuccess());
     }
 }
@@ -21,33 +21,37 @@ package com.devicehive.messages.handler.command;
  */
 
 import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.SearchCursor;
 import com.devicehive.model.rpc.CommandSearchRequest;
 import com.devicehive.model.rpc.CommandSearchResponse;
 import com.devicehive.service.HazelcastService;
-import com.devicehive.service.helpers.CommandResponseFilterAndSort;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 
-import static com.devicehive.service.helpers.CommandResponseFilterAndSort.buildDeviceCommandComparator;
-import static com.devicehive.service.helpers.CommandResponseFilterAndSort.getTotal;
-import static com.devicehive.service.helpers.CommandResponseFilterAndSort.orderAndLimit;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.buildOrder;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.getResultWindow;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.nextCursor;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.parseCursor;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.skip;
 
 @Component
 public class CommandSearchHandler implements RequestHandler {
 
     private HazelcastService hazelcastService;
 
+    @Value("${search.max-result-window:10000}")
+    private int maxResultWindow;
+
     @Autowired
     public void setHazelcastService(HazelcastService hazelcastService) {
         this.hazelcastService = hazelcastService;
@@ -78,26 +82,25 @@ public class CommandSearchHandler implements RequestHandler {
 
     private CommandSearchResponse searchMultipleCommands(CommandSearchRequest searchRequest) {
         final CommandSearchResponse commandSearchResponse = new CommandSearchResponse();
+        final HazelcastEntityComparator order = buildOrder(searchRequest.getSortField(), searchRequest.getSortOrder(),
+                DeviceCommand.class);
+        final SearchCursor cursor = parseCursor(searchRequest.getCursor(), order);
+        final int resultWindow = getResultWindow(searchRequest.getSkip(), searchRequest.getTake(), maxResultWindow);
         final Collection<DeviceCommand> commands = hazelcastService.find(
                 searchRequest.getDeviceIds(),
                 searchRequest.getNames(),
-                getTotal(searchRequest.getSkip(), searchRequest.getTake()),
+                resultWindow,
                 searchRequest.getTimestampStart(),
                 searchRequest.getTimestampEnd(),
                 searchRequest.isReturnUpdated(),
                 searchRequest.getStatus(),
+                order,
+                cursor,
                 DeviceCommand.class);
-        
-        final Comparator<DeviceCommand> comparator = buildDeviceCommandComparator(searchRequest.getSortField());
-        
-        String sortOrder = searchRequest.getSortOrder();
-        final Boolean reverse = sortOrder == null ? null : "desc".equalsIgnoreCase(sortOrder);
-
-        final List<DeviceCommand> sortedDeviceCommands = orderAndLimit(new ArrayList<>(commands),
-                        comparator, reverse, searchRequest.getSkip(), searchRequest.getTake());
-        
-        commandSearchResponse.setCommands(new ArrayList<>(sortedDeviceCommands));
+
+        commandSearchResponse.setCommands(skip(commands, searchRequest.getSkip()));
+        commandSearchResponse.setCursor(nextCursor(commands, resultWindow, order));
         return commandSearchResponse;
     }
-    
+
 }
@@ -31,6 +31,8 @@ import com.devicehive.shim.api.server.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class CommandUpdateHandler implements RequestHandler {
 
@@ -49,11 +51,19 @@ public class CommandUpdateHandler implements RequestHandler {
 
     @Override
     public Response handle(Request request) {
-        final DeviceCommand command = request.getBody().cast(CommandUpdateRequest.class).getDeviceCommand();
-        hazelcastService.store(command);
-
-        eventBus.publish(new CommandUpdateEvent(command));
+        return handleAsync(request).join();
+    }
 
-        return Response.newBuilder().buildSuccess();
+    /**
+     * Publishes the update and responds once the command is written to hazelcast, without blocking the worker until then.
+     */
+    @Override
+    public CompletableFuture<Response> handleAsync(Request request) {
+        final DeviceCommand command = request.getBody().cast(CommandUpdateRequest.class).getDeviceCommand();
+        return hazelcastService.storeAsync(command)
+                .thenApply(stored -> {
+                    eventBus.publish(new CommandUpdateEvent(command));
+                    return Response.newBuilder().buildSuccess();
+                });
     }
 }
@@ -32,6 +32,8 @@ import com.devicehive.shim.api.server.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class NotificationInsertHandler implements RequestHandler {
 
@@ -50,15 +52,23 @@ public class NotificationInsertHandler implements RequestHandler {
 
     @Override
     public Response handle(Request request) {
+        return handleAsync(request).join();
+    }
+
+    /**
+     * Responds once the notification is written to hazelcast, without blocking the worker until then.
+     */
+    @Override
+    public CompletableFuture<Response> handleAsync(Request request) {
         DeviceNotification notification = ((NotificationInsertRequest) request.getBody()).getDeviceNotification();
         NotificationEvent notificationEvent = new NotificationEvent(notification);
 
         eventBus.publish(notificationEvent);
-        hazelcastService.store(notification);
 
         NotificationInsertResponse payload = new NotificationInsertResponse(notification);
-        return Response.newBuilder()
-                .withBody(payload)
-                .buildSuccess();
+        return hazelcastService.storeAsync(notification)
+                .thenApply(stored -> Response.newBuilder()
+                        .withBody(payload)
+                        .buildSuccess());
     }
 }
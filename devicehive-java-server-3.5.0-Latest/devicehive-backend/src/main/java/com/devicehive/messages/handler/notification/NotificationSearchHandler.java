@@ -21,33 +21,37 @@ package com.devicehive.messages.handler.notification;
  */
 
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.SearchCursor;
 import com.devicehive.model.rpc.NotificationSearchRequest;
 import com.devicehive.model.rpc.NotificationSearchResponse;
 import com.devicehive.service.HazelcastService;
-import com.devicehive.service.helpers.CommandResponseFilterAndSort;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.server.RequestHandler;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 
-import static com.devicehive.service.helpers.CommandResponseFilterAndSort.buildDeviceNotificationComparator;
-import static com.devicehive.service.helpers.CommandResponseFilterAndSort.getTotal;
-import static com.devicehive.service.helpers.CommandResponseFilterAndSort.orderAndLimit;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.buildOrder;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.getResultWindow;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.nextCursor;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.parseCursor;
+import static com.devicehive.service.helpers.CommandResponseFilterAndSort.skip;
 
 @Component
 public class NotificationSearchHandler implements RequestHandler {
 
     private HazelcastService hazelcastService;
 
+    @Value("${search.max-result-window:10000}")
+    private int maxResultWindow;
+
     @Autowired
     public void setHazelcastService(HazelcastService hazelcastService) {
         this.hazelcastService = hazelcastService;
@@ -67,25 +71,24 @@ public class NotificationSearchHandler implements RequestHandler {
     }
 
     private NotificationSearchResponse searchMultipleNotifications(NotificationSearchRequest searchRequest) {
-        //TODO [rafa] has response is quite bad, instead we should separate command and reply into two separate collections.
+        final HazelcastEntityComparator order = buildOrder(searchRequest.getSortField(), searchRequest.getSortOrder(),
+                DeviceNotification.class);
+        final SearchCursor cursor = parseCursor(searchRequest.getCursor(), order);
+        final int resultWindow = getResultWindow(searchRequest.getSkip(), searchRequest.getTake(), maxResultWindow);
         final Collection<DeviceNotification> notifications = hazelcastService.find(
                 searchRequest.getDeviceIds(),
                 searchRequest.getNames(),
-                getTotal(searchRequest.getSkip(), searchRequest.getTake()),
+                resultWindow,
                 searchRequest.getTimestampStart(),
                 searchRequest.getTimestampEnd(),
                 false,
                 null,
+                order,
+                cursor,
                 DeviceNotification.class);
 
-        final Comparator<DeviceNotification> comparator = buildDeviceNotificationComparator(searchRequest.getSortField());
-        String sortOrder = searchRequest.getSortOrder();
-        final Boolean reverse = sortOrder == null ? null : "desc".equalsIgnoreCase(sortOrder);
-
-        final List<DeviceNotification> sortedDeviceNotifications = orderAndLimit(new ArrayList<>(notifications),
-                comparator, reverse, searchRequest.getSkip(), searchRequest.getTake());
-
-        return new NotificationSearchResponse(new ArrayList<>(sortedDeviceNotifications));
+        return new NotificationSearchResponse(skip(notifications, searchRequest.getSkip()),
+                nextCursor(notifications, resultWindow, order));
     }
 
     private NotificationSearchResponse searchSingleNotificationByDeviceAndId(long id, String deviceId) {
@@ -0,0 +1,158 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.HazelcastEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind stage of hazelcast writes. Callers enqueue entities and get a future, which completes once
+ * the batch holding the entity is written. A single flusher thread writes batches of up to {@code batchSize}
+ * entities, waiting at most {@code flushIntervalMillis} after the first entity of a batch for more to arrive.
+ * Entities are written in the order they were enqueued, so that later versions of an entity win.
+ */
+class EntityWriteBatcher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EntityWriteBatcher.class);
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private static final class Pending {
+        private final HazelcastEntity entity;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Pending(HazelcastEntity entity) {
+            this.entity = entity;
+        }
+    }
+
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Consumer<List<HazelcastEntity>> writer;
+    private final Thread flusher;
+
+    private volatile boolean running = true;
+
+    EntityWriteBatcher(int batchSize, long flushIntervalMillis, int queueCapacity, Consumer<List<HazelcastEntity>> writer) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.writer = writer;
+        this.flusher = new Thread(this::run, "hazelcast-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Enqueues entity, blocking while the queue is full.
+     */
+    CompletableFuture<Void> submit(HazelcastEntity entity) {
+        final Pending pending = new Pending(entity);
+        if (!running) {
+            pending.future.completeExceptionally(new IllegalStateException("Hazelcast writer is closed"));
+            return pending.future;
+        }
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(e);
+        }
+        return pending.future;
+    }
+
+    int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        final List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                final Pending first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                collect(batch);
+                flush(batch);
+            } catch (InterruptedException e) {
+                logger.warn("Hazelcast writer interrupted");
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Adds entities to the batch until it is full or flush interval elapses. Interrupted collecting ends the batch,
+     * so that entities already taken from the queue are still written.
+     */
+    private void collect(List<Pending> batch) {
+        final long deadline = System.nanoTime() + flushIntervalNanos;
+        try {
+            while (batch.size() < batchSize) {
+                queue.drainTo(batch, batchSize - batch.size());
+                final long remaining = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || remaining <= 0) {
+                    return;
+                }
+                final Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+                batch.add(next);
+            }
+        } catch (InterruptedException e) {
+            logger.warn("Hazelcast writer interrupted, flushing batch of {} entities", batch.size());
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        try {
+            writer.accept(batch.stream().map(pending -> pending.entity).collect(Collectors.toList()));
+            batch.forEach(pending -> pending.future.complete(null));
+        } catch (Exception e) {
+            logger.error("Unable to write batch of {} entities to hazelcast", batch.size(), e);
+            batch.forEach(pending -> pending.future.completeExceptionally(e));
+        }
+    }
+}
@@ -22,9 +22,15 @@ package com.devicehive.service;
 
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.DevicePartitionQuery;
 import com.devicehive.model.HazelcastEntity;
 import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.HazelcastEntityKey;
+import com.devicehive.model.SearchCursor;
 import com.devicehive.service.helpers.HazelcastHelper;
+import com.devicehive.service.history.HistoryFilter;
+import com.devicehive.service.history.HistoryStore;
+import com.devicehive.service.recent.RecentEntityStore;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.IMap;
 import com.hazelcast.query.PagingPredicate;
@@ -32,13 +38,16 @@ import com.hazelcast.query.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
-
-import static com.devicehive.model.enums.SearchableField.LAST_UPDATED;
-import static com.devicehive.model.enums.SearchableField.TIMESTAMP;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 public class HazelcastService {
@@ -46,43 +55,114 @@ public class HazelcastService {
 
     private static final String NOTIFICATIONS_MAP = "NOTIFICATIONS-MAP";
     private static final String COMMANDS_MAP = "COMMANDS-MAP";
+    private static final String DEVICE_QUERIES_EXECUTOR = "DEVICE-QUERIES";
+    private static final HazelcastEntityComparator DEFAULT_ORDER = new HazelcastEntityComparator();
 
     private final HazelcastInstance hazelcastClient;
 
     private final HazelcastHelper hazelcastHelper;
 
-    private Map<Class, IMap<String, HazelcastEntity>> mapsHolder = new HashMap<>(2);
+    private final HistoryStore historyStore;
+
+    private final RecentEntityStore recentEntityStore;
+
+    /**
+     * Period for which entities are guaranteed to be kept in hazelcast maps.
+     * Searches starting earlier than that are also answered from the history store, searches without
+     * start time are answered from hazelcast only, so that they never scan the whole history.
+     */
+    @Value("${history.hot-window-seconds:120}")
+    private long hotWindowSeconds;
+
+    @Value("${hazelcast.write-behind.enabled:true}")
+    private boolean writeBehindEnabled;
+
+    @Value("${hazelcast.write-behind.batch-size:256}")
+    private int writeBehindBatchSize;
+
+    @Value("${hazelcast.write-behind.flush-interval-ms:2}")
+    private long writeBehindFlushIntervalMs;
+
+    @Value("${hazelcast.write-behind.queue-capacity:10000}")
+    private int writeBehindQueueCapacity;
+
+    private EntityWriteBatcher writeBatcher;
+
+    private Map<Class, IMap<HazelcastEntityKey, HazelcastEntity>> mapsHolder = new HashMap<>(2);
 
     @Autowired
-    public HazelcastService(HazelcastInstance hazelcastClient, HazelcastHelper hazelcastHelper) {
+    public HazelcastService(HazelcastInstance hazelcastClient, HazelcastHelper hazelcastHelper, HistoryStore historyStore,
+                            RecentEntityStore recentEntityStore) {
         this.hazelcastClient = hazelcastClient;
         this.hazelcastHelper = hazelcastHelper;
+        this.historyStore = historyStore;
+        this.recentEntityStore = recentEntityStore;
     }
 
     @PostConstruct
     protected void init() {
-        final IMap<String, HazelcastEntity> notificationsMap = hazelcastClient.getMap(NOTIFICATIONS_MAP);
-        notificationsMap.addIndex(TIMESTAMP.getField(), true);
+        final IMap<HazelcastEntityKey, HazelcastEntity> notificationsMap = hazelcastClient.getMap(NOTIFICATIONS_MAP);
+        hazelcastHelper.getIndexes(DeviceNotification.class).forEach(notificationsMap::addIndex);
+
+        final IMap<HazelcastEntityKey, HazelcastEntity> commandsMap = hazelcastClient.getMap(COMMANDS_MAP);
+        hazelcastHelper.getIndexes(DeviceCommand.class).forEach(commandsMap::addIndex);
 
-        final IMap<String, HazelcastEntity> commandsMap = hazelcastClient.getMap(COMMANDS_MAP);
-        commandsMap.addIndex(TIMESTAMP.getField(), true);
-        commandsMap.addIndex(LAST_UPDATED.getField(), true);
-        
         mapsHolder.put(DeviceNotification.class, notificationsMap);
         mapsHolder.put(DeviceCommand.class, commandsMap);
+
+        if (writeBehindEnabled) {
+            writeBatcher = new EntityWriteBatcher(writeBehindBatchSize, writeBehindFlushIntervalMs, writeBehindQueueCapacity,
+                    this::storeAll);
+        }
+    }
+
+    @PreDestroy
+    protected void close() {
+        if (writeBatcher != null) {
+            writeBatcher.close();
+        }
     }
 
 
     public <T extends HazelcastEntity> Optional<T> find(Long id, String deviceId, Class<T> entityClass) {
         final Predicate filters = hazelcastHelper.prepareFilters(id, deviceId, entityClass);
-        return find(filters, 1, entityClass).stream().findFirst();
+        return find(deviceId, filters, 1, DEFAULT_ORDER, entityClass).stream().findFirst();
     }
 
     public <T extends HazelcastEntity> Optional<T> find(Long id, String deviceId, boolean returnUpdated, Class<T> entityClass) {
         final Predicate filters = hazelcastHelper.prepareFilters(id, deviceId, returnUpdated, entityClass);
-        return find(filters, 1, entityClass).stream().findFirst();
+        return find(deviceId, filters, 1, DEFAULT_ORDER, entityClass).stream().findFirst();
+    }
+
+    public <T extends HazelcastEntity> Collection<T> find(Collection<String> deviceIds,
+                                                          Collection<String> names,
+                                                          Integer take,
+                                                          Date timestampSt,
+                                                          Date timestampEnd,
+                                                          boolean returnUpdated,
+                                                          String status,
+                                                          Class<T> entityClass) {
+        return find(deviceIds, names, take, timestampSt, timestampEnd, returnUpdated, status, DEFAULT_ORDER, entityClass);
+    }
+
+    public <T extends HazelcastEntity> Collection<T> find(Collection<String> deviceIds,
+                                                          Collection<String> names,
+                                                          Integer take,
+                                                          Date timestampSt,
+                                                          Date timestampEnd,
+                                                          boolean returnUpdated,
+                                                          String status,
+                                                          HazelcastEntityComparator order,
+                                                          Class<T> entityClass) {
+        return find(deviceIds, names, take, timestampSt, timestampEnd, returnUpdated, status, order, null, entityClass);
     }
 
+    /**
+     * Returns up to {@code take} first entities in given order, or all of them if take is not positive.
+     * Each member sorts and limits its own entities, so that only the top entities of each member are merged here.
+     * Search with cursor returns only entities following cursor position in timestamp order. The cursor also narrows
+     * searched time range, so that the page is read as a range of the timestamp index.
+     */
     public <T extends HazelcastEntity> Collection<T> find(Collection<String> deviceIds,
                                                           Collection<String> names,
                                                           Integer take,
@@ -90,10 +170,33 @@ public class HazelcastService {
                                                           Date timestampEnd,
                                                           boolean returnUpdated,
                                                           String status,
+                                                          HazelcastEntityComparator order,
+                                                          SearchCursor cursor,
                                                           Class<T> entityClass) {
+        if (cursor != null && !returnUpdated) {
+            // time bounds are exclusive, entities at cursor's timestamp are told apart by id
+            if (order.isDescending()) {
+                timestampEnd = earliest(timestampEnd, new Date(cursor.getTimestamp() + 1));
+            } else {
+                timestampSt = latest(timestampSt, new Date(cursor.getTimestamp() - 1));
+            }
+        }
+        final HistoryFilter historyFilter = new HistoryFilter(deviceIds, null, null, null, names,
+                timestampSt, timestampEnd, returnUpdated, status, cursor, order.isDescending());
+        if (deviceIds != null && deviceIds.size() == 1) {
+            final Optional<List<T>> recent = findRecent(historyFilter, take, order, entityClass);
+            if (recent.isPresent()) {
+                return recent.get();
+            }
+        }
         final Predicate filters = hazelcastHelper.prepareFilters(deviceIds,  names, timestampSt, timestampEnd,
-               returnUpdated, status, entityClass);
-        return find(filters, take, entityClass);
+               returnUpdated, status, cursor, order.isDescending(), entityClass);
+        final String deviceId = deviceIds != null && deviceIds.size() == 1 ? deviceIds.iterator().next() : null;
+        final Collection<T> hot = find(deviceId, filters, take, order, entityClass);
+        if (!isOutsideHotWindow(timestampSt)) {
+            return hot;
+        }
+        return merge(hot, historyStore.find(historyFilter, take, order.forEntities(), entityClass), take, order);
     }
 
     public <T extends HazelcastEntity> Collection<T> find(String deviceId,
@@ -107,20 +210,145 @@ public class HazelcastService {
                                                           boolean returnUpdated,
                                                           String status,
                                                           Class<T> entityClass) {
+        final HistoryFilter historyFilter = new HistoryFilter(deviceId != null ? Collections.singleton(deviceId) : null,
+                networkIds, iexperimentIds, icomponentIds, names, timestampSt, timestampEnd, returnUpdated, status);
+        if (deviceId != null) {
+            final Optional<List<T>> recent = findRecent(historyFilter, take, DEFAULT_ORDER, entityClass);
+            if (recent.isPresent()) {
+                return recent.get();
+            }
+        }
         final Predicate filters = hazelcastHelper.prepareFilters(deviceId, networkIds, iexperimentIds, icomponentIds, names,
                 timestampSt, timestampEnd, returnUpdated, status, entityClass);
-        return find(filters, take, entityClass);
+        final Collection<T> hot = find(deviceId, filters, take, DEFAULT_ORDER, entityClass);
+        if (!isOutsideHotWindow(timestampSt)) {
+            return hot;
+        }
+        return merge(hot, historyStore.find(historyFilter, take, DEFAULT_ORDER.forEntities(), entityClass), take, DEFAULT_ORDER);
     }
 
+    /**
+     * Stores entity, waiting until it is written. With write-behind enabled, the entity is written
+     * together with entities stored asynchronously, keeping the order in which they were stored.
+     */
     public <T extends HazelcastEntity> void store(final T hzEntity) {
+        if (writeBatcher != null) {
+            storeAsync(hzEntity).join();
+            return;
+        }
         logger.debug("Saving entity into hazelcast. [Entity: {}]", hzEntity);
-        mapsHolder.get(hzEntity.getClass()).set(hzEntity.getHazelcastKey(), hzEntity);
+        mapsHolder.get(hzEntity.getClass()).set(new HazelcastEntityKey(hzEntity), hzEntity);
+        historyStore.append(hzEntity);
+        recentEntityStore.put(hzEntity);
+    }
+
+    /**
+     * Enqueues entity to be written in the next batch. Returned future completes once the batch is written.
+     */
+    public <T extends HazelcastEntity> CompletableFuture<Void> storeAsync(final T hzEntity) {
+        if (writeBatcher == null) {
+            try {
+                store(hzEntity);
+                return CompletableFuture.completedFuture(null);
+            } catch (RuntimeException e) {
+                final CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                return failed;
+            }
+        }
+        logger.debug("Enqueueing entity to be saved into hazelcast. [Entity: {}]", hzEntity);
+        return writeBatcher.submit(hzEntity);
+    }
+
+    /**
+     * Writes batch of entities with one putAll per map, which the client splits into one operation per partition.
+     * Later entities of the batch replace earlier ones with the same key.
+     */
+    private void storeAll(List<HazelcastEntity> entities) {
+        final Map<Class, Map<HazelcastEntityKey, HazelcastEntity>> entries = new HashMap<>(2);
+        for (HazelcastEntity entity : entities) {
+            entries.computeIfAbsent(entity.getClass(), cls -> new LinkedHashMap<>())
+                    .put(new HazelcastEntityKey(entity), entity);
+        }
+        entries.forEach((cls, batch) -> mapsHolder.get(cls).putAll(batch));
+        for (HazelcastEntity entity : entities) {
+            historyStore.append(entity);
+            recentEntityStore.put(entity);
+        }
+    }
+
+    /**
+     * Looks up entities of a single device in the local recent entity store. Lookups of last update time
+     * and lookups without start time are not covered by the store and always go to hazelcast.
+     */
+    private <T extends HazelcastEntity> Optional<List<T>> findRecent(HistoryFilter filter, Integer take,
+                                                                     HazelcastEntityComparator order, Class<T> entityClass) {
+        if (filter.getTimestampStart() == null || filter.isReturnUpdated()) {
+            return Optional.empty();
+        }
+        final String deviceId = filter.getDeviceIds().iterator().next();
+        return recentEntityStore.find(deviceId, filter.getTimestampStart().getTime(), filter,
+                take != null ? take : 0, order.forEntities(), entityClass);
+    }
+
+    private static Date earliest(Date date, Date other) {
+        return date == null || other.before(date) ? other : date;
+    }
+
+    private static Date latest(Date date, Date other) {
+        return date == null || other.after(date) ? other : date;
+    }
+
+    private boolean isOutsideHotWindow(Date timestampSt) {
+        if (!historyStore.isEnabled()) {
+            return false;
+        }
+        return timestampSt != null
+                && timestampSt.getTime() < System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(hotWindowSeconds);
+    }
+
+    /**
+     * Combines entities found in hazelcast and in the history store. Hazelcast holds the latest
+     * version of an entity, so it takes precedence over the history store for the same key.
+     */
+    private static <T extends HazelcastEntity> Collection<T> merge(Collection<T> hot, Collection<T> history, Integer take,
+                                                                   HazelcastEntityComparator order) {
+        final Map<String, T> merged = new HashMap<>();
+        history.forEach(entity -> merged.put(entity.getHazelcastKey(), entity));
+        hot.forEach(entity -> merged.put(entity.getHazelcastKey(), entity));
+        return merged.values().stream()
+                .sorted(order.forEntities())
+                .limit(take != null && take > 0 ? take : Long.MAX_VALUE)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Runs search on the member owning the partition of the device, if search is limited to a single device,
+     * or on all members otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends HazelcastEntity> Collection<T> find(String deviceId, Predicate predicate, int pageSize,
+                                                           HazelcastEntityComparator order, Class<T> tClass) {
+        if (deviceId != null) {
+            final IMap<HazelcastEntityKey, HazelcastEntity> map = mapsHolder.get(tClass);
+            try {
+                return (Collection<T>) hazelcastClient.getExecutorService(DEVICE_QUERIES_EXECUTOR)
+                        .submitToKeyOwner(new DevicePartitionQuery(map.getName(), deviceId, predicate, order, pageSize), deviceId)
+                        .get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while searching entities of device " + deviceId, e);
+            } catch (ExecutionException e) {
+                logger.warn("Unable to search entities of device {} on partition owner, searching all members", deviceId, e.getCause());
+            }
+        }
+        return find(predicate, pageSize, order, tClass);
     }
 
     @SuppressWarnings("unchecked")
-    private <T extends HazelcastEntity> Collection<T> find(Predicate predicate, int pageSize, Class<T> tClass) {
+    private <T extends HazelcastEntity> Collection<T> find(Predicate predicate, int pageSize, HazelcastEntityComparator order, Class<T> tClass) {
         final Predicate pagingPredicate = (pageSize > 0)
-                ? new PagingPredicate(predicate, new HazelcastEntityComparator(), pageSize)
+                ? new PagingPredicate(predicate, (Comparator) order, pageSize)
                 : predicate;
         return (Collection<T>) mapsHolder.get(tClass).values(pagingPredicate);
     }
@@ -20,72 +20,96 @@ package com.devicehive.service.helpers;
  * #L%
  */
 
+import com.devicehive.exceptions.HiveException;
 import com.devicehive.model.DeviceCommand;
-import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.SearchCursor;
 
 import java.util.*;
 
+import static com.devicehive.model.HazelcastEntityComparator.COMMAND;
+import static com.devicehive.model.HazelcastEntityComparator.NOTIFICATION;
+import static com.devicehive.model.HazelcastEntityComparator.STATUS;
+import static com.devicehive.model.HazelcastEntityComparator.TIMESTAMP;
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+
 public final class CommandResponseFilterAndSort {
 
     private CommandResponseFilterAndSort() {
 
     }
 
-    public static <T> List<T> orderAndLimit(List<T> deviceCommands,
-                                            Comparator<T> cmp, Boolean reverse,
-                                            Integer skip, Integer take) {
-        if (cmp != null) {
-            Collections.sort(deviceCommands, cmp);
-        }
-        if (Boolean.FALSE.equals(reverse)) {
-            Collections.reverse(deviceCommands);
-        }
-        
-        return subList(deviceCommands, Optional.ofNullable(skip).orElse(0),
-                Optional.ofNullable(take).orElse(deviceCommands.size()));
+    /**
+     * Builds search order from request's sort field and order. Unknown fields sort by timestamp.
+     * Without explicit sort order, results are sorted descending by given sort field or ascending by timestamp.
+     */
+    public static <T extends HazelcastEntity> HazelcastEntityComparator buildOrder(String sortField, String sortOrder,
+                                                                                Class<T> entityClass) {
+        final List<String> fields = entityClass.equals(DeviceCommand.class)
+                ? Arrays.asList(TIMESTAMP, STATUS, COMMAND)
+                : Arrays.asList(TIMESTAMP, NOTIFICATION);
+        final String field = sortField != null ? sortField.toLowerCase() : null;
+        final boolean known = fields.contains(field);
+        final boolean descending = sortOrder != null ? "desc".equalsIgnoreCase(sortOrder) : known;
+        return new HazelcastEntityComparator(known ? field : TIMESTAMP, descending);
     }
 
-    private static <T> List<T> subList(List<T> deviceCommands, Integer skip, Integer take) {
-        if (skip < 0 || take <= 0 || skip >= deviceCommands.size()) {
-            return Collections.emptyList();
+    /**
+     * Returns number of first entities to be searched for to serve skip and take. Unset take means
+     * as many entities as the result window allows, windows larger than that are rejected as bad requests.
+     */
+    public static int getResultWindow(Integer skip, Integer take, int maxResultWindow) {
+        final int updatedSkip = Optional.ofNullable(skip).orElse(0);
+        final int updatedTake = Optional.ofNullable(take).orElse(0);
+        checkRequest(updatedSkip >= 0 && updatedTake >= 0, "Skip and take must not be negative");
+        if (updatedTake == 0) {
+            checkRequest(updatedSkip < maxResultWindow, "Skip must be less than " + maxResultWindow);
+            return maxResultWindow;
         }
-        int end = (int) Math.min(deviceCommands.size(), (long) skip + take);
-        return deviceCommands.subList(skip, end);
+        checkRequest((long) updatedSkip + updatedTake <= maxResultWindow,
+                "Skip and take must not exceed " + maxResultWindow + " entities");
+        return updatedSkip + updatedTake;
     }
 
-    public static Comparator<DeviceCommand> buildDeviceCommandComparator(String field) {
-        if ("timestamp".equalsIgnoreCase(field)) {
-            return (o1, o2) -> o2.getTimestamp().compareTo(o1.getTimestamp());
-        } else if ("status".equalsIgnoreCase(field)) {
-            return (o1, o2) -> {
-                String o2Status = o2.getStatus() == null ? "" : o2.getStatus();
-                return o2Status.compareTo(o1.getStatus());
-            };
-        } else if ("command".equalsIgnoreCase(field)) {
-            return (o1, o2) -> {
-                String o2Command = o2.getCommand() == null ? "" : o2.getCommand();
-                return o2Command.compareTo(o1.getCommand());
-            };
-        }
-        return null;
+    /**
+     * Parses cursor of the previous page. Cursor positions are defined in timestamp order only.
+     */
+    public static SearchCursor parseCursor(String cursor, HazelcastEntityComparator order) {
+        final SearchCursor parsed = SearchCursor.parse(cursor);
+        checkRequest(parsed == null || TIMESTAMP.equals(order.getField()), "Cursor can only be used with timestamp sort field");
+        return parsed;
     }
 
-    public static Comparator<DeviceNotification> buildDeviceNotificationComparator(String field) {
-        if ("timestamp".equalsIgnoreCase(field)) {
-            return (o1, o2) -> o2.getTimestamp().compareTo(o1.getTimestamp());
-        } else if ("notification".equalsIgnoreCase(field)) {
-            return (o1, o2) -> {
-                String o2Status = o2.getNotification() == null ? "" : o2.getNotification();
-                return o2Status.compareTo(o1.getNotification());
-            };
+    /**
+     * Returns cursor of the last found entity, or null if fewer entities than the result window were found
+     * and there is no next page.
+     */
+    public static <T extends HazelcastEntity> String nextCursor(Collection<T> entities, int resultWindow,
+                                                                HazelcastEntityComparator order) {
+        if (!TIMESTAMP.equals(order.getField()) || entities.isEmpty() || entities.size() < resultWindow) {
+            return null;
         }
-        return null;
+        T last = null;
+        for (T entity : entities) {
+            last = entity;
+        }
+        final SearchCursor cursor = SearchCursor.of(last);
+        return cursor != null ? cursor.encode() : null;
     }
 
-    public static Integer getTotal(Integer skip, Integer take) {
-        Integer updatedSkip = Optional.ofNullable(skip).orElse(0);
-        Integer updatedTake = Optional.ofNullable(take).orElse(0);
+    private static void checkRequest(boolean valid, String message) {
+        if (!valid) {
+            throw new HiveException(message, SC_BAD_REQUEST);
+        }
+    }
 
-        return updatedTake.equals(0) ? 0 : updatedSkip + updatedTake;
+    public static <T> List<T> skip(Collection<T> entities, Integer skip) {
+        final List<T> list = new ArrayList<>(entities);
+        final int updatedSkip = Optional.ofNullable(skip).orElse(0);
+        if (updatedSkip >= list.size()) {
+            return Collections.emptyList();
+        }
+        return updatedSkip > 0 ? new ArrayList<>(list.subList(updatedSkip, list.size())) : list;
     }
 }
@@ -22,93 +22,175 @@ package com.devicehive.service.helpers;
 
 import com.devicehive.model.DeviceCommand;
 import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.SearchCursor;
 import com.hazelcast.query.Predicate;
 import com.hazelcast.query.Predicates;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
-import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static com.devicehive.model.enums.SearchableField.*;
 
+/**
+ * Builds hazelcast predicates for notification and command searches.
+ * Clauses are ordered by expected selectivity, so that the most restrictive ones are evaluated first,
+ * and every attribute searches filter on is covered by an index registered in {@link #getIndexes(Class)}.
+ * Null values of filter collections do not restrict the search.
+ */
 @Component
 public class HazelcastHelper {
+    private static final Logger logger = LoggerFactory.getLogger(HazelcastHelper.class);
+
+    /**
+     * Single search clause with its selectivity rank, clauses with lower rank are evaluated first.
+     */
+    private static final class Clause {
+        private final Predicate predicate;
+        private final int rank;
+        private final int values;
+
+        private Clause(Predicate predicate, int rank, int values) {
+            this.predicate = predicate;
+            this.rank = rank;
+            this.values = values;
+        }
+    }
+
+    private static final Comparator<Clause> SELECTIVITY = Comparator.<Clause>comparingInt(c -> c.rank)
+            .thenComparingInt(c -> c.values);
+
+    /**
+     * Returns attributes to be indexed in the map of given entities, mapped to true for sorted indexes.
+     */
+    public <T extends HazelcastEntity> Map<String, Boolean> getIndexes(Class<T> entityClass) {
+        final Map<String, Boolean> indexes = new LinkedHashMap<>();
+        indexes.put(DEVICE_ID.getField(), false);
+        indexes.put(nameField(entityClass), false);
+        indexes.put(NETWORK_IDS.getField(), false);
+        indexes.put(IEXPERIMENT_IDS.getField(), false);
+        indexes.put(ICOMPONENT_IDS.getField(), false);
+        indexes.put(TIMESTAMP.getField(), true);
+        if (entityClass.equals(DeviceCommand.class)) {
+            indexes.put(STATUS.getField(), false);
+            indexes.put(LAST_UPDATED.getField(), true);
+        }
+        return indexes;
+    }
 
     public <T extends HazelcastEntity> Predicate prepareFilters(final Long id, final String deviceId, Class<T> entityClass) {
-        return prepareFilters(id, null, false, null);
+        return prepareFilters(id, deviceId, false, entityClass);
     }
 
     public <T extends HazelcastEntity> Predicate prepareFilters(final Long id, final String deviceId, final boolean returnUpdated, Class<T> entityClass) {
-        return prepareFilters(id, null, returnUpdated, null);
+        return prepareFilters(id, singleton(deviceId), null, null, null, null, null, null, returnUpdated, null, null, false, entityClass);
     }
 
     public <T extends HazelcastEntity> Predicate prepareFilters(Collection<String> deviceIds, Collection<String> names,
             Date timestampSt, Date timestampEnd, boolean returnUpdated, String status, Class<T> entityClass) {
-        return prepareFilters(null, deviceIds, null, null, returnUpdated, status, entityClass);
+        return prepareFilters(deviceIds, names, timestampSt, timestampEnd, returnUpdated, status, null, false, entityClass);
+    }
+
+    /**
+     * Builds predicate of a search page starting right after cursor position in ascending or descending timestamp order.
+     */
+    public <T extends HazelcastEntity> Predicate prepareFilters(Collection<String> deviceIds, Collection<String> names,
+            Date timestampSt, Date timestampEnd, boolean returnUpdated, String status, SearchCursor cursor, boolean descending,
+            Class<T> entityClass) {
+        return prepareFilters(null, deviceIds, null, null, null, names, timestampSt, timestampEnd, returnUpdated, status,
+                cursor, descending, entityClass);
     }
 
     public <T extends HazelcastEntity> Predicate prepareFilters(String deviceId, Collection<Long> networkIds,
             Collection<Long> iexperimentIds, Collection<Long> icomponentIds, Collection<String> names, Date timestampSt, Date timestampEnd,
             boolean returnUpdated, String status, Class<T> entityClass) {
-        Set<String> deviceIdSet = deviceId != null ? Collections.singleton(deviceId) : null;
-        return prepareFilters(null, deviceIdSet, networkIds, iexperimentIds, icomponentIds, names, timestampSt, timestampEnd, returnUpdated, status, entityClass);
+        return prepareFilters(null, singleton(deviceId), networkIds, iexperimentIds, icomponentIds, names, timestampSt, timestampEnd,
+                returnUpdated, status, null, false, entityClass);
     }
 
     private <T extends HazelcastEntity> Predicate prepareFilters(Long id, Collection<String> deviceIds, Collection<Long> networkIds,
             Collection<Long> iexperimentIds, Collection<Long> icomponentIds, Collection<String> names, Date timestampSt, Date timestampEnd,
-            boolean returnUpdated, String status, Class<T> entityClass) {
-        final List<Predicate> predicates = new ArrayList<>();
+            boolean returnUpdated, String status, SearchCursor cursor, boolean descending, Class<T> entityClass) {
+        final List<Clause> clauses = new ArrayList<>();
         if (id != null) {
-            predicates.add(Predicates.equal(ID.getField(), id));
+            clauses.add(new Clause(Predicates.equal(ID.getField(), id), 0, 1));
         }
 
-        if (deviceIds != null && !deviceIds.isEmpty()) {
-            predicates.add(Predicates.in(DEVICE_IDS.getField(), deviceIds.toArray(new String[deviceIds.size()])));
-        }
+        addIn(clauses, DEVICE_IDS.getField(), deviceIds, 1);
+        addIn(clauses, nameField(entityClass), names, 2);
+        addIn(clauses, ICOMPONENT_IDS.getField(), icomponentIds, 3);
+        addIn(clauses, IEXPERIMENT_IDS.getField(), iexperimentIds, 4);
+        addIn(clauses, NETWORK_IDS.getField(), networkIds, 5);
 
-        if (networkIds != null && !networkIds.isEmpty()) {
-            predicates.add(Predicates.in(NETWORK_IDS.getField(), networkIds.toArray(new Long[networkIds.size()])));
+        if (StringUtils.isNotEmpty(status)) {
+            clauses.add(new Clause(Predicates.equal(STATUS.getField(), status), 6, 1));
         }
 
-        if (iexperimentIds != null && !iexperimentIds.isEmpty()) {
-            predicates.add(Predicates.in(IEXPERIMENT_IDS.getField(), iexperimentIds.toArray(new Long[iexperimentIds.size()])));
+        final String timeField = returnUpdated ? LAST_UPDATED.getField() : TIMESTAMP.getField();
+        if (timestampSt != null) {
+            clauses.add(new Clause(Predicates.greaterThan(timeField, timestampSt.getTime()), 7, 1));
         }
-
-        if (icomponentIds != null && !icomponentIds.isEmpty()) {
-            predicates.add(Predicates.in(ICOMPONENT_IDS.getField(), icomponentIds.toArray(new Long[icomponentIds.size()])));
+        if (timestampEnd != null) {
+            clauses.add(new Clause(Predicates.lessThan(timeField, timestampEnd.getTime()), 7, 1));
         }
-
-        String searchableField = entityClass.equals(DeviceCommand.class) ? COMMAND.getField() : NOTIFICATION.getField();
-        
-        if (!CollectionUtils.isEmpty(names)) {
-            predicates.add(Predicates.in(searchableField, names.toArray(new String[names.size()])));
+        if (cursor != null) {
+            clauses.add(new Clause(after(cursor, descending), 7, 1));
         }
-        
+
         if (returnUpdated) {
-            predicates.add(Predicates.equal(IS_UPDATED.getField(), returnUpdated));
+            // not indexed, only two distinct values
+            clauses.add(new Clause(Predicates.equal(IS_UPDATED.getField(), returnUpdated), 8, 1));
         }
 
-        if (timestampSt != null) {
-            String searchableFieldSt = returnUpdated ? LAST_UPDATED.getField() : TIMESTAMP.getField();
-            predicates.add(Predicates.greaterThan(searchableFieldSt, timestampSt.getTime()));
+        clauses.sort(SELECTIVITY);
+        final Predicate[] predicates = clauses.stream()
+                .map(clause -> clause.predicate)
+                .toArray(Predicate[]::new);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Query plan for {}: {}", entityClass.getSimpleName(), Arrays.toString(predicates));
         }
 
-        if (timestampEnd != null) {
-            String searchableFieldEnd = returnUpdated ? LAST_UPDATED.getField() : TIMESTAMP.getField();
-            predicates.add(Predicates.lessThan(searchableFieldEnd, timestampEnd.getTime()));
-        }
+        return Predicates.and(predicates);
+    }
 
+    /**
+     * Range of timestamp index following cursor position, entities with the same timestamp are ordered by id.
+     */
+    private static Predicate after(SearchCursor cursor, boolean descending) {
+        final String timeField = TIMESTAMP.getField();
+        final Predicate sameTime = Predicates.equal(timeField, cursor.getTimestamp());
+        return descending
+                ? Predicates.or(Predicates.lessThan(timeField, cursor.getTimestamp()),
+                        Predicates.and(sameTime, Predicates.lessThan(ID.getField(), cursor.getId())))
+                : Predicates.or(Predicates.greaterThan(timeField, cursor.getTimestamp()),
+                        Predicates.and(sameTime, Predicates.greaterThan(ID.getField(), cursor.getId())));
+    }
 
-        if (StringUtils.isNotEmpty(status)) {
-            predicates.add(Predicates.equal(STATUS.getField(), status));
+    private static <V> void addIn(List<Clause> clauses, String field, Collection<V> values, int rank) {
+        if (values == null) {
+            return;
         }
-
-        final Predicate[] predicatesArray = new Predicate[predicates.size()];
-        for (int i = 0; i < predicates.size(); i++) {
-            predicatesArray[i] = predicates.get(i);
+        final List<V> nonNull = values.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+        if (nonNull.isEmpty()) {
+            return;
         }
+        final Predicate predicate = nonNull.size() == 1
+                ? Predicates.equal(field, (Comparable) nonNull.get(0))
+                : Predicates.in(field, nonNull.toArray(new Comparable[nonNull.size()]));
+        clauses.add(new Clause(predicate, rank, nonNull.size()));
+    }
+
+    private static Set<String> singleton(String deviceId) {
+        return deviceId != null ? Collections.singleton(deviceId) : null;
+    }
 
-        return Predicates.and(predicatesArray);
+    private static String nameField(Class<?> entityClass) {
+        return entityClass.equals(DeviceCommand.class) ? COMMAND.getField() : NOTIFICATION.getField();
     }
 }
@@ -0,0 +1,144 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.SearchCursor;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * In-process counterpart of the Hazelcast predicate built by
+ * {@link com.devicehive.service.helpers.HazelcastHelper}, applied to entities read from the history store.
+ * Empty collections, collections of nulls and nulls do not restrict the result.
+ */
+public class HistoryFilter implements Predicate<HazelcastEntity> {
+
+    private final Collection<String> deviceIds;
+    private final Collection<Long> networkIds;
+    private final Collection<Long> iexperimentIds;
+    private final Collection<Long> icomponentIds;
+    private final Collection<String> names;
+    private final Date timestampStart;
+    private final Date timestampEnd;
+    private final boolean returnUpdated;
+    private final String status;
+    private final SearchCursor cursor;
+    private final boolean descending;
+
+    public HistoryFilter(Collection<String> deviceIds, Collection<Long> networkIds, Collection<Long> iexperimentIds,
+                         Collection<Long> icomponentIds, Collection<String> names, Date timestampStart, Date timestampEnd,
+                         boolean returnUpdated, String status) {
+        this(deviceIds, networkIds, iexperimentIds, icomponentIds, names, timestampStart, timestampEnd, returnUpdated, status,
+                null, false);
+    }
+
+    /**
+     * Filter of a search page, accepting only entities following cursor position in given timestamp order.
+     */
+    public HistoryFilter(Collection<String> deviceIds, Collection<Long> networkIds, Collection<Long> iexperimentIds,
+                         Collection<Long> icomponentIds, Collection<String> names, Date timestampStart, Date timestampEnd,
+                         boolean returnUpdated, String status, SearchCursor cursor, boolean descending) {
+        this.deviceIds = deviceIds;
+        this.networkIds = networkIds;
+        this.iexperimentIds = iexperimentIds;
+        this.icomponentIds = icomponentIds;
+        this.names = names;
+        this.timestampStart = timestampStart;
+        this.timestampEnd = timestampEnd;
+        this.returnUpdated = returnUpdated;
+        this.status = status;
+        this.cursor = cursor;
+        this.descending = descending;
+    }
+
+    public Collection<String> getDeviceIds() {
+        return deviceIds;
+    }
+
+    public Date getTimestampStart() {
+        return timestampStart;
+    }
+
+    public Date getTimestampEnd() {
+        return timestampEnd;
+    }
+
+    /**
+     * Whether time bounds apply to the last update time rather than to the creation timestamp.
+     */
+    public boolean isReturnUpdated() {
+        return returnUpdated;
+    }
+
+    @Override
+    public boolean test(HazelcastEntity entity) {
+        if (cursor != null && !cursor.isBefore(entity, descending)) {
+            return false;
+        }
+        if (entity instanceof DeviceNotification) {
+            DeviceNotification notification = (DeviceNotification) entity;
+            return matches(notification.getDeviceId(), notification.getNetworkId(), notification.getIexperimentId(),
+                    notification.getIcomponentId(), notification.getNotification())
+                    && !returnUpdated
+                    && StringUtils.isEmpty(status)
+                    && inRange(notification.getTimestamp());
+        }
+        if (entity instanceof DeviceCommand) {
+            DeviceCommand command = (DeviceCommand) entity;
+            return matches(command.getDeviceId(), command.getNetworkId(), command.getIexperimentId(),
+                    command.getIcomponentId(), command.getCommand())
+                    && (!returnUpdated || Boolean.TRUE.equals(command.getIsUpdated()))
+                    && (StringUtils.isEmpty(status) || status.equals(command.getStatus()))
+                    && inRange(returnUpdated ? command.getLastUpdated() : command.getTimestamp());
+        }
+        return false;
+    }
+
+    private boolean matches(String deviceId, Long networkId, Long iexperimentId, Long icomponentId, String name) {
+        return contains(deviceIds, deviceId)
+                && contains(networkIds, networkId)
+                && contains(iexperimentIds, iexperimentId)
+                && contains(icomponentIds, icomponentId)
+                && contains(names, name);
+    }
+
+    private boolean inRange(Date time) {
+        if (time == null) {
+            return timestampStart == null && timestampEnd == null;
+        }
+        return (timestampStart == null || time.getTime() > timestampStart.getTime())
+                && (timestampEnd == null || time.getTime() < timestampEnd.getTime());
+    }
+
+    private static <V> boolean contains(Collection<V> values, V value) {
+        if (values == null || values.stream().allMatch(Objects::isNull)) {
+            return true;
+        }
+        return values.contains(value);
+    }
+}
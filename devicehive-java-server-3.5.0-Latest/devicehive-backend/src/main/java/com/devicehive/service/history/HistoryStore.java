@@ -0,0 +1,56 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.HazelcastEntity;
+
+import java.util.Collection;
+import java.util.Comparator;
+
+/**
+ * Long-term storage of notifications and commands. Hazelcast maps keep only recent entities,
+ * searches reaching further into the past are answered from the history store.
+ */
+public interface HistoryStore {
+
+    /**
+     * Schedules entity to be stored. Later versions of an entity with the same key replace earlier ones.
+     */
+    void append(HazelcastEntity entity);
+
+    /**
+     * Returns up to {@code take} entities matching filter with the smallest timestamps, or all of them if take is not positive.
+     */
+    default <T extends HazelcastEntity> Collection<T> find(HistoryFilter filter, int take, Class<T> entityClass) {
+        return find(filter, take, Comparator.comparing(HazelcastEntity::getTimestamp), entityClass);
+    }
+
+    /**
+     * Returns up to {@code take} first entities matching filter in given order, or all of them if take is not positive.
+     */
+    <T extends HazelcastEntity> Collection<T> find(HistoryFilter filter, int take, Comparator<? super T> order, Class<T> entityClass);
+
+    default boolean isEnabled() {
+        return true;
+    }
+
+    default void close() { }
+}
@@ -0,0 +1,47 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.HazelcastEntity;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Collections;
+
+/**
+ * History store that keeps nothing, used when history is disabled.
+ */
+public class NoHistoryStore implements HistoryStore {
+
+    @Override
+    public void append(HazelcastEntity entity) { }
+
+    @Override
+    public <T extends HazelcastEntity> Collection<T> find(HistoryFilter filter, int take, Comparator<? super T> order,
+                                                          Class<T> entityClass) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+}
@@ -0,0 +1,167 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Append-only memory-mapped file of records of one time partition.
+ * Record layout is {@code length (int) | timestamp (long) | id (long) | key length (short) | key | payload},
+ * where length counts key and payload bytes and a zero length marks the end of written data.
+ * Timestamp, id and key are read without touching the payload, so that searches could skip records before decoding them.
+ * Records are appended by a single writer thread, readers see records up to the last published position.
+ */
+class Segment {
+
+    static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Long.BYTES + Short.BYTES;
+
+    interface RecordConsumer {
+        /**
+         * @param key     record key, positioned at its first byte
+         * @param payload record payload, read lazily by the consumer
+         */
+        void accept(long timestamp, long id, ByteBuffer key, ByteBuffer payload);
+    }
+
+    private final Path path;
+    private final long partition;
+    private final int sequence;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Position after the last complete record. Written by the writer thread only.
+     */
+    private volatile int limit;
+
+    private Segment(Path path, long partition, int sequence, FileChannel channel, MappedByteBuffer buffer, int limit) {
+        this.path = path;
+        this.partition = partition;
+        this.sequence = sequence;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.limit = limit;
+    }
+
+    /**
+     * Opens segment file, creating it with given capacity if it does not exist.
+     * Write position of an existing file is recovered by skipping over its records.
+     */
+    static Segment open(Path path, long partition, int sequence, int capacity) throws IOException {
+        boolean exists = Files.exists(path);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = exists ? (int) Math.min(channel.size(), Integer.MAX_VALUE) : capacity;
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+
+        int position = 0;
+        while (position + HEADER_SIZE <= size) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > size) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        return new Segment(path, partition, sequence, channel, buffer, position);
+    }
+
+    long getPartition() {
+        return partition;
+    }
+
+    int getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Appends record, returns false if there is not enough space left in the segment.
+     */
+    boolean append(long timestamp, long id, byte[] key, byte[] payload) {
+        int position = limit;
+        if (position + HEADER_SIZE + key.length + payload.length > buffer.capacity()) {
+            return false;
+        }
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + HEADER_SIZE);
+        target.put(key);
+        target.put(payload);
+        buffer.putLong(position + Integer.BYTES, timestamp);
+        buffer.putLong(position + Integer.BYTES + Long.BYTES, id);
+        buffer.putShort(position + Integer.BYTES + 2 * Long.BYTES, (short) key.length);
+        buffer.putInt(position, key.length + payload.length);
+        limit = position + HEADER_SIZE + key.length + payload.length;
+        return true;
+    }
+
+    boolean isEmpty() {
+        return limit == 0;
+    }
+
+    /**
+     * Passes records to consumer, newest first, so that later versions of an entity are seen before earlier ones.
+     */
+    void forEachNewestFirst(RecordConsumer consumer) {
+        int end = limit;
+        ByteBuffer view = buffer.duplicate();
+        int[] positions = new int[64];
+        int count = 0;
+        for (int position = 0; position < end; position += HEADER_SIZE + view.getInt(position)) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, count << 1);
+            }
+            positions[count++] = position;
+        }
+        while (count > 0) {
+            int position = positions[--count];
+            int length = view.getInt(position);
+            long timestamp = view.getLong(position + Integer.BYTES);
+            long id = view.getLong(position + Integer.BYTES + Long.BYTES);
+            int keyLength = view.getShort(position + Integer.BYTES + 2 * Long.BYTES) & 0xFFFF;
+            int keyStart = position + HEADER_SIZE;
+            view.limit(keyStart + keyLength).position(keyStart);
+            ByteBuffer key = view.slice();
+            view.limit(position + HEADER_SIZE + length).position(keyStart + keyLength);
+            ByteBuffer payload = view.slice();
+            view.limit(view.capacity());
+            consumer.accept(timestamp, id, key, payload);
+        }
+    }
+
+    void flush() {
+        buffer.force();
+    }
+
+    void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,333 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import com.google.gson.Gson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * History store keeping entities in append-only memory-mapped segment files, one log per entity type.
+ * Segments are partitioned by entity timestamp, so searches only read partitions overlapping the requested time range,
+ * and partitions older than the retention period are deleted as a whole.
+ * Entities are queued by {@link #append(HazelcastEntity)} and written in batches by a single writer thread;
+ * entities that do not fit into the queue are dropped and counted.
+ * Records carry entity timestamp, id and device id in their header, searches skip records outside of the requested
+ * time range or of other devices without decoding them, and keep only the requested number of entities.
+ */
+public class SegmentLogHistoryStore implements HistoryStore {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLogHistoryStore.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("(\\w+)-(-?\\d+)-(\\d+)\\.log");
+    private static final int BATCH_SIZE = 1024;
+    private static final long RETENTION_CHECK_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long NO_ID = Long.MIN_VALUE;
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final long partitionMillis;
+    private final long retentionMillis;
+    private final Gson gson;
+
+    private final Map<Class<?>, Log> logs = new HashMap<>();
+    private final BlockingQueue<HazelcastEntity> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong decoded = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private long lastRetentionCheck;
+
+    /**
+     * Segments of one entity type by partition. Modified by the writer thread only.
+     */
+    private final class Log {
+        private final String name;
+
+        /**
+         * Whether entities are stored again when updated, notifications are written once.
+         */
+        private final boolean versioned;
+        private final ConcurrentSkipListMap<Long, List<Segment>> partitions = new ConcurrentSkipListMap<>();
+
+        private Log(String name, boolean versioned) {
+            this.name = name;
+            this.versioned = versioned;
+        }
+
+        private void add(Segment segment) {
+            partitions.computeIfAbsent(segment.getPartition(), p -> new CopyOnWriteArrayList<>()).add(segment);
+        }
+
+        private void append(long timestamp, long id, byte[] key, byte[] payload) throws IOException {
+            if (Segment.HEADER_SIZE + key.length + payload.length > segmentCapacity) {
+                logger.error("History record of {} bytes exceeds segment capacity of {} bytes", payload.length, segmentCapacity);
+                return;
+            }
+            long partition = Math.floorDiv(timestamp, partitionMillis);
+            List<Segment> segments = partitions.get(partition);
+            Segment segment = segments != null ? segments.get(segments.size() - 1) : null;
+            if (segment == null || !segment.append(timestamp, id, key, payload)) {
+                int sequence = segment != null ? segment.getSequence() + 1 : 0;
+                segment = Segment.open(directory.resolve(name + "-" + partition + "-" + sequence + ".log"),
+                        partition, sequence, segmentCapacity);
+                add(segment);
+                segment.append(timestamp, id, key, payload);
+            }
+        }
+
+        /**
+         * Returns segments of partitions in range, newest first.
+         */
+        private List<Segment> select(long fromPartition, long toPartition) {
+            List<Segment> selected = new ArrayList<>();
+            for (List<Segment> segments : partitions.subMap(fromPartition, true, toPartition, true).descendingMap().values()) {
+                for (int i = segments.size() - 1; i >= 0; i--) {
+                    selected.add(segments.get(i));
+                }
+            }
+            return selected;
+        }
+    }
+
+    public SegmentLogHistoryStore(Path directory, int segmentCapacity, long partitionMillis, long retentionMillis,
+                                  int queueCapacity, Gson gson) throws IOException {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        this.partitionMillis = partitionMillis;
+        this.retentionMillis = retentionMillis;
+        this.gson = gson;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        logs.put(DeviceNotification.class, new Log("notifications", false));
+        logs.put(DeviceCommand.class, new Log("commands", true));
+        recover();
+
+        writer = new Thread(this::write, "history-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void append(HazelcastEntity entity) {
+        if (!queue.offer(entity)) {
+            long count = dropped.incrementAndGet();
+            logger.warn("History queue is full, entity {} is not stored. Dropped so far: {}", entity.getHazelcastKey(), count);
+        }
+    }
+
+    @Override
+    public <T extends HazelcastEntity> Collection<T> find(HistoryFilter filter, int take, Comparator<? super T> order,
+                                                          Class<T> entityClass) {
+        Log log = logs.get(entityClass);
+        if (log == null) {
+            return Collections.emptyList();
+        }
+        // last update time is not before creation time, so only the upper bound applies to it
+        long start = filter.getTimestampStart() != null && !filter.isReturnUpdated()
+                ? filter.getTimestampStart().getTime() : Long.MIN_VALUE;
+        long end = filter.getTimestampEnd() != null ? filter.getTimestampEnd().getTime() : Long.MAX_VALUE;
+        Set<ByteBuffer> deviceKeys = deviceKeys(filter.getDeviceIds());
+
+        // segments are read newest first, so the first record of a versioned entity is its latest version
+        Set<Long> seen = log.versioned ? new HashSet<>() : null;
+        Collection<T> found = take > 0 ? new PriorityQueue<>(take + 1, order.reversed()) : new ArrayList<>();
+        for (Segment segment : log.select(Math.floorDiv(start, partitionMillis), Math.floorDiv(end, partitionMillis))) {
+            segment.forEachNewestFirst((timestamp, id, key, payload) -> {
+                // time bounds are exclusive, see HistoryFilter
+                if (timestamp <= start || timestamp >= end || deviceKeys != null && !deviceKeys.contains(key)) {
+                    return;
+                }
+                if (seen != null && id != NO_ID && !seen.add(id)) {
+                    return;
+                }
+                T entity = read(payload, entityClass);
+                if (!filter.test(entity)) {
+                    return;
+                }
+                found.add(entity);
+                if (take > 0 && found.size() > take) {
+                    ((PriorityQueue<T>) found).poll();
+                }
+            });
+        }
+
+        List<T> result = new ArrayList<>(found);
+        result.sort(order);
+        return result;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns number of records decoded by searches.
+     */
+    long getDecodedCount() {
+        return decoded.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logs.values().forEach(log -> log.partitions.values().forEach(segments -> segments.forEach(segment -> {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close history segment", e);
+            }
+        })));
+    }
+
+    private void write() {
+        List<HazelcastEntity> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                HazelcastEntity first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    for (HazelcastEntity entity : batch) {
+                        write(entity);
+                    }
+                    batch.clear();
+                }
+                removeExpired();
+            } catch (InterruptedException e) {
+                // close() interrupts the writer after clearing running, the queue is drained before it stops
+                logger.warn("History writer interrupted");
+            } catch (Exception e) {
+                logger.error("Unable to write history batch", e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(HazelcastEntity entity) throws IOException {
+        Log log = logs.get(entity.getClass());
+        if (log == null) {
+            return;
+        }
+        long timestamp = entity.getTimestamp() != null ? entity.getTimestamp().getTime() : System.currentTimeMillis();
+        byte[] key = deviceId(entity) != null ? deviceId(entity).getBytes(StandardCharsets.UTF_8) : new byte[0];
+        log.append(timestamp, entity.getId() != null ? entity.getId() : NO_ID, key, gson.toJson(entity).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        if (now - lastRetentionCheck < RETENTION_CHECK_INTERVAL_MS) {
+            return;
+        }
+        lastRetentionCheck = now;
+        long oldestPartition = Math.floorDiv(now - retentionMillis, partitionMillis);
+        for (Log log : logs.values()) {
+            Map<Long, List<Segment>> expired = log.partitions.headMap(oldestPartition);
+            for (List<Segment> segments : expired.values()) {
+                for (Segment segment : segments) {
+                    try {
+                        segment.delete();
+                    } catch (IOException e) {
+                        logger.warn("Unable to delete history segment", e);
+                    }
+                }
+            }
+            expired.clear();
+        }
+    }
+
+    private static String deviceId(HazelcastEntity entity) {
+        if (entity instanceof DeviceNotification) {
+            return ((DeviceNotification) entity).getDeviceId();
+        }
+        return entity instanceof DeviceCommand ? ((DeviceCommand) entity).getDeviceId() : null;
+    }
+
+    /**
+     * Returns record keys of device ids the search is limited to, or null if it is not limited by device.
+     */
+    private static Set<ByteBuffer> deviceKeys(Collection<String> deviceIds) {
+        if (deviceIds == null || deviceIds.stream().allMatch(Objects::isNull)) {
+            return null;
+        }
+        Set<ByteBuffer> keys = new HashSet<>();
+        for (String deviceId : deviceIds) {
+            // entities without device id are written with an empty key
+            keys.add(ByteBuffer.wrap(deviceId != null ? deviceId.getBytes(StandardCharsets.UTF_8) : new byte[0]));
+        }
+        return keys;
+    }
+
+    private <T> T read(ByteBuffer payload, Class<T> entityClass) {
+        decoded.incrementAndGet();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return gson.fromJson(new String(bytes, StandardCharsets.UTF_8), entityClass);
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.log")) {
+            stream.forEach(files::add);
+        }
+        // segments of a partition must be registered in sequence order
+        files.sort(Comparator.comparingInt(path -> {
+            Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+            return matcher.matches() ? Integer.parseInt(matcher.group(3)) : 0;
+        }));
+        for (Path file : files) {
+            Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+            if (!matcher.matches()) {
+                continue;
+            }
+            Optional<Log> log = logs.values().stream().filter(l -> l.name.equals(matcher.group(1))).findFirst();
+            if (log.isPresent()) {
+                log.get().add(Segment.open(file, Long.parseLong(matcher.group(2)), Integer.parseInt(matcher.group(3)), segmentCapacity));
+            }
+        }
+        logger.info("History store opened at {}", directory);
+    }
+}
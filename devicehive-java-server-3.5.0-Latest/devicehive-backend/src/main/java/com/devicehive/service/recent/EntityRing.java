@@ -0,0 +1,115 @@
+package com.devicehive.service.recent;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.HazelcastEntity;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Bounded ring of the latest entities of one device, oldest entity is overwritten when ring is full.
+ * Timestamps are kept in a primitive array next to entities, so that lookups and replacements scan them
+ * without touching the entities. Ring remembers the newest timestamp it has overwritten, which tells whether
+ * a lookup from a given time can be answered by the ring alone.
+ */
+class EntityRing {
+
+    private final long[] timestamps;
+    private final HazelcastEntity[] entities;
+    private int head;
+    private int size;
+
+    /**
+     * Entities with timestamps up to this value may be missing from the ring.
+     */
+    private long coveredAfter;
+    private long lastWrite;
+
+    EntityRing(int capacity, long coveredAfter) {
+        this.timestamps = new long[capacity];
+        this.entities = new HazelcastEntity[capacity];
+        this.coveredAfter = coveredAfter;
+    }
+
+    /**
+     * Adds entity, or replaces the previous version of the entity with the same key.
+     */
+    synchronized void put(HazelcastEntity entity, long now) {
+        lastWrite = now;
+        long timestamp = entity.getTimestamp().getTime();
+        int capacity = timestamps.length;
+        for (int i = 0, slot = head - size + capacity; i < size; i++, slot++) {
+            int index = slot % capacity;
+            if (timestamps[index] == timestamp && entities[index].getHazelcastKey().equals(entity.getHazelcastKey())) {
+                entities[index] = entity;
+                return;
+            }
+        }
+        if (size == capacity) {
+            coveredAfter = Math.max(coveredAfter, timestamps[head]);
+        } else {
+            size++;
+        }
+        timestamps[head] = timestamp;
+        entities[head] = entity;
+        head = (head + 1) % capacity;
+    }
+
+    /**
+     * Returns up to {@code take} first matching entities in given order, or all of them if take is not positive.
+     * Returns null if entities later than {@code timestampStart} may have been overwritten already.
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <T extends HazelcastEntity> List<T> find(long timestampStart, Predicate<HazelcastEntity> filter, int take,
+                                                          Comparator<? super T> order) {
+        if (timestampStart < coveredAfter) {
+            return null;
+        }
+        List<T> result = new ArrayList<>();
+        int capacity = timestamps.length;
+        for (int i = 0, slot = head - size + capacity; i < size; i++, slot++) {
+            int index = slot % capacity;
+            if (timestamps[index] > timestampStart && filter.test(entities[index])) {
+                result.add((T) entities[index]);
+            }
+        }
+        result.sort(order);
+        return take > 0 && result.size() > take ? new ArrayList<>(result.subList(0, take)) : result;
+    }
+
+    synchronized long getLastWrite() {
+        return lastWrite;
+    }
+
+    /**
+     * Returns the newest timestamp ever stored in the ring, to be used as coverage bound once the ring is dropped.
+     */
+    synchronized long getNewestTimestamp() {
+        long newest = coveredAfter;
+        for (int i = 0; i < size; i++) {
+            newest = Math.max(newest, timestamps[i]);
+        }
+        return newest;
+    }
+}
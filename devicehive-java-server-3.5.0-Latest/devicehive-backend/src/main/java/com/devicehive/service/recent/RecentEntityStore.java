@@ -0,0 +1,172 @@
+package com.devicehive.service.recent;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * In-process store of the latest notifications and commands of every device, kept in bounded per-device rings.
+ * Requests are keyed by device id, so all inserts of a device reach the backend consuming its partition,
+ * and "since timestamp" lookups of that device can be answered locally instead of scanning hazelcast maps.
+ * Lookup is answered only when the store is known to hold every entity of the device after given timestamp,
+ * i.e. none of them has been overwritten or dropped and the store was already running at that time.
+ * Rings of devices without writes during retention period are dropped.
+ */
+public class RecentEntityStore {
+    private static final Logger logger = LoggerFactory.getLogger(RecentEntityStore.class);
+
+    private static final long SWEEP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final int capacity;
+    private final long retentionMillis;
+    private final Map<Class<?>, ConcurrentHashMap<String, EntityRing>> rings = new HashMap<>();
+
+    /**
+     * Entities with timestamps up to this value may be missing from rings created from now on.
+     */
+    private volatile long coveredAfter;
+
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * Creates store keeping up to {@code capacity} entities of each type per device, capacity of 0 disables the store.
+     */
+    public RecentEntityStore(int capacity, long retentionMillis) {
+        this.capacity = capacity;
+        this.retentionMillis = retentionMillis;
+        this.coveredAfter = System.currentTimeMillis();
+        rings.put(DeviceNotification.class, new ConcurrentHashMap<>());
+        rings.put(DeviceCommand.class, new ConcurrentHashMap<>());
+
+        if (isEnabled()) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "recent-entity-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            });
+            sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL_MS, SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public void put(HazelcastEntity entity) {
+        if (!isEnabled() || entity.getDeviceId() == null || entity.getTimestamp() == null) {
+            return;
+        }
+        ConcurrentHashMap<String, EntityRing> devices = rings.get(entity.getClass());
+        if (devices == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        devices.compute(entity.getDeviceId(), (deviceId, ring) -> {
+            EntityRing updated = ring != null ? ring : new EntityRing(capacity, coveredAfter);
+            updated.put(entity, now);
+            return updated;
+        });
+    }
+
+    /**
+     * Returns up to {@code take} first entities of the device later than {@code timestampStart} that match filter,
+     * ordered by timestamp, or empty optional if the store may not hold all of them.
+     */
+    public <T extends HazelcastEntity> Optional<List<T>> find(String deviceId, long timestampStart,
+                                                              Predicate<HazelcastEntity> filter, int take, Class<T> entityClass) {
+        return find(deviceId, timestampStart, filter, take, Comparator.comparing(HazelcastEntity::getTimestamp), entityClass);
+    }
+
+    /**
+     * Returns up to {@code take} first entities of the device later than {@code timestampStart} that match filter
+     * in given order, or empty optional if the store may not hold all of them.
+     */
+    public <T extends HazelcastEntity> Optional<List<T>> find(String deviceId, long timestampStart, Predicate<HazelcastEntity> filter,
+                                                              int take, Comparator<? super T> order, Class<T> entityClass) {
+        if (!isEnabled() || deviceId == null) {
+            return Optional.empty();
+        }
+        ConcurrentHashMap<String, EntityRing> devices = rings.get(entityClass);
+        if (devices == null) {
+            return Optional.empty();
+        }
+        EntityRing ring = devices.get(deviceId);
+        if (ring == null) {
+            // entities of the device may have been stored by another backend, e.g. before a rebalance
+            return Optional.empty();
+        }
+        return Optional.ofNullable(ring.find(timestampStart, filter, take, order));
+    }
+
+    public int getDeviceCount() {
+        return rings.values().stream().mapToInt(Map::size).sum();
+    }
+
+    public void close() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+    }
+
+    private void sweep() {
+        try {
+            long cutoff = System.currentTimeMillis() - retentionMillis;
+            int removed = 0;
+            for (ConcurrentHashMap<String, EntityRing> devices : rings.values()) {
+                for (String deviceId : devices.keySet()) {
+                    EntityRing ring = devices.computeIfPresent(deviceId, (id, r) -> {
+                        if (r.getLastWrite() >= cutoff) {
+                            return r;
+                        }
+                        // later lookups of the device can no longer rely on what was kept in the ring
+                        coveredAfter = Math.max(coveredAfter, r.getNewestTimestamp());
+                        return null;
+                    });
+                    if (ring == null) {
+                        removed++;
+                    }
+                }
+            }
+            if (removed > 0) {
+                logger.debug("Dropped {} idle device rings", removed);
+            }
+        } catch (Exception e) {
+            logger.error("Unable to drop idle device rings", e);
+        }
+    }
+}
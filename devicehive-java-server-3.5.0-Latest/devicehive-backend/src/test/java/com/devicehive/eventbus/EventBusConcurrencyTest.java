@@ -0,0 +1,162 @@
+package com.devicehive.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.eventbus.Filter;
+import com.devicehive.model.eventbus.FilterRegistry;
+import com.devicehive.model.eventbus.Subscriber;
+import com.devicehive.model.eventbus.events.NotificationEvent;
+import com.devicehive.shim.api.Action;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EventBusConcurrencyTest {
+
+    private static final String EVENT = Action.NOTIFICATION_EVENT.name();
+    private static final String REPLY_TO = "response_topic";
+
+    private static final int STABLE_SUBSCRIBERS = 50;
+    private static final int PUBLISHERS = 8;
+    private static final int EVENTS_PER_PUBLISHER = 2000;
+    private static final int CHURN_THREADS = 8;
+    private static final int CHURN_ROUNDS = 500;
+    private static final int NETWORKS = 4;
+
+    @Rule
+    public Timeout testTimeout = new Timeout(120000, TimeUnit.MILLISECONDS);
+
+    private final Map<String, AtomicInteger> deliveries = new ConcurrentHashMap<>();
+
+    private EventBus eventBus;
+
+    @Before
+    public void setUp() {
+        FilterRegistry registry = new FilterRegistry() {
+            @Override
+            public void register(Filter filter, Subscriber subscriber) {
+                processRegister(filter, subscriber);
+            }
+
+            @Override
+            public void unregister(Subscriber subscriber) {
+                processUnregister(subscriber);
+            }
+
+            @Override
+            public void unregisterAll(Collection<Long> subscriptionIds) {
+                processUnregisterAll(subscriptionIds);
+            }
+        };
+        eventBus = new EventBus((to, response) ->
+                deliveries.computeIfAbsent(response.getCorrelationId(), k -> new AtomicInteger()).incrementAndGet(),
+                registry);
+    }
+
+    @Test
+    public void shouldDeliverToStableSubscribersWhileOthersChurn() throws Exception {
+        for (long id = 1; id <= STABLE_SUBSCRIBERS; id++) {
+            eventBus.subscribe(deviceFilter(1L, "stable-device", null), subscriber(id));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(PUBLISHERS + CHURN_THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int p = 0; p < PUBLISHERS; p++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < EVENTS_PER_PUBLISHER; i++) {
+                    eventBus.publish(new NotificationEvent(notification(1L, "stable-device", "temperature")));
+                }
+                return null;
+            }));
+        }
+
+        for (int t = 0; t < CHURN_THREADS; t++) {
+            final long firstId = 1000L + t * 1000L;
+            futures.add(executor.submit(() -> {
+                start.await();
+                Random random = new Random(firstId);
+                for (int round = 0; round < CHURN_ROUNDS; round++) {
+                    List<Long> ids = LongStream.range(firstId, firstId + 10).boxed().collect(Collectors.toList());
+                    for (Long id : ids) {
+                        long network = 1 + random.nextInt(NETWORKS);
+                        String deviceId = random.nextBoolean() ? "stable-device" : "device-" + id;
+                        String name = random.nextBoolean() ? "temperature" : null;
+                        eventBus.subscribe(deviceFilter(network, deviceId, name), subscriber(id));
+                        eventBus.subscribe(new Filter(network, 1L, 1L, null, EVENT, null), subscriber(id));
+                    }
+                    eventBus.publish(new NotificationEvent(notification(1L + random.nextInt(NETWORKS), "device-" + firstId, null)));
+                    eventBus.unsubscribeAll(ids);
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        int expected = PUBLISHERS * EVENTS_PER_PUBLISHER;
+        for (long id = 1; id <= STABLE_SUBSCRIBERS; id++) {
+            assertEquals(expected, deliveries.get("stable-" + id).get());
+        }
+
+        deliveries.clear();
+        for (long network = 1; network <= NETWORKS; network++) {
+            eventBus.publish(new NotificationEvent(notification(network, "stable-device", "temperature")));
+        }
+        assertEquals(STABLE_SUBSCRIBERS, deliveries.size());
+        assertTrue(deliveries.keySet().stream().allMatch(correlationId -> correlationId.startsWith("stable-")));
+    }
+
+    private static Filter deviceFilter(Long networkId, String deviceId, String name) {
+        return new Filter(networkId, 1L, 1L, deviceId, EVENT, name);
+    }
+
+    private static Subscriber subscriber(long id) {
+        return new Subscriber(id, REPLY_TO, (id <= STABLE_SUBSCRIBERS ? "stable-" : "churn-") + id);
+    }
+
+    private static DeviceNotification notification(Long networkId, String deviceId, String name) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setNetworkId(networkId);
+        notification.setIexperimentId(1L);
+        notification.setIcomponentId(1L);
+        notification.setDeviceId(deviceId);
+        notification.setNotification(name);
+        return notification;
+    }
+}
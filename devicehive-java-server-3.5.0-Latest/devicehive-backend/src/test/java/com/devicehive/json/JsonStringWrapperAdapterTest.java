@@ -0,0 +1,153 @@
+package com.devicehive.json;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.json.adapters.JsonStringWrapperAdapterFactory;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.JsonStringWrapper;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.internal.Streams;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class JsonStringWrapperAdapterTest {
+    private static final Logger logger = LoggerFactory.getLogger(JsonStringWrapperAdapterTest.class);
+
+    private static final int ROUNDS = 2000;
+
+    private final Gson gson = new GsonBuilder()
+            .registerTypeAdapterFactory(new JsonStringWrapperAdapterFactory())
+            .create();
+
+    /**
+     * Adapter as it was before payloads were carried opaquely: DOM on read, parse again in setter and on write.
+     */
+    private static class DomAdapter extends TypeAdapter<JsonStringWrapper> {
+        @Override
+        public void write(JsonWriter out, JsonStringWrapper value) throws IOException {
+            if (value != null) {
+                Streams.write(new JsonParser().parse(value.getJsonString()), out);
+            } else {
+                out.nullValue();
+            }
+        }
+
+        @Override
+        public JsonStringWrapper read(JsonReader in) throws IOException {
+            JsonElement jsonElement = Streams.parse(in);
+            if (JsonNull.INSTANCE.equals(jsonElement)) {
+                return null;
+            }
+            new JsonParser().parse(jsonElement.toString()).getAsJsonObject();
+            return JsonStringWrapper.trusted(jsonElement.toString());
+        }
+    }
+
+    @Test
+    public void shouldCarryParametersThroughGson() {
+        String json = "{\"parameters\":{\"a\":[1,2.50,-3e2,true,null,\"x\\\"y\"],\"b\":{}},\"notification\":\"n\"}";
+
+        DeviceNotification notification = gson.fromJson(json, DeviceNotification.class);
+
+        assertEquals("{\"a\":[1,2.50,-3e2,true,null,\"x\\\"y\"],\"b\":{}}", notification.getParameters().getJsonString());
+        assertEquals(new JsonParser().parse(json), new JsonParser().parse(gson.toJson(notification)));
+        assertEquals(new JsonParser().parse(json).getAsJsonObject().get("parameters"),
+                gson.toJsonTree(notification).getAsJsonObject().get("parameters"));
+    }
+
+    @Test
+    public void shouldReadNullParameters() {
+        assertNull(gson.fromJson("{\"parameters\":null}", DeviceNotification.class).getParameters());
+    }
+
+    @Test(expected = HiveException.class)
+    public void shouldRejectParametersWhichAreNotObject() {
+        gson.fromJson("{\"parameters\":[1,2]}", DeviceNotification.class);
+    }
+
+    @Test(expected = HiveException.class)
+    public void shouldRejectMalformedJsonAtEdge() {
+        new JsonStringWrapper("{\"a\":1}}");
+    }
+
+    @Test
+    public void shouldAllocateLessForFourKilobyteParameters() {
+        Gson dom = new GsonBuilder()
+                .registerTypeAdapter(JsonStringWrapper.class, new DomAdapter())
+                .create();
+        String json = gson.toJson(notification(parameters(4096)));
+
+        long domBytes = measure(dom, json);
+        long streamingBytes = measure(gson, json);
+        logger.info("Gson round trip of notification with 4 KB parameters: DOM {} bytes, streaming {} bytes allocated",
+                domBytes, streamingBytes);
+    }
+
+    /**
+     * Returns bytes allocated by the current thread per notification read and written back.
+     */
+    private static long measure(Gson gson, String json) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < ROUNDS; i++) {
+            gson.toJson(gson.fromJson(json, DeviceNotification.class));
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUNDS; i++) {
+            gson.toJson(gson.fromJson(json, DeviceNotification.class));
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - allocated) / ROUNDS;
+    }
+
+    private static DeviceNotification notification(String parameters) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(1);
+        notification.setDeviceId("device-1");
+        notification.setNotification("temperature");
+        notification.setTimestamp(new Date(1000));
+        notification.setParameters(new JsonStringWrapper(parameters));
+        return notification;
+    }
+
+    private static String parameters(int size) {
+        StringBuilder json = new StringBuilder("{\"values\":[");
+        for (int i = 0; json.length() < size - 2; i++) {
+            json.append(i > 0 ? "," : "").append("{\"v\":").append(i).append(".5}");
+        }
+        return json.append("]}").toString();
+    }
+}
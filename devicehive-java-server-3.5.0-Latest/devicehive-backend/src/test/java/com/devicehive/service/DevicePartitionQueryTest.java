@@ -0,0 +1,124 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.DevicePartitionQuery;
+import com.devicehive.model.DevicePortableFactory;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.HazelcastEntityKey;
+import com.devicehive.service.helpers.HazelcastHelper;
+import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.query.Predicate;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class DevicePartitionQueryTest {
+
+    private static final String MAP = "NOTIFICATIONS-MAP";
+    private static final int DEVICES = 20;
+    private static final int NOTIFICATIONS_PER_DEVICE = 50;
+
+    private static final HazelcastHelper helper = new HazelcastHelper();
+    private static final long start = System.currentTimeMillis();
+
+    private static HazelcastInstance member;
+    private static HazelcastInstance client;
+
+    @BeforeClass
+    public static void setUp() {
+        String group = "device-partition-query-test-" + UUID.randomUUID();
+        Config config = new Config();
+        config.getGroupConfig().setName(group);
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(false);
+        config.getSerializationConfig().addPortableFactory(1, new DevicePortableFactory());
+        member = Hazelcast.newHazelcastInstance(config);
+
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.getGroupConfig().setName(group);
+        clientConfig.getNetworkConfig().addAddress("127.0.0.1:" + member.getCluster().getLocalMember().getAddress().getPort());
+        clientConfig.getSerializationConfig().addPortableFactory(1, new DevicePortableFactory());
+        client = HazelcastClient.newHazelcastClient(clientConfig);
+
+        IMap<HazelcastEntityKey, HazelcastEntity> map = client.getMap(MAP);
+        for (int device = 0; device < DEVICES; device++) {
+            for (int i = 0; i < NOTIFICATIONS_PER_DEVICE; i++) {
+                DeviceNotification notification = new DeviceNotification();
+                notification.setId((long) device * NOTIFICATIONS_PER_DEVICE + i);
+                notification.setDeviceId("device-" + device);
+                notification.setNotification("name-" + i % 2);
+                notification.setTimestamp(new Date(start + i));
+                map.set(new HazelcastEntityKey(notification), notification);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+        if (member != null) {
+            member.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldKeepEntitiesOfDeviceInOnePartition() {
+        IMap<HazelcastEntityKey, HazelcastEntity> map = member.getMap(MAP);
+        Set<Integer> partitions = map.keySet().stream()
+                .filter(key -> key.getDeviceId().equals("device-3"))
+                .map(key -> member.getPartitionService().getPartition(key).getPartitionId())
+                .collect(Collectors.toSet());
+
+        assertEquals(Collections.singleton(member.getPartitionService().getPartition("device-3").getPartitionId()), partitions);
+    }
+
+    @Test
+    public void shouldSearchEntitiesOfDeviceOnPartitionOwner() throws Exception {
+        Predicate predicate = helper.prepareFilters("device-3", null, null, null, Collections.singleton("name-1"),
+                new Date(start + 10), null, false, null, DeviceNotification.class);
+
+        List<HazelcastEntity> found = client.getExecutorService("DEVICE-QUERIES")
+                .submitToKeyOwner(new DevicePartitionQuery(MAP, "device-3", predicate, new HazelcastEntityComparator("timestamp", true), 5), "device-3")
+                .get();
+
+        List<Long> ids = found.stream().map(e -> ((DeviceNotification) e).getId()).collect(Collectors.toList());
+        assertEquals(Arrays.asList(199L, 197L, 195L, 193L, 191L), ids);
+    }
+}
@@ -0,0 +1,271 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.DevicePortableFactory;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.HazelcastEntityKey;
+import com.devicehive.model.JsonStringWrapper;
+import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.internal.serialization.InternalSerializationService;
+import com.hazelcast.internal.serialization.impl.DefaultSerializationServiceBuilder;
+import com.hazelcast.nio.serialization.Data;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableReader;
+import com.hazelcast.nio.serialization.PortableWriter;
+import com.hazelcast.query.Predicates;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+public class EntitySerializationTest {
+    private static final Logger logger = LoggerFactory.getLogger(EntitySerializationTest.class);
+
+    private static final int ROUNDS = 20000;
+    private static final String PARAMETERS = parameters(1024);
+
+    private static HazelcastInstance member;
+    private static HazelcastInstance client;
+
+    /**
+     * Notification encoded the way it was before class version 1: JSON as UTF string, validated on every read.
+     */
+    private static class LegacyNotification implements Portable {
+        private long id;
+        private String deviceId;
+        private long timestamp;
+        private String parameters;
+
+        private LegacyNotification() {
+        }
+
+        private LegacyNotification(long id, String deviceId, long timestamp, String parameters) {
+            this.id = id;
+            this.deviceId = deviceId;
+            this.timestamp = timestamp;
+            this.parameters = parameters;
+        }
+
+        @Override
+        public int getFactoryId() {
+            return DeviceNotification.FACTORY_ID;
+        }
+
+        @Override
+        public int getClassId() {
+            return DeviceNotification.CLASS_ID;
+        }
+
+        @Override
+        public void writePortable(PortableWriter writer) throws IOException {
+            writer.writeLong("id", id);
+            writer.writeUTF("notification", "legacy");
+            writer.writeUTF("deviceId", deviceId);
+            writer.writeLong("networkId", 0);
+            writer.writeLong("iexperimentId", 0);
+            writer.writeLong("icomponentId", 0);
+            writer.writeLong("timestamp", timestamp);
+            writer.writeUTF("parameters", parameters);
+        }
+
+        @Override
+        public void readPortable(PortableReader reader) throws IOException {
+            id = reader.readLong("id");
+            reader.readUTF("notification");
+            deviceId = reader.readUTF("deviceId");
+            reader.readLong("networkId");
+            reader.readLong("iexperimentId");
+            reader.readLong("icomponentId");
+            timestamp = reader.readLong("timestamp");
+            parameters = new JsonStringWrapper(reader.readUTF("parameters")).getJsonString();
+        }
+    }
+
+    /**
+     * Comparator as it was defined before class version 1, without fields.
+     */
+    private static class LegacyComparator implements Portable {
+        @Override
+        public int getFactoryId() {
+            return HazelcastEntityComparator.FACTORY_ID;
+        }
+
+        @Override
+        public int getClassId() {
+            return HazelcastEntityComparator.CLASS_ID;
+        }
+
+        @Override
+        public void writePortable(PortableWriter writer) throws IOException {
+        }
+
+        @Override
+        public void readPortable(PortableReader reader) throws IOException {
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() {
+        String group = "entity-serialization-test-" + UUID.randomUUID();
+        Config config = new Config();
+        config.getGroupConfig().setName(group);
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(false);
+        config.getSerializationConfig().addPortableFactory(1, new DevicePortableFactory());
+        member = Hazelcast.newHazelcastInstance(config);
+
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.getGroupConfig().setName(group);
+        clientConfig.getNetworkConfig().addAddress("127.0.0.1:" + member.getCluster().getLocalMember().getAddress().getPort());
+        clientConfig.getSerializationConfig().addPortableFactory(1, new DevicePortableFactory());
+        client = HazelcastClient.newHazelcastClient(clientConfig);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+        if (member != null) {
+            member.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldReadAndSearchEntriesWrittenBeforeVersion1() throws Exception {
+        InternalSerializationService legacy = new DefaultSerializationServiceBuilder()
+                .addPortableFactory(1, classId -> new LegacyNotification())
+                .build();
+        IMap<Object, Object> raw = client.getMap("MIGRATION-MAP");
+        raw.set("legacy", legacy.toData(new LegacyNotification(1, "device-1", 1000, PARAMETERS)));
+        raw.set("current", notification(2, "device-1"));
+
+        IMap<String, HazelcastEntity> map = client.getMap("MIGRATION-MAP");
+        DeviceNotification migrated = (DeviceNotification) map.get("legacy");
+        assertEquals(PARAMETERS, migrated.getParameters().getJsonString());
+
+        List<Long> found = map.values(Predicates.equal("deviceId", "device-1")).stream()
+                .map(HazelcastEntity::getId)
+                .sorted()
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(1L, 2L), found);
+        legacy.dispose();
+    }
+
+    @Test
+    public void shouldReadComparatorWrittenBeforeVersion1() throws Exception {
+        InternalSerializationService legacy = new DefaultSerializationServiceBuilder()
+                .addPortableFactory(1, classId -> new LegacyComparator())
+                .build();
+        InternalSerializationService current = new DefaultSerializationServiceBuilder()
+                .addPortableFactory(1, new DevicePortableFactory())
+                .build();
+
+        HazelcastEntityComparator migrated = current.toObject(legacy.toData(new LegacyComparator()));
+        assertEquals(HazelcastEntityComparator.TIMESTAMP, migrated.getField());
+        assertEquals(false, migrated.isDescending());
+
+        // definition of version 0 is already registered, version 1 must not clash with it
+        HazelcastEntityComparator read = current.toObject(current.toData(
+                new HazelcastEntityComparator(HazelcastEntityComparator.STATUS, true)));
+        assertEquals(HazelcastEntityComparator.STATUS, read.getField());
+        assertEquals(true, read.isDescending());
+
+        legacy.dispose();
+        current.dispose();
+    }
+
+    @Test
+    public void shouldKeepJsonFieldsOfEntity() throws Exception {
+        IMap<HazelcastEntityKey, HazelcastEntity> map = client.getMap("ROUND-TRIP-MAP");
+        DeviceNotification notification = notification(3, "device-3");
+        map.set(new HazelcastEntityKey(notification), notification);
+
+        DeviceNotification read = (DeviceNotification) map.get(new HazelcastEntityKey(notification));
+        assertEquals(notification.getParameters(), read.getParameters());
+    }
+
+    @Test
+    public void shouldSerializeFasterThanVersion0() {
+        InternalSerializationService legacy = new DefaultSerializationServiceBuilder()
+                .addPortableFactory(1, classId -> new LegacyNotification())
+                .build();
+        InternalSerializationService current = new DefaultSerializationServiceBuilder()
+                .addPortableFactory(1, new DevicePortableFactory())
+                .build();
+
+        long legacyNanos = measure(legacy, new LegacyNotification(4, "device-4", 1000, PARAMETERS));
+        long currentNanos = measure(current, notification(4, "device-4"));
+        logger.info("Round trip of notification with 1 KB parameters: version 0 {} ns, version 1 {} ns", legacyNanos, currentNanos);
+
+        legacy.dispose();
+        current.dispose();
+    }
+
+    private static long measure(InternalSerializationService serializationService, Object entity) {
+        for (int i = 0; i < ROUNDS; i++) {
+            serializationService.toObject(serializationService.toData(entity));
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            Data data = serializationService.toData(entity);
+            serializationService.toObject(data);
+        }
+        return (System.nanoTime() - started) / ROUNDS;
+    }
+
+    private static DeviceNotification notification(long id, String deviceId) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setDeviceId(deviceId);
+        notification.setNotification("current");
+        notification.setTimestamp(new Date(1000 + id));
+        notification.setParameters(new JsonStringWrapper(PARAMETERS));
+        return notification;
+    }
+
+    private static String parameters(int size) {
+        StringBuilder json = new StringBuilder("{\"values\":[");
+        for (int i = 0; json.length() < size - 2; i++) {
+            json.append(i > 0 ? "," : "").append(i);
+        }
+        return json.append("]}").toString();
+    }
+}
@@ -0,0 +1,186 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.DevicePortableFactory;
+import com.devicehive.model.HazelcastEntity;
+import com.devicehive.model.HazelcastEntityKey;
+import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class EntityWriteBatcherTest {
+    private static final Logger logger = LoggerFactory.getLogger(EntityWriteBatcherTest.class);
+
+    private static final int WORKERS = 3;
+    private static final int NOTIFICATIONS_PER_WORKER = 5000;
+    private static final int DEVICES = 100;
+
+    private static final AtomicLong ids = new AtomicLong();
+
+    private static HazelcastInstance member;
+    private static HazelcastInstance client;
+
+    @BeforeClass
+    public static void setUp() {
+        String group = "entity-write-batcher-test-" + UUID.randomUUID();
+        Config config = new Config();
+        config.getGroupConfig().setName(group);
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(false);
+        config.getSerializationConfig().addPortableFactory(1, new DevicePortableFactory());
+        member = Hazelcast.newHazelcastInstance(config);
+
+        ClientConfig clientConfig = new ClientConfig();
+        clientConfig.getGroupConfig().setName(group);
+        clientConfig.getNetworkConfig().addAddress("127.0.0.1:" + member.getCluster().getLocalMember().getAddress().getPort());
+        clientConfig.getSerializationConfig().addPortableFactory(1, new DevicePortableFactory());
+        client = HazelcastClient.newHazelcastClient(clientConfig);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (client != null) {
+            client.shutdown();
+        }
+        if (member != null) {
+            member.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldAcknowledgeEntitiesOnlyAfterBatchIsWritten() throws Exception {
+        IMap<HazelcastEntityKey, HazelcastEntity> map = client.getMap("ACK-MAP");
+        try (EntityWriteBatcher batcher = new EntityWriteBatcher(16, 50, 100, batch -> map.putAll(toEntries(batch)))) {
+            DeviceNotification notification = notification();
+            batcher.submit(notification).get(5, TimeUnit.SECONDS);
+
+            assertEquals(notification.getId(), map.get(new HazelcastEntityKey(notification)).getId());
+        }
+    }
+
+    @Test
+    public void shouldFailEntitiesOfBatchWhichWasNotWritten() throws Exception {
+        try (EntityWriteBatcher batcher = new EntityWriteBatcher(16, 1, 100, batch -> {
+            throw new IllegalStateException("write failed");
+        })) {
+            CompletableFuture<Void> future = batcher.submit(notification());
+            try {
+                future.get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                assertTrue(future.isCompletedExceptionally());
+                return;
+            }
+            throw new AssertionError("Future of unwritten entity must fail");
+        }
+    }
+
+    @Test
+    public void shouldStoreMoreNotificationsPerSecondWithBatching() throws Exception {
+        IMap<HazelcastEntityKey, HazelcastEntity> unbatched = client.getMap("UNBATCHED-MAP");
+        double unbatchedRate = measure(notification -> {
+            unbatched.set(new HazelcastEntityKey(notification), notification);
+            return CompletableFuture.completedFuture(null);
+        });
+
+        IMap<HazelcastEntityKey, HazelcastEntity> batched = client.getMap("BATCHED-MAP");
+        double batchedRate;
+        try (EntityWriteBatcher batcher = new EntityWriteBatcher(256, 2, 10000, batch -> batched.putAll(toEntries(batch)))) {
+            batchedRate = measure(batcher::submit);
+        }
+
+        logger.info("{} workers: {} notifications/sec without batching, {} notifications/sec with batching",
+                WORKERS, Math.round(unbatchedRate), Math.round(batchedRate));
+        assertEquals(WORKERS * NOTIFICATIONS_PER_WORKER, unbatched.size());
+        assertEquals(WORKERS * NOTIFICATIONS_PER_WORKER, batched.size());
+        assertTrue("batched " + Math.round(batchedRate) + " notifications/sec, unbatched " + Math.round(unbatchedRate),
+                batchedRate > unbatchedRate);
+    }
+
+    /**
+     * Stores notifications from {@link #WORKERS} threads, each waiting for its own writes to be acknowledged
+     * only after submitting all of them, the way disruptor workers hand responses off to futures.
+     */
+    private static double measure(Function<DeviceNotification, CompletableFuture<Void>> store) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        try {
+            long started = System.nanoTime();
+            List<Future<?>> results = new ArrayList<>(WORKERS);
+            for (int w = 0; w < WORKERS; w++) {
+                results.add(workers.submit(() -> {
+                    List<CompletableFuture<Void>> acks = new ArrayList<>(NOTIFICATIONS_PER_WORKER);
+                    for (int i = 0; i < NOTIFICATIONS_PER_WORKER; i++) {
+                        acks.add(store.apply(notification()));
+                    }
+                    CompletableFuture.allOf(acks.toArray(new CompletableFuture[0])).join();
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get(2, TimeUnit.MINUTES);
+            }
+            return WORKERS * NOTIFICATIONS_PER_WORKER * 1e9 / (System.nanoTime() - started);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private static DeviceNotification notification() {
+        long id = ids.incrementAndGet();
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setDeviceId("device-" + id % DEVICES);
+        notification.setNotification("temperature");
+        notification.setTimestamp(new Date());
+        return notification;
+    }
+
+    private static Map<HazelcastEntityKey, HazelcastEntity> toEntries(List<HazelcastEntity> batch) {
+        Map<HazelcastEntityKey, HazelcastEntity> entries = new LinkedHashMap<>();
+        batch.forEach(entity -> entries.put(new HazelcastEntityKey(entity), entity));
+        return entries;
+    }
+}
@@ -0,0 +1,74 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.exceptions.HiveException;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.SearchCursor;
+import org.junit.Test;
+
+import java.util.Date;
+
+import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CommandResponseFilterAndSortTest {
+
+    private static final int MAX_RESULT_WINDOW = 100;
+
+    @Test
+    public void shouldComputeResultWindow() {
+        assertEquals(MAX_RESULT_WINDOW, CommandResponseFilterAndSort.getResultWindow(null, null, MAX_RESULT_WINDOW));
+        assertEquals(30, CommandResponseFilterAndSort.getResultWindow(10, 20, MAX_RESULT_WINDOW));
+        assertEquals(MAX_RESULT_WINDOW, CommandResponseFilterAndSort.getResultWindow(50, 50, MAX_RESULT_WINDOW));
+    }
+
+    @Test
+    public void shouldRejectInvalidPagingAsBadRequest() {
+        assertBadRequest(() -> CommandResponseFilterAndSort.getResultWindow(-1, 10, MAX_RESULT_WINDOW));
+        assertBadRequest(() -> CommandResponseFilterAndSort.getResultWindow(0, -1, MAX_RESULT_WINDOW));
+        assertBadRequest(() -> CommandResponseFilterAndSort.getResultWindow(MAX_RESULT_WINDOW, null, MAX_RESULT_WINDOW));
+        assertBadRequest(() -> CommandResponseFilterAndSort.getResultWindow(Integer.MAX_VALUE, 10, MAX_RESULT_WINDOW));
+    }
+
+    @Test
+    public void shouldRejectInvalidCursorAsBadRequest() {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(1L);
+        notification.setTimestamp(new Date());
+        String cursor = SearchCursor.of(notification).encode();
+        HazelcastEntityComparator byName = new HazelcastEntityComparator(HazelcastEntityComparator.NOTIFICATION, false);
+
+        assertBadRequest(() -> CommandResponseFilterAndSort.parseCursor("not a cursor", new HazelcastEntityComparator()));
+        assertBadRequest(() -> CommandResponseFilterAndSort.parseCursor(cursor, byName));
+    }
+
+    private static void assertBadRequest(Runnable call) {
+        try {
+            call.run();
+            fail("Request was not rejected");
+        } catch (HiveException e) {
+            assertEquals(Integer.valueOf(SC_BAD_REQUEST), e.getCode());
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.devicehive.service.helpers;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.DevicePortableFactory;
+import com.devicehive.model.HazelcastEntityComparator;
+import com.devicehive.model.SearchCursor;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.JoinConfig;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.IMap;
+import com.hazelcast.query.PagingPredicate;
+import com.hazelcast.query.Predicate;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs searches against an embedded hazelcast member, comparing results and timings of an indexed map
+ * with a map without indexes.
+ */
+public class HazelcastHelperTest {
+    private static final Logger logger = LoggerFactory.getLogger(HazelcastHelperTest.class);
+
+    private static final int DEVICES = 200;
+    private static final int NOTIFICATIONS_PER_DEVICE = 100;
+    private static final int ROUNDS = 50;
+
+    private static final HazelcastHelper helper = new HazelcastHelper();
+    private static final List<DeviceNotification> notifications = new ArrayList<>();
+    private static final long start = System.currentTimeMillis();
+
+    private static HazelcastInstance hazelcast;
+    private static IMap<String, DeviceNotification> indexed;
+    private static IMap<String, DeviceNotification> plain;
+
+    @BeforeClass
+    public static void setUp() {
+        Config config = new Config();
+        config.getGroupConfig().setName("hazelcast-helper-test-" + UUID.randomUUID());
+        config.setProperty("hazelcast.logging.type", "slf4j");
+        config.setProperty("hazelcast.phone.home.enabled", "false");
+        JoinConfig join = config.getNetworkConfig().getJoin();
+        join.getMulticastConfig().setEnabled(false);
+        join.getTcpIpConfig().setEnabled(false);
+        config.getSerializationConfig().addPortableFactory(1, new DevicePortableFactory());
+        hazelcast = Hazelcast.newHazelcastInstance(config);
+
+        indexed = hazelcast.getMap("indexed");
+        helper.getIndexes(DeviceNotification.class).forEach(indexed::addIndex);
+        plain = hazelcast.getMap("plain");
+
+        Map<String, DeviceNotification> entries = new HashMap<>();
+        for (int device = 0; device < DEVICES; device++) {
+            for (int i = 0; i < NOTIFICATIONS_PER_DEVICE; i++) {
+                DeviceNotification notification = new DeviceNotification();
+                notification.setId((long) device * NOTIFICATIONS_PER_DEVICE + i);
+                notification.setDeviceId("device-" + device);
+                notification.setNetworkId((long) device % 10);
+                notification.setNotification("name-" + i % 5);
+                notification.setTimestamp(new Date(start + i * 1000L));
+                notifications.add(notification);
+                entries.put(notification.getHazelcastKey(), notification);
+            }
+        }
+        indexed.putAll(entries);
+        plain.putAll(entries);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        if (hazelcast != null) {
+            hazelcast.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldFindNotificationsOfDeviceSinceTimestamp() {
+        Date since = new Date(start + 49000);
+        Predicate predicate = helper.prepareFilters("device-7", Collections.singleton(null), Collections.singleton(null),
+                Collections.singleton(null), null, since, null, false, null, DeviceNotification.class);
+
+        Set<Long> expected = notifications.stream()
+                .filter(n -> n.getDeviceId().equals("device-7") && n.getTimestamp().after(since))
+                .map(DeviceNotification::getId)
+                .collect(Collectors.toSet());
+        assertEquals(50, expected.size());
+        assertEquals(expected, ids(indexed.values(predicate)));
+        assertEquals(expected, ids(plain.values(predicate)));
+
+        logger.info("Device since timestamp: indexed {} us, without indexes {} us", measure(indexed, predicate), measure(plain, predicate));
+    }
+
+    @Test
+    public void shouldFindNotificationsByNamesAndNetworks() {
+        Predicate predicate = helper.prepareFilters(Arrays.asList("device-3", "device-13", "device-4"), Collections.singleton("name-2"),
+                null, new Date(start + 60000), false, null, DeviceNotification.class);
+
+        Set<Long> expected = notifications.stream()
+                .filter(n -> Arrays.asList("device-3", "device-13", "device-4").contains(n.getDeviceId())
+                        && n.getNotification().equals("name-2")
+                        && n.getTimestamp().before(new Date(start + 60000)))
+                .map(DeviceNotification::getId)
+                .collect(Collectors.toSet());
+        assertEquals(36, expected.size());
+        assertEquals(expected, ids(indexed.values(predicate)));
+
+        Predicate byNetwork = helper.prepareFilters(null, Collections.singleton(3L), null, null, Collections.singleton("name-0"),
+                null, null, false, null, DeviceNotification.class);
+        assertEquals(DEVICES / 10 * NOTIFICATIONS_PER_DEVICE / 5, indexed.values(byNetwork).size());
+
+        logger.info("Devices and names: indexed {} us, without indexes {} us", measure(indexed, predicate), measure(plain, predicate));
+    }
+
+    @Test
+    public void shouldFindNotificationByIdAndDevice() {
+        Predicate predicate = helper.prepareFilters(705L, "device-7", DeviceNotification.class);
+        assertEquals(Collections.singleton(705L), ids(indexed.values(predicate)));
+
+        Predicate otherDevice = helper.prepareFilters(705L, "device-8", DeviceNotification.class);
+        assertEquals(Collections.emptySet(), ids(indexed.values(otherDevice)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldReturnTopEntitiesInRequestedOrder() {
+        Predicate predicate = helper.prepareFilters(null, Collections.singleton(5L), null, null, null,
+                null, null, false, null, DeviceNotification.class);
+        HazelcastEntityComparator order = CommandResponseFilterAndSort.buildOrder("notification", "desc", DeviceNotification.class);
+
+        List<Long> expected = notifications.stream()
+                .filter(n -> n.getNetworkId() == 5L)
+                .sorted(order.forEntities())
+                .limit(25)
+                .map(DeviceNotification::getId)
+                .collect(Collectors.toList());
+        List<Long> found = indexed.values(new PagingPredicate(predicate, (Comparator) order, 25)).stream()
+                .map(DeviceNotification::getId)
+                .collect(Collectors.toList());
+
+        assertEquals(expected, found);
+        assertEquals("name-4", indexed.get(notifications.get(found.get(0).intValue()).getHazelcastKey()).getNotification());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldPageThroughEntitiesWithSameTimestampByCursor() {
+        List<String> devices = Arrays.asList("device-3", "device-13");
+        HazelcastEntityComparator order = CommandResponseFilterAndSort.buildOrder("timestamp", null, DeviceNotification.class);
+        List<Long> expected = notifications.stream()
+                .filter(n -> devices.contains(n.getDeviceId()) && n.getNotification().equals("name-2"))
+                .sorted(order.forEntities())
+                .map(DeviceNotification::getId)
+                .collect(Collectors.toList());
+        assertEquals(40, expected.size());
+
+        List<Long> found = new ArrayList<>();
+        SearchCursor cursor = null;
+        do {
+            Predicate predicate = helper.prepareFilters(devices, Collections.singleton("name-2"), null, null, false, null,
+                    cursor, order.isDescending(), DeviceNotification.class);
+            Collection<DeviceNotification> page = indexed.values(new PagingPredicate(predicate, (Comparator) order, 7));
+            page.forEach(n -> found.add(n.getId()));
+            String next = CommandResponseFilterAndSort.nextCursor(page, 7, order);
+            cursor = next != null ? SearchCursor.parse(next) : null;
+        } while (cursor != null);
+
+        assertEquals(expected, found);
+    }
+
+    private static long measure(IMap<String, DeviceNotification> map, Predicate predicate) {
+        for (int i = 0; i < ROUNDS; i++) {
+            map.values(predicate);
+        }
+        long started = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            map.values(predicate);
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started) / ROUNDS;
+    }
+
+    private static Set<Long> ids(Collection<DeviceNotification> found) {
+        return found.stream().map(DeviceNotification::getId).collect(Collectors.toSet());
+    }
+}
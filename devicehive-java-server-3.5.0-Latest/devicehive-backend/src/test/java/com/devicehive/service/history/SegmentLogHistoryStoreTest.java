@@ -0,0 +1,254 @@
+package com.devicehive.service.history;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.HazelcastEntityComparator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentLogHistoryStoreTest {
+
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private SegmentLogHistoryStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = folder.getRoot().toPath();
+        store = open();
+    }
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void shouldFindNotificationsAcrossPartitionsInTimestampOrder() throws Exception {
+        long start = System.currentTimeMillis() - 5 * HOUR;
+        for (int i = 0; i < 50; i++) {
+            store.append(notification(i, i % 2 == 0 ? "even" : "odd", start + i * HOUR / 10));
+        }
+
+        Collection<DeviceNotification> found = awaitNotifications(filter(null, null, null), 25);
+        assertEquals(25, found.size());
+
+        HistoryFilter evenAfterTwoHours = filter(Collections.singleton("even"), new Date(start + 2 * HOUR), null);
+        List<Long> ids = store.find(evenAfterTwoHours, 5, DeviceNotification.class).stream()
+                .map(DeviceNotification::getId)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(22L, 24L, 26L, 28L, 30L), ids);
+    }
+
+    @Test
+    public void shouldReturnLatestVersionOfCommand() throws Exception {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(1L);
+        command.setDeviceId("device");
+        command.setCommand("cmd");
+        command.setTimestamp(new Date(System.currentTimeMillis() - HOUR));
+        store.append(command);
+
+        DeviceCommand updated = new DeviceCommand();
+        updated.setId(1L);
+        updated.setDeviceId("device");
+        updated.setCommand("cmd");
+        updated.setTimestamp(command.getTimestamp());
+        updated.setStatus("done");
+        store.append(updated);
+
+        HistoryFilter filter = new HistoryFilter(Collections.singleton("device"), null, null, null, null,
+                null, null, false, null);
+        long deadline = System.currentTimeMillis() + 10000;
+        Collection<DeviceCommand> found = store.find(filter, 0, DeviceCommand.class);
+        while ((found.isEmpty() || found.iterator().next().getStatus() == null) && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+            found = store.find(filter, 0, DeviceCommand.class);
+        }
+
+        assertEquals(1, found.size());
+        assertEquals("done", found.iterator().next().getStatus());
+    }
+
+    @Test
+    public void shouldRecoverSegmentsAfterReopen() throws Exception {
+        long start = System.currentTimeMillis() - 3 * HOUR;
+        for (int i = 0; i < 100; i++) {
+            store.append(notification(i, "temperature", start + i * 1000));
+        }
+        awaitNotifications(filter(null, null, null), 100);
+        store.close();
+
+        store = open();
+        assertEquals(100, store.find(filter(null, null, null), 0, DeviceNotification.class).size());
+
+        store.append(notification(100, "temperature", start + 100 * 1000));
+        assertEquals(101, awaitNotifications(filter(null, null, null), 101).size());
+    }
+
+    @Test
+    public void shouldNotDecodeRecordsOfOtherDevicesOrOutsideTimeRange() throws Exception {
+        long start = System.currentTimeMillis() - 5 * HOUR;
+        for (int i = 0; i < 500; i++) {
+            DeviceNotification notification = notification(i, "temperature", start + i * HOUR / 100);
+            notification.setDeviceId(i % 10 == 0 ? "device" : "other-" + i % 10);
+            store.append(notification);
+        }
+        HistoryFilter otherDevice = new HistoryFilter(Collections.singleton("other-9"), null, null, null, null,
+                null, null, false, null);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (store.find(otherDevice, 0, DeviceNotification.class).size() < 50 && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        long decoded = store.getDecodedCount();
+        Collection<DeviceNotification> found = store.find(filter(null, null, null), 0, DeviceNotification.class);
+        assertEquals(50, found.size());
+        assertEquals(50, store.getDecodedCount() - decoded);
+
+        decoded = store.getDecodedCount();
+        found = store.find(filter(null, new Date(start + 4 * HOUR), null), 0, DeviceNotification.class);
+        assertEquals(9, found.size());
+        assertEquals(9, store.getDecodedCount() - decoded);
+    }
+
+    @Test
+    public void shouldKeepOnlyRequestedNumberOfEntitiesInOrder() throws Exception {
+        long start = System.currentTimeMillis() - 5 * HOUR;
+        for (int i = 0; i < 200; i++) {
+            store.append(notification(i, "temperature", start + i * HOUR / 50));
+        }
+        awaitNotifications(filter(null, null, null), 200);
+
+        HazelcastEntityComparator descending = new HazelcastEntityComparator(HazelcastEntityComparator.TIMESTAMP, true);
+        List<Long> ids = store.find(filter(null, null, null), 3, descending.forEntities(), DeviceNotification.class).stream()
+                .map(DeviceNotification::getId)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(199L, 198L, 197L), ids);
+
+        ids = store.find(filter(null, null, null), 3, DeviceNotification.class).stream()
+                .map(DeviceNotification::getId)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(0L, 1L, 2L), ids);
+    }
+
+    @Test
+    public void shouldSkipCommandWhoseLatestVersionDoesNotMatch() throws Exception {
+        long timestamp = System.currentTimeMillis() - HOUR;
+        for (long id = 1; id <= 3; id++) {
+            store.append(command(id, "pending", timestamp + id));
+        }
+        store.append(command(2L, "done", timestamp + 2));
+
+        HistoryFilter all = new HistoryFilter(Collections.singleton("device"), null, null, null, null,
+                null, null, false, null);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!store.find(all, 0, DeviceCommand.class).stream().anyMatch(c -> "done".equals(c.getStatus()))
+                && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+
+        HistoryFilter pending = new HistoryFilter(Collections.singleton("device"), null, null, null, null,
+                null, null, false, "pending");
+        List<Long> ids = store.find(pending, 2, DeviceCommand.class).stream()
+                .map(DeviceCommand::getId)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(1L, 3L), ids);
+    }
+
+    private SegmentLogHistoryStore open() throws Exception {
+        // small segments to exercise rolling
+        return new SegmentLogHistoryStore(directory, 4096, HOUR, 24 * HOUR, 1024, GsonFactory.createGson());
+    }
+
+    @Test
+    public void shouldKeepWritingAfterWriterIsInterrupted() throws Exception {
+        long start = System.currentTimeMillis() - HOUR;
+        store.append(notification(0, "before", start));
+        awaitNotifications(filter(null, null, null), 1);
+
+        Thread writer = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> "history-writer".equals(thread.getName()) && thread.isAlive())
+                .findFirst().get();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (writer.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        writer.interrupt();
+        TimeUnit.MILLISECONDS.sleep(200);
+        assertTrue(writer.isAlive());
+        store.append(notification(1, "after", start + 1));
+
+        assertEquals(2, awaitNotifications(filter(null, null, null), 2).size());
+    }
+
+    private Collection<DeviceNotification> awaitNotifications(HistoryFilter filter, int expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        Collection<DeviceNotification> found = store.find(filter, 0, DeviceNotification.class);
+        while (found.size() < expected && System.currentTimeMillis() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(20);
+            found = store.find(filter, 0, DeviceNotification.class);
+        }
+        assertTrue("Only " + found.size() + " of " + expected + " entities stored", found.size() >= expected);
+        return found.stream().limit(expected).collect(Collectors.toList());
+    }
+
+    private static HistoryFilter filter(Collection<String> names, Date start, Date end) {
+        return new HistoryFilter(Collections.singleton("device"), null, null, null, names, start, end, false, null);
+    }
+
+    private static DeviceCommand command(long id, String status, long timestamp) {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(id);
+        command.setDeviceId("device");
+        command.setCommand("cmd");
+        command.setStatus(status);
+        command.setTimestamp(new Date(timestamp));
+        return command;
+    }
+
+    private static DeviceNotification notification(long id, String name, long timestamp) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setDeviceId("device");
+        notification.setNotification(name);
+        notification.setTimestamp(new Date(timestamp));
+        return notification;
+    }
+}
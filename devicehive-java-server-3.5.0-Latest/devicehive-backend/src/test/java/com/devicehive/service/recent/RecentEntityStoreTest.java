@@ -0,0 +1,127 @@
+package com.devicehive.service.recent;
+
+/*
+ * #%L
+ * DeviceHive Backend Logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.DeviceNotification;
+import com.devicehive.service.history.HistoryFilter;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecentEntityStoreTest {
+
+    private static final int CAPACITY = 16;
+
+    // entities are stamped after the store has started covering the period
+    private final long start = System.currentTimeMillis() + 60000;
+    private final RecentEntityStore store = new RecentEntityStore(CAPACITY, Long.MAX_VALUE);
+
+    @After
+    public void tearDown() {
+        store.close();
+    }
+
+    @Test
+    public void shouldReturnNotificationsSinceTimestampInOrder() {
+        for (int i = CAPACITY - 1; i >= 0; i--) {
+            store.put(notification(i, i % 2 == 0 ? "even" : "odd", start + i));
+        }
+
+        Optional<List<DeviceNotification>> found = store.find("device", start + 3, filter("device", "even"), 3, DeviceNotification.class);
+        assertTrue(found.isPresent());
+        assertEquals(Arrays.asList(4L, 6L, 8L), ids(found.get()));
+    }
+
+    @Test
+    public void shouldNotAnswerWhenEntitiesWereOverwritten() {
+        for (int i = 0; i < CAPACITY * 2; i++) {
+            store.put(notification(i, "temperature", start + i));
+        }
+
+        assertFalse(store.find("device", start + CAPACITY - 2, filter("device", null), 0, DeviceNotification.class).isPresent());
+
+        Optional<List<DeviceNotification>> found = store.find("device", start + CAPACITY - 1, filter("device", null), 0, DeviceNotification.class);
+        assertTrue(found.isPresent());
+        assertEquals(CAPACITY, found.get().size());
+        assertEquals(CAPACITY, (long) found.get().get(0).getId());
+    }
+
+    @Test
+    public void shouldNotAnswerForPeriodBeforeStoreStarted() {
+        store.put(notification(0, "temperature", start));
+
+        assertFalse(store.find("device", System.currentTimeMillis() - 1000, filter("device", null), 0, DeviceNotification.class).isPresent());
+        assertTrue(store.find("device", start, filter("device", null), 0, DeviceNotification.class).isPresent());
+    }
+
+    @Test
+    public void shouldNotAnswerForDeviceWithoutStoredEntities() {
+        store.put(notification(0, "temperature", start));
+
+        assertFalse(store.find("other", start, filter("other", null), 0, DeviceNotification.class).isPresent());
+    }
+
+    @Test
+    public void shouldReplaceUpdatedCommand() {
+        DeviceCommand command = command(1L, null);
+        store.put(command);
+        store.put(command(1L, "done"));
+
+        List<DeviceCommand> found = store.find("device", start, filter("device", null), 0, DeviceCommand.class).get();
+        assertEquals(1, found.size());
+        assertEquals("done", found.get(0).getStatus());
+    }
+
+    private static HistoryFilter filter(String deviceId, String name) {
+        return new HistoryFilter(Collections.singleton(deviceId), null, null, null,
+                name != null ? Collections.singleton(name) : null, null, null, false, null);
+    }
+
+    private static List<Long> ids(List<DeviceNotification> notifications) {
+        return notifications.stream().map(DeviceNotification::getId).collect(Collectors.toList());
+    }
+
+    private static DeviceNotification notification(long id, String name, long timestamp) {
+        DeviceNotification notification = new DeviceNotification();
+        notification.setId(id);
+        notification.setDeviceId("device");
+        notification.setNotification(name);
+        notification.setTimestamp(new Date(timestamp));
+        return notification;
+    }
+
+    private DeviceCommand command(long id, String status) {
+        DeviceCommand command = new DeviceCommand();
+        command.setId(id);
+        command.setDeviceId("device");
+        command.setCommand("cmd");
+        command.setTimestamp(new Date(start + 1));
+        command.setStatus(status);
+        return command;
+    }
+}
@@ -30,6 +30,26 @@ import java.lang.annotation.Annotation;
 public class ResponseFactory {
 
     public static Response response(Response.Status status, Object entity, JsonPolicyDef.Policy policy) {
+        return builder(status, entity, policy).build();
+    }
+
+    /**
+     * Builds response with additional header, which is omitted if its value is null.
+     */
+    public static Response response(Response.Status status, Object entity, JsonPolicyDef.Policy policy,
+                                    String headerName, Object headerValue) {
+        return builder(status, entity, policy).header(headerName, headerValue).build();
+    }
+
+    public static Response response(Response.Status status, Object entity) {
+        return response(status, entity, null);
+    }
+
+    public static Response response(Response.Status status) {
+        return response(status, null, null);
+    }
+
+    private static Response.ResponseBuilder builder(Response.Status status, Object entity, JsonPolicyDef.Policy policy) {
 
         Response.ResponseBuilder responseBuilder = Response.status(status);
 
@@ -40,14 +60,6 @@ public class ResponseFactory {
             responseBuilder.entity(entity, annotations);
         }
 
-        return responseBuilder.type(MediaType.APPLICATION_JSON_TYPE).build();
-    }
-
-    public static Response response(Response.Status status, Object entity) {
-        return response(status, entity, null);
-    }
-
-    public static Response response(Response.Status status) {
-        return response(status, null, null);
+        return responseBuilder.type(MediaType.APPLICATION_JSON_TYPE);
     }
 }
@@ -0,0 +1,65 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Executes response callbacks of {@link RequestResponseMatcher}. Callbacks are submitted with their correlation id,
+ * executors that run callbacks asynchronously may use it to preserve ordering of callbacks with the same id.
+ */
+public interface CallbackExecutor {
+
+    void execute(String correlationId, Runnable callback);
+
+    /**
+     * Returns number of callbacks submitted but not started yet.
+     */
+    int getQueueDepth();
+
+    default void shutdown() { }
+
+    /**
+     * Creates executor for dispatch mode:
+     * <ul>
+     *     <li>{@code inline} - runs callbacks on the thread that received the response, i.e. Kafka consumer thread;</li>
+     *     <li>{@code ordered} - runs callbacks on a pool of {@code threads}, serializing callbacks with the same
+     *     correlation id, while callbacks of different ids run in parallel;</li>
+     *     <li>{@code keyed} - runs callbacks on {@code threads} single-threaded lanes, selected by correlation id,
+     *     each lane queues up to {@code queueCapacity} callbacks and blocks the receiving thread when full;</li>
+     *     <li>{@code elastic} - runs every callback on a pooled thread, creating up to {@code threads} threads
+     *     on demand and releasing idle ones, for callbacks that mostly block; when all threads are busy,
+     *     callbacks queue up to {@code queueCapacity} and then block the receiving thread.</li>
+     * </ul>
+     */
+    static CallbackExecutor forMode(String mode, int threads, int queueCapacity) {
+        switch (mode) {
+            case "inline":
+                return new InlineCallbackExecutor();
+            case "ordered":
+                return new OrderedCallbackExecutor(threads);
+            case "keyed":
+                return new KeyedCallbackExecutor(threads, queueCapacity);
+            case "elastic":
+                return new ElasticCallbackExecutor(threads, queueCapacity);
+            default:
+                throw new IllegalArgumentException("Unknown callback dispatch mode: " + mode);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs every callback on a pooled thread, starting new threads on demand up to {@code maxThreads}, so blocking
+ * callbacks rarely wait for each other. Idle threads are released after a minute. When all threads are busy,
+ * callbacks wait in a queue of {@code queueCapacity}; when it is full, submitting thread waits for space in it,
+ * so a burst of responses cannot exhaust native threads. Callbacks are not ordered.
+ */
+public class ElasticCallbackExecutor implements CallbackExecutor {
+
+    private final AtomicInteger threadNumber = new AtomicInteger();
+
+    private final ThreadPoolExecutor executor;
+
+    public ElasticCallbackExecutor(int maxThreads, int queueCapacity) {
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity), r -> {
+                    Thread thread = new Thread(r, "rpc-callback-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (r, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Callback executor is shut down");
+                    }
+                    try {
+                        pool.getQueue().put(r);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void execute(String correlationId, Runnable callback) {
+        executor.execute(callback);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
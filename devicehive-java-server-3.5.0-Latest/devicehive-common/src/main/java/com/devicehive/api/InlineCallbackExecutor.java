@@ -0,0 +1,38 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Runs callbacks on the calling thread. Keeps order of responses, but a blocking callback stalls
+ * consumption of all responses received by the same thread.
+ */
+public class InlineCallbackExecutor implements CallbackExecutor {
+
+    @Override
+    public void execute(String correlationId, Runnable callback) {
+        callback.run();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return 0;
+    }
+}
@@ -0,0 +1,80 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs callbacks on a fixed number of single-threaded lanes. Lane is selected by correlation id,
+ * so callbacks of the same request or subscription run one after another in order of submission.
+ * Lane queues are bounded: when a lane is full, submitting thread waits for space in it,
+ * which slows down consumption of responses instead of growing the heap.
+ */
+public class KeyedCallbackExecutor implements CallbackExecutor {
+
+    private final ThreadPoolExecutor[] lanes;
+
+    public KeyedCallbackExecutor(int threads, int queueCapacity) {
+        lanes = new ThreadPoolExecutor[threads];
+        for (int i = 0; i < threads; i++) {
+            String name = "rpc-callback-" + i;
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }, (r, executor) -> {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Callback executor is shut down");
+                }
+                try {
+                    executor.getQueue().put(r);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RejectedExecutionException(e);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void execute(String correlationId, Runnable callback) {
+        lanes[(correlationId.hashCode() & Integer.MAX_VALUE) % lanes.length].execute(callback);
+    }
+
+    @Override
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor lane : lanes) {
+            depth += lane.getQueue().size();
+        }
+        return depth;
+    }
+
+    @Override
+    public void shutdown() {
+        for (ThreadPoolExecutor lane : lanes) {
+            lane.shutdown();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.devicehive.api;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs callbacks on a shared pool, one at a time per correlation id, in order of submission.
+ * Every correlation id with pending callbacks has its own queue, which is drained by a single pool task,
+ * so a slow callback delays only callbacks of the same request or subscription. Queues are created and
+ * released inside atomic operations of a concurrent map, there is no lock shared by different ids.
+ */
+public class OrderedCallbackExecutor implements CallbackExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(OrderedCallbackExecutor.class);
+
+    /**
+     * Number of callbacks a queue runs before yielding the pool thread to other queues.
+     */
+    private static final int BATCH_SIZE = 64;
+
+    private final ConcurrentHashMap<String, KeyQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final ExecutorService pool;
+
+    private final class KeyQueue implements Runnable {
+        private final String correlationId;
+        private final Queue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
+
+        private KeyQueue(String correlationId) {
+            this.correlationId = correlationId;
+        }
+
+        @Override
+        public void run() {
+            Runnable callback;
+            for (int i = 0; i < BATCH_SIZE && (callback = callbacks.poll()) != null; i++) {
+                queueDepth.decrementAndGet();
+                try {
+                    callback.run();
+                } catch (Exception e) {
+                    logger.error("Callback for {} failed", correlationId, e);
+                }
+            }
+            // queue is released only if nothing was added to it since the last poll
+            if (queues.computeIfPresent(correlationId, (id, queue) -> queue.callbacks.isEmpty() ? null : queue) != null) {
+                pool.execute(this);
+            }
+        }
+    }
+
+    public OrderedCallbackExecutor(int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "rpc-callback-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void execute(String correlationId, Runnable callback) {
+        KeyQueue[] created = new KeyQueue[1];
+        queueDepth.incrementAndGet();
+        queues.compute(correlationId, (id, queue) -> {
+            if (queue == null) {
+                queue = created[0] = new KeyQueue(id);
+            }
+            queue.callbacks.offer(callback);
+            return queue;
+        });
+        if (created[0] != null) {
+            pool.execute(created[0]);
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    @Override
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -20,28 +20,124 @@ package com.devicehive.api;
  * #L%
  */
 
+import com.devicehive.model.rpc.ErrorResponse;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.SetMultimap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
+/**
+ * Matches responses received from the server with callbacks of requests sent by this client.
+ * Callbacks of requests expecting a single reply are given a deadline: when no last response arrives in time,
+ * callback is removed and receives a failed response with {@link #TIMEOUT_ERROR_CODE}, so that pending futures fail
+ * instead of leaking. Deadlines are tracked by a hashed timing wheel ticking on a single daemon thread.
+ * Callbacks of subscriptions live until the subscription is removed.
+ */
 public class RequestResponseMatcher {
     private static final Logger logger = LoggerFactory.getLogger(RequestResponseMatcher.class);
 
-    private final ConcurrentHashMap<String, Consumer<Response>> correlationMap = new ConcurrentHashMap<>();
-    private final SetMultimap<Long, String> subscriptionMap = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    public static final long DEFAULT_RESPONSE_TIMEOUT_MS = 60000;
+    public static final int TIMEOUT_ERROR_CODE = 504;
+    public static final int DEFAULT_CALLBACK_THREADS = 16;
+
+    private static final long TICK_MS = 100;
+    private static final int WHEEL_SIZE = 512;
+    private static final long NO_PENDING = Long.MAX_VALUE;
+
+    private final ConcurrentHashMap<String, PendingCallback> correlationMap = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Set<String>> subscriptionMap = new ConcurrentHashMap<>();
+
+    private final CallbackExecutor callbackExecutor;
+
+    private final long responseTimeoutMs;
+
+    /**
+     * Callbacks with deadline, waiting to be put on the wheel by the timer thread.
+     */
+    private final ConcurrentLinkedQueue<PendingCallback> scheduled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Wheel buckets, indexed by deadline tick. Accessed only by the timer thread.
+     */
+    private final List<List<PendingCallback>> wheel = new ArrayList<>(WHEEL_SIZE);
+    private long tick;
 
-    //TODO [rafa] we do not really need FJP, but rather some other pool implementation. Though FJP looks good, it might be over kill for our use case.
-    private final ForkJoinPool executionPool = new ForkJoinPool();
+    private final ScheduledExecutorService timer;
+    private final AtomicLong expiredCount = new AtomicLong();
+    private volatile long oldestPendingCreatedAt = NO_PENDING;
 
+    private static final class PendingCallback {
+        private final String correlationId;
+        private final Consumer<Response> callback;
+        private final long createdAt;
+        private final long deadlineTick;
+
+        private PendingCallback(String correlationId, Consumer<Response> callback, long createdAt, long deadlineTick) {
+            this.correlationId = correlationId;
+            this.callback = callback;
+            this.createdAt = createdAt;
+            this.deadlineTick = deadlineTick;
+        }
+    }
+
+    public RequestResponseMatcher() {
+        this(DEFAULT_RESPONSE_TIMEOUT_MS);
+    }
+
+    public RequestResponseMatcher(long responseTimeoutMs) {
+        this(responseTimeoutMs, new OrderedCallbackExecutor(DEFAULT_CALLBACK_THREADS));
+    }
+
+    public RequestResponseMatcher(long responseTimeoutMs, CallbackExecutor callbackExecutor) {
+        this.responseTimeoutMs = responseTimeoutMs;
+        this.callbackExecutor = callbackExecutor;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        this.tick = now() / TICK_MS;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rpc-response-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::expireCallbacks, TICK_MS, TICK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers callback, which expires if no last response is received within response timeout.
+     */
     public void addRequestCallback(String correlationId, Consumer<Response> callback) {
-        correlationMap.put(correlationId, callback);
+        addRequestCallback(correlationId, callback, responseTimeoutMs);
+    }
+
+    /**
+     * Registers callback of the request. Only callbacks of requests expecting a single reply expire,
+     * callbacks of subscription requests are kept until {@link #removeSubscription(Long)}.
+     */
+    public void addRequestCallback(Request request, Consumer<Response> callback) {
+        addRequestCallback(request.getCorrelationId(), callback, request.isSingleReplyExpected() ? responseTimeoutMs : 0);
+    }
+
+    private void addRequestCallback(String correlationId, Consumer<Response> callback, long timeoutMs) {
+        long now = now();
+        long deadlineTick = timeoutMs > 0 ? (now + timeoutMs) / TICK_MS : Long.MAX_VALUE;
+        PendingCallback pending = new PendingCallback(correlationId, callback, now, deadlineTick);
+        correlationMap.put(correlationId, pending);
+        if (timeoutMs > 0) {
+            scheduled.offer(pending);
+        }
     }
 
     public void removeRequestCallback(String correlationId) {
@@ -49,27 +145,144 @@ public class RequestResponseMatcher {
     }
 
     public void offerResponse(Response response) {
-        Consumer<Response> callback = correlationMap.get(response.getCorrelationId());
-        if (callback != null) {
-            executionPool.execute(() -> {
+        if (response.isGrouped()) {
+            for (String correlationId : response.getCorrelationIds()) {
+                Response.Builder<Body> builder = Response.<Body>newBuilder()
+                        .withBody(response.getBody())
+                        .withCorrelationId(correlationId)
+                        .withLast(response.isLast());
+                offerResponse(correlationId, response.isFailed() ? builder.buildFailed(response.getErrorCode()) : builder.buildSuccess());
+            }
+        } else {
+            offerResponse(response.getCorrelationId(), response);
+        }
+    }
+
+    private void offerResponse(String correlationId, Response response) {
+        PendingCallback pending = correlationMap.get(correlationId);
+        if (pending != null) {
+            callbackExecutor.execute(correlationId, () -> {
                 try {
-                    callback.accept(response);
+                    pending.callback.accept(response);
                 } finally {
                     if (response.isLast()) {
-                        correlationMap.remove(response.getCorrelationId());
+                        correlationMap.remove(correlationId, pending);
                     }
                 }
             });
         } else {
-            logger.warn("Callback was not found for {}. Map size: {}, response: {}", response.getCorrelationId(), correlationMap.size(), response.getBody());
+            logger.warn("Callback was not found for {}. Map size: {}, response: {}", correlationId, correlationMap.size(), response.getBody());
         }
     }
 
     public void addSubscription(Long subscriptionId, String correlationId) {
-       subscriptionMap.put(subscriptionId, correlationId);
+        subscriptionMap.compute(subscriptionId, (id, correlationIds) -> {
+            Set<String> updated = correlationIds != null ? correlationIds : ConcurrentHashMap.newKeySet();
+            updated.add(correlationId);
+            return updated;
+        });
     }
 
+    /**
+     * Removes subscription together with callbacks of all requests it was created by.
+     */
     public void removeSubscription(Long subscriptionId) {
-        subscriptionMap.removeAll(subscriptionId);
+        Set<String> correlationIds = subscriptionMap.remove(subscriptionId);
+        if (correlationIds != null) {
+            correlationIds.forEach(correlationMap::remove);
+        }
+    }
+
+    public int getPendingCount() {
+        return correlationMap.size();
+    }
+
+    public int getSubscriptionCount() {
+        return subscriptionMap.size();
+    }
+
+    /**
+     * Returns age in milliseconds of the oldest callback with deadline still waiting for response, or 0 if there
+     * are none. Subscription callbacks are not counted. The oldest callback is looked up on every tick of the wheel.
+     */
+    public long getOldestPendingAge() {
+        long oldest = oldestPendingCreatedAt;
+        return oldest == NO_PENDING ? 0 : Math.max(0, now() - oldest);
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public int getCallbackQueueDepth() {
+        return callbackExecutor.getQueueDepth();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        callbackExecutor.shutdown();
+    }
+
+    private void expireCallbacks() {
+        try {
+            long currentTick = now() / TICK_MS;
+            PendingCallback pending;
+            while ((pending = scheduled.poll()) != null) {
+                wheel.get(bucket(Math.max(pending.deadlineTick, currentTick))).add(pending);
+            }
+            tick = Math.max(tick, currentTick - WHEEL_SIZE + 1);
+            for (; tick <= currentTick; tick++) {
+                wheel.get(bucket(tick)).removeIf(p -> correlationMap.get(p.correlationId) != p
+                        || p.deadlineTick <= currentTick && expire(p));
+            }
+            oldestPendingCreatedAt = findOldestPending();
+        } catch (Exception e) {
+            logger.error("Unable to expire response callbacks", e);
+        }
+    }
+
+    /**
+     * Finds callback with the earliest deadline, dropping answered callbacks from the buckets on the way. All callbacks
+     * on the wheel share the response timeout, so it is also the oldest one. Buckets are visited in deadline order,
+     * callbacks due in later turns of the wheel share them, so the scan stops at the first bucket which cannot hold
+     * an earlier deadline.
+     */
+    private long findOldestPending() {
+        PendingCallback oldest = null;
+        for (int offset = 0; offset < WHEEL_SIZE; offset++) {
+            if (oldest != null && oldest.deadlineTick <= tick + offset) {
+                break;
+            }
+            List<PendingCallback> bucket = wheel.get(bucket(tick + offset));
+            bucket.removeIf(p -> correlationMap.get(p.correlationId) != p);
+            for (PendingCallback pending : bucket) {
+                if (oldest == null || pending.deadlineTick < oldest.deadlineTick) {
+                    oldest = pending;
+                }
+            }
+        }
+        return oldest != null ? oldest.createdAt : NO_PENDING;
+    }
+
+    private boolean expire(PendingCallback pending) {
+        if (!correlationMap.remove(pending.correlationId, pending)) {
+            return true;
+        }
+        expiredCount.incrementAndGet();
+        logger.warn("Response for {} was not received in {} ms", pending.correlationId, now() - pending.createdAt);
+        Response timeout = Response.newBuilder()
+                .withBody(new ErrorResponse("Response timeout"))
+                .withCorrelationId(pending.correlationId)
+                .buildFailed(TIMEOUT_ERROR_CODE);
+        callbackExecutor.execute(pending.correlationId, () -> pending.callback.accept(timeout));
+        return true;
+    }
+
+    private static int bucket(long tick) {
+        return (int) (tick & (WHEEL_SIZE - 1));
+    }
+
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
     }
 }
@@ -74,6 +74,8 @@ public class Constants {
     public static final String TIMESTAMP = "timestamp";
     public static final String START_TIMESTAMP = "start";
     public static final String END_TIMESTAMP = "end";
+    public static final String CURSOR = "cursor";
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
     public static final String LIMIT = "limit";
     public static final String COMMAND_ID = "commandId";
     public static final String RETURN_COMMANDS = "returnCommands";
@@ -43,6 +43,8 @@ import static com.devicehive.json.strategies.JsonPolicyDef.Policy;
 
 public class GsonFactory {
 
+    private static final RuntimeTypeAdapterFactory<Body> bodyAdapterFactory = createBodyAdapterFactory();
+
     private static Map<Policy, Gson> cache = new ConcurrentHashMap<>();
     private static Gson gson = createGsonBuilder().create();
 
@@ -64,8 +66,15 @@ public class GsonFactory {
     }
 
 
-    private static GsonBuilder createGsonBuilder() {
-        RuntimeTypeAdapterFactory<Body> req = RuntimeTypeAdapterFactory.of(Body.class, "a")
+    /**
+     * Returns body class registered for action id, i.e. for {@link Action#ordinal()}, or null if there is none.
+     */
+    public static Class<? extends Body> getBodyType(int actionId) {
+        return bodyAdapterFactory.getSubtype(actionId);
+    }
+
+    private static RuntimeTypeAdapterFactory<Body> createBodyAdapterFactory() {
+        return RuntimeTypeAdapterFactory.of(Body.class, "a")
                 .registerSubtype(ErrorResponse.class, Action.ERROR_RESPONSE.ordinal())
 
                 .registerSubtype(CommandInsertRequest.class, Action.COMMAND_INSERT_REQUEST.ordinal())
@@ -128,7 +137,9 @@ public class GsonFactory {
                 .registerSubtype(DeviceDeleteResponse.class, Action.DEVICE_DELETE_RESPONSE.ordinal())
 
                 .registerSubtype(CountResponse.class, Action.COUNT_RESPONSE.ordinal());
+    }
 
+    private static GsonBuilder createGsonBuilder() {
         return new GsonBuilder()
                 .disableHtmlEscaping()
                 .serializeNulls()
@@ -137,7 +148,7 @@ public class GsonFactory {
                 .registerTypeAdapter(Date.class, new TimestampAdapter())
                 .registerTypeAdapter(UserRole.class, new UserRoleAdapter())
                 .registerTypeAdapter(UserStatus.class, new UserStatusAdapter())
-                .registerTypeAdapterFactory(req);
+                .registerTypeAdapterFactory(bodyAdapterFactory);
     }
 
 }
@@ -0,0 +1,76 @@
+package com.devicehive.json;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.eventbus.events.Event;
+import com.devicehive.shim.api.Response;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Serializes responses to JSON. Event bodies are taken from the serialized form cached in {@link Event},
+ * so fanning out one event to many subscribers only writes the per-subscriber envelope fields.
+ * Output is equivalent to {@code gson.toJson(response)}.
+ */
+public final class ResponseJsonWriter {
+
+    private static final String BODY_PREFIX = "{\"b\":";
+    private static final byte[] BODY_PREFIX_BYTES = BODY_PREFIX.getBytes(StandardCharsets.UTF_8);
+
+    private ResponseJsonWriter() {
+    }
+
+    public static String toJson(Gson gson, Response response) {
+        if (!(response.getBody() instanceof Event)) {
+            return gson.toJson(response);
+        }
+        Event event = (Event) response.getBody();
+        return BODY_PREFIX + event.getSerializedBody(gson) + envelope(gson, response);
+    }
+
+    public static byte[] toJsonBytes(Gson gson, Response response) {
+        if (!(response.getBody() instanceof Event)) {
+            return gson.toJson(response).getBytes(StandardCharsets.UTF_8);
+        }
+        Event event = (Event) response.getBody();
+        byte[] body = event.getSerializedBodyBytes(gson);
+        byte[] envelope = envelope(gson, response).getBytes(StandardCharsets.UTF_8);
+
+        byte[] bytes = Arrays.copyOf(BODY_PREFIX_BYTES, BODY_PREFIX_BYTES.length + body.length + envelope.length);
+        System.arraycopy(body, 0, bytes, BODY_PREFIX_BYTES.length, body.length);
+        System.arraycopy(envelope, 0, bytes, BODY_PREFIX_BYTES.length + body.length, envelope.length);
+        return bytes;
+    }
+
+    /**
+     * Writes response fields following the body, in the order Gson writes them.
+     */
+    private static String envelope(Gson gson, Response response) {
+        return ",\"cId\":" + gson.toJson(response.getCorrelationId()) +
+                ",\"cIds\":" + gson.toJson(response.getCorrelationIds()) +
+                ",\"l\":" + response.isLast() +
+                ",\"err\":" + response.getErrorCode() +
+                ",\"fld\":" + response.isFailed() +
+                '}';
+    }
+}
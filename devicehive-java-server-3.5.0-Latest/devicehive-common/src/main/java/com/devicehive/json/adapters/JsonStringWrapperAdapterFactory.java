@@ -21,15 +21,27 @@ package com.devicehive.json.adapters;
  */
 
 
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
 import com.devicehive.model.JsonStringWrapper;
 import com.google.gson.*;
 import com.google.gson.internal.Streams;
+import com.google.gson.internal.bind.JsonTreeWriter;
 import com.google.gson.reflect.TypeToken;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import com.google.gson.stream.JsonWriter;
 
 import java.io.IOException;
+import java.io.StringWriter;
 
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+/**
+ * Reads and writes {@link JsonStringWrapper} payloads as embedded JSON objects without building a DOM.
+ * Reading copies the object token by token, which is the only structural check the payload gets;
+ * writing emits the payload as is, unless gson builds a tree, where it has to be parsed.
+ */
 public class JsonStringWrapperAdapterFactory implements TypeAdapterFactory {
 
     @Override
@@ -53,16 +65,76 @@ public class JsonStringWrapperAdapterFactory implements TypeAdapterFactory {
             if (value == null && out.getSerializeNulls()) {
                 out.nullValue();
             } else if (value != null) {
-                Streams.write(new JsonParser().parse(value.getJsonString()), out);
+                if (out instanceof JsonTreeWriter) {
+                    Streams.write(new JsonParser().parse(value.getJsonString()), out);
+                } else {
+                    out.jsonValue(value.getJsonString());
+                }
             }
         }
 
         @Override
         public JsonStringWrapper read(JsonReader in) throws IOException {
-            JsonElement jsonElement = Streams.parse(in);
-            return !JsonNull.INSTANCE.equals(jsonElement)
-                    ? new JsonStringWrapper(jsonElement.toString())
-                    : null;
+            JsonToken token = in.peek();
+            if (token == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            if (token != JsonToken.BEGIN_OBJECT) {
+                throw new HiveException(Messages.PARAMS_NOT_JSON, BAD_REQUEST.getStatusCode());
+            }
+            StringWriter json = new StringWriter();
+            copy(in, new JsonWriter(json));
+            return JsonStringWrapper.trusted(json.toString());
+        }
+
+        /**
+         * Copies one JSON value from reader to writer. Numbers are copied as they were written.
+         */
+        private static void copy(JsonReader in, JsonWriter out) throws IOException {
+            int depth = 0;
+            do {
+                switch (in.peek()) {
+                    case BEGIN_OBJECT:
+                        in.beginObject();
+                        out.beginObject();
+                        depth++;
+                        break;
+                    case END_OBJECT:
+                        in.endObject();
+                        out.endObject();
+                        depth--;
+                        break;
+                    case BEGIN_ARRAY:
+                        in.beginArray();
+                        out.beginArray();
+                        depth++;
+                        break;
+                    case END_ARRAY:
+                        in.endArray();
+                        out.endArray();
+                        depth--;
+                        break;
+                    case NAME:
+                        out.name(in.nextName());
+                        break;
+                    case STRING:
+                        out.value(in.nextString());
+                        break;
+                    case NUMBER:
+                        out.jsonValue(in.nextString());
+                        break;
+                    case BOOLEAN:
+                        out.value(in.nextBoolean());
+                        break;
+                    case NULL:
+                        in.nextNull();
+                        out.nullValue();
+                        break;
+                    default:
+                        throw new JsonSyntaxException("Unexpected end of JSON");
+                }
+            } while (depth > 0);
         }
     }
 }
@@ -193,6 +193,14 @@ public final class RuntimeTypeAdapterFactory<T> implements TypeAdapterFactory {
         return this;
     }
 
+    /**
+     * Returns subtype registered for {@code label}, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public Class<? extends T> getSubtype(Integer label) {
+        return (Class<? extends T>) labelToSubtype.get(label);
+    }
+
     public <R> TypeAdapter<R> create(Gson gson, TypeToken<R> type) {
         if (type.getRawType() != baseType) {
             return null;
@@ -23,9 +23,9 @@ package com.devicehive.model;
 import com.devicehive.json.strategies.JsonPolicyDef;
 import com.google.gson.annotations.SerializedName;
 import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.nio.serialization.Portable;
 import com.hazelcast.nio.serialization.PortableReader;
 import com.hazelcast.nio.serialization.PortableWriter;
+import com.hazelcast.nio.serialization.VersionedPortable;
 import io.swagger.annotations.ApiModelProperty;
 
 import javax.persistence.Temporal;
@@ -39,12 +39,17 @@ import static com.devicehive.json.strategies.JsonPolicyDef.Policy.*;
 /**
  * Created by tmatvienko on 1/27/15.
  */
-public class DeviceCommand implements HiveEntity, HazelcastEntity, Portable {
+public class DeviceCommand implements HiveEntity, HazelcastEntity, VersionedPortable {
     private static final long serialVersionUID = 4140545193474112756L;
     private transient HazelcastInstance hazelcastInstance;
     public static final int FACTORY_ID = 1;
     public static final int CLASS_ID = 2;
 
+    /**
+     * Version 1 keeps JSON fields as raw UTF-8 bytes, version 0 kept them as UTF strings.
+     */
+    public static final int CLASS_VERSION = 1;
+
     @SerializedName("id")
     @JsonPolicyDef({COMMAND_TO_CLIENT, COMMAND_TO_DEVICE, COMMAND_UPDATE_TO_CLIENT, POST_COMMAND_TO_DEVICE,
             COMMAND_LISTED})
@@ -309,6 +314,12 @@ public class DeviceCommand implements HiveEntity, HazelcastEntity, Portable {
         return CLASS_ID;
     }
 
+    @Override
+    @ApiModelProperty(hidden = true)
+    public int getClassVersion() {
+        return CLASS_VERSION;
+    }
+
     @Override
     public void writePortable(PortableWriter portableWriter) throws IOException {
         portableWriter.writeLong("id", Objects.nonNull(id) ? id : 0);
@@ -320,12 +331,10 @@ public class DeviceCommand implements HiveEntity, HazelcastEntity, Portable {
         portableWriter.writeLong("networkId", Objects.nonNull(networkId) ? networkId : 0);
         portableWriter.writeLong("iexperimentId", Objects.nonNull(iexperimentId) ? iexperimentId : 0);
         portableWriter.writeLong("icomponentId", Objects.nonNull(icomponentId) ? icomponentId : 0);
-        boolean parametersIsNotNull = Objects.nonNull(parameters) && Objects.nonNull(parameters.getJsonString());
-        portableWriter.writeUTF("parameters", parametersIsNotNull ? parameters.getJsonString() : null);
+        portableWriter.writeByteArray("parameters", JsonStringWrapper.utf8(parameters));
         portableWriter.writeInt("lifetime", Objects.nonNull(lifetime) ? lifetime : 0);
         portableWriter.writeUTF("status", status);
-        boolean resultIsNotNull = Objects.nonNull(result) && Objects.nonNull(result.getJsonString());
-        portableWriter.writeUTF("result", resultIsNotNull ? result.getJsonString() : null);
+        portableWriter.writeByteArray("result", JsonStringWrapper.utf8(result));
         portableWriter.writeBoolean("isUpdated", Objects.nonNull(isUpdated)? isUpdated : false);
     }
 
@@ -340,16 +349,10 @@ public class DeviceCommand implements HiveEntity, HazelcastEntity, Portable {
         networkId = portableReader.readLong("networkId");
         iexperimentId = portableReader.readLong("iexperimentId");
         icomponentId = portableReader.readLong("icomponentId");
-        String parametersString = portableReader.readUTF("parameters");
-        if (Objects.nonNull(parametersString)) {
-            parameters = new JsonStringWrapper(parametersString);
-        }
+        parameters = JsonStringWrapper.read(portableReader, "parameters", CLASS_VERSION);
         lifetime = portableReader.readInt("lifetime");
         status = portableReader.readUTF("status");
-        String resultString = portableReader.readUTF("result");
-        if (Objects.nonNull(resultString)) {
-            result = new JsonStringWrapper(resultString);
-        }
+        result = JsonStringWrapper.read(portableReader, "result", CLASS_VERSION);
         isUpdated = portableReader.readBoolean("isUpdated");
     }
 
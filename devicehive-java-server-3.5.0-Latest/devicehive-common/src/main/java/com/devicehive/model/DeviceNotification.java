@@ -23,9 +23,9 @@ package com.devicehive.model;
 import com.devicehive.json.strategies.JsonPolicyDef;
 import com.google.gson.annotations.SerializedName;
 import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.nio.serialization.Portable;
 import com.hazelcast.nio.serialization.PortableReader;
 import com.hazelcast.nio.serialization.PortableWriter;
+import com.hazelcast.nio.serialization.VersionedPortable;
 import io.swagger.annotations.ApiModelProperty;
 import org.apache.commons.lang3.ObjectUtils;
 
@@ -37,11 +37,16 @@ import java.util.Objects;
 
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.*;
 
-public class DeviceNotification implements HiveEntity, HazelcastEntity, Portable {
+public class DeviceNotification implements HiveEntity, HazelcastEntity, VersionedPortable {
     private static final long serialVersionUID = 1834383778016225837L;
     private transient HazelcastInstance hazelcastInstance;
     public static final int FACTORY_ID = 1;
     public static final int CLASS_ID = 1;
+
+    /**
+     * Version 1 keeps JSON fields as raw UTF-8 bytes, version 0 kept them as UTF strings.
+     */
+    public static final int CLASS_VERSION = 1;
     
     @SerializedName("id")
     @JsonPolicyDef({NOTIFICATION_TO_CLIENT, NOTIFICATION_TO_DEVICE})
@@ -205,6 +210,12 @@ public class DeviceNotification implements HiveEntity, HazelcastEntity, Portable
         return CLASS_ID;
     }
 
+    @Override
+    @ApiModelProperty(hidden = true)
+    public int getClassVersion() {
+        return CLASS_VERSION;
+    }
+
     @Override
     public void writePortable(PortableWriter portableWriter) throws IOException {
         portableWriter.writeLong("id", Objects.nonNull(id) ? id : 0);
@@ -214,8 +225,7 @@ public class DeviceNotification implements HiveEntity, HazelcastEntity, Portable
         portableWriter.writeLong("iexperimentId", Objects.nonNull(iexperimentId) ? iexperimentId : 0);
         portableWriter.writeLong("icomponentId", Objects.nonNull(icomponentId) ? icomponentId : 0);
         portableWriter.writeLong("timestamp", Objects.nonNull(timestamp) ? timestamp.getTime() :0);
-        boolean parametersIsNotNull = Objects.nonNull(parameters) && Objects.nonNull(parameters.getJsonString());
-        portableWriter.writeUTF("parameters", parametersIsNotNull ? parameters.getJsonString() : null);
+        portableWriter.writeByteArray("parameters", JsonStringWrapper.utf8(parameters));
     }
 
     @Override
@@ -227,10 +237,7 @@ public class DeviceNotification implements HiveEntity, HazelcastEntity, Portable
         iexperimentId = portableReader.readLong("iexperimentId");
         icomponentId = portableReader.readLong("icomponentId");
         timestamp = new Date(portableReader.readLong("timestamp"));
-        String parametersString = portableReader.readUTF("parameters");
-        if (Objects.nonNull(parametersString)) {
-            parameters = new JsonStringWrapper(parametersString);
-        }
+        parameters = JsonStringWrapper.read(portableReader, "parameters", CLASS_VERSION);
     }
 
     @Override
@@ -0,0 +1,94 @@
+package com.devicehive.model;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.core.HazelcastInstanceAware;
+import com.hazelcast.core.IMap;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+import com.hazelcast.query.PartitionPredicate;
+import com.hazelcast.query.Predicate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Search of entities of a single device, executed on the member owning the partition of the device.
+ * Only the partition of the device is scanned and only up to {@code take} first entities in given order
+ * are sent back, or all of them if take is not positive.
+ */
+public class DevicePartitionQuery implements Callable<List<HazelcastEntity>>, HazelcastInstanceAware, DataSerializable {
+
+    private String mapName;
+    private String deviceId;
+    private Predicate<HazelcastEntityKey, HazelcastEntity> predicate;
+    private HazelcastEntityComparator order;
+    private int take;
+
+    private transient HazelcastInstance hazelcastInstance;
+
+    public DevicePartitionQuery() {
+    }
+
+    public DevicePartitionQuery(String mapName, String deviceId, Predicate<HazelcastEntityKey, HazelcastEntity> predicate,
+                                HazelcastEntityComparator order, int take) {
+        this.mapName = mapName;
+        this.deviceId = deviceId;
+        this.predicate = predicate;
+        this.order = order;
+        this.take = take;
+    }
+
+    @Override
+    public List<HazelcastEntity> call() {
+        IMap<HazelcastEntityKey, HazelcastEntity> map = hazelcastInstance.getMap(mapName);
+        List<HazelcastEntity> entities = new ArrayList<>(map.values(new PartitionPredicate<>(deviceId, predicate)));
+        entities.sort(order.forEntities());
+        return take > 0 && entities.size() > take ? new ArrayList<>(entities.subList(0, take)) : entities;
+    }
+
+    @Override
+    public void setHazelcastInstance(HazelcastInstance hazelcastInstance) {
+        this.hazelcastInstance = hazelcastInstance;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeUTF(mapName);
+        out.writeUTF(deviceId);
+        out.writeObject(predicate);
+        out.writeObject(order);
+        out.writeInt(take);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        mapName = in.readUTF();
+        deviceId = in.readUTF();
+        predicate = in.readObject();
+        order = in.readObject();
+        take = in.readInt();
+    }
+}
@@ -42,6 +42,8 @@ public class DevicePortableFactory implements PortableFactory {
             return new Subscriber();
         } else if (HazelcastEntityComparator.CLASS_ID == classId) {
             return new HazelcastEntityComparator();
+        } else if (HazelcastEntityKey.CLASS_ID == classId) {
+            return new HazelcastEntityKey();
         }
         
         return null;
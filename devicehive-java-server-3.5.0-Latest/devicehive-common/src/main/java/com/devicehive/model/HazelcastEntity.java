@@ -28,5 +28,9 @@ public interface HazelcastEntity extends HazelcastInstanceAware {
 
     String getHazelcastKey();
 
+    Long getId();
+
+    String getDeviceId();
+
     Date getTimestamp();
 }
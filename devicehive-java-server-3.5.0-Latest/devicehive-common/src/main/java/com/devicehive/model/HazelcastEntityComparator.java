@@ -20,21 +20,54 @@ package com.devicehive.model;
  * #L%
  */
 
-import com.hazelcast.nio.serialization.Portable;
 import com.hazelcast.nio.serialization.PortableReader;
 import com.hazelcast.nio.serialization.PortableWriter;
+import com.hazelcast.nio.serialization.VersionedPortable;
 
+import java.io.IOException;
 import java.io.Serializable;
 import java.util.Comparator;
-import java.util.Date;
 import java.util.Map;
 
-
-public class HazelcastEntityComparator implements Comparator<Map.Entry<String, HazelcastEntity>>, Serializable, Portable {
+/**
+ * Order of notifications and commands in hazelcast searches, by timestamp unless another sort field is given.
+ * Comparator is sent to the members together with paging predicate, so that each member sorts and limits
+ * its own entries and only the top entries are merged on the caller.
+ */
+public class HazelcastEntityComparator implements Comparator<Map.Entry<HazelcastEntityKey, HazelcastEntity>>, Serializable, VersionedPortable {
     private static final long serialVersionUID = 5413354955792888308L;
     public static final int FACTORY_ID = 1;
     public static final int CLASS_ID = 7;
 
+    /**
+     * Version 1 carries sort field and order, version 0 had no fields and always meant ascending timestamp order.
+     */
+    public static final int CLASS_VERSION = 1;
+
+    public static final String TIMESTAMP = "timestamp";
+    public static final String STATUS = "status";
+    public static final String COMMAND = "command";
+    public static final String NOTIFICATION = "notification";
+
+    private String field = TIMESTAMP;
+    private boolean descending;
+
+    public HazelcastEntityComparator() {
+    }
+
+    public HazelcastEntityComparator(String field, boolean descending) {
+        this.field = field != null ? field : TIMESTAMP;
+        this.descending = descending;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
     @Override
     public int getFactoryId() {
         return FACTORY_ID;
@@ -46,16 +79,74 @@ public class HazelcastEntityComparator implements Comparator<Map.Entry<String, H
     }
 
     @Override
-    public void writePortable(PortableWriter out) {}
+    public int getClassVersion() {
+        return CLASS_VERSION;
+    }
+
+    @Override
+    public void writePortable(PortableWriter out) throws IOException {
+        out.writeUTF("field", field);
+        out.writeBoolean("descending", descending);
+    }
 
     @Override
-    public void readPortable(PortableReader in) {}
+    public void readPortable(PortableReader in) throws IOException {
+        if (in.getVersion() < CLASS_VERSION) {
+            field = TIMESTAMP;
+            descending = false;
+            return;
+        }
+        String value = in.readUTF("field");
+        field = value != null ? value : TIMESTAMP;
+        descending = in.readBoolean("descending");
+    }
 
     @Override
-    public int compare(Map.Entry<String, HazelcastEntity> o1, Map.Entry<String, HazelcastEntity> o2) {
-        final Date o1Time = o1.getValue().getTimestamp();
-        final Date o2Time = o2.getValue().getTimestamp();
+    public int compare(Map.Entry<HazelcastEntityKey, HazelcastEntity> o1, Map.Entry<HazelcastEntityKey, HazelcastEntity> o2) {
+        return compareEntities(o1.getValue(), o2.getValue());
+    }
+
+    /**
+     * Compares entities by sort field, breaking ties by timestamp, id and then by key, so that pages are stable
+     * and timestamp order matches the order of {@link SearchCursor} positions.
+     * Missing values come first in ascending order.
+     */
+    public int compareEntities(HazelcastEntity o1, HazelcastEntity o2) {
+        int result = TIMESTAMP.equals(field) ? 0 : compareValues(sortValue(o1), sortValue(o2));
+        if (result == 0) {
+            result = compareValues(o1.getTimestamp(), o2.getTimestamp());
+        }
+        if (result == 0) {
+            result = compareValues(o1.getId(), o2.getId());
+        }
+        if (result == 0) {
+            result = compareValues(o1.getHazelcastKey(), o2.getHazelcastKey());
+        }
+        return descending ? -result : result;
+    }
+
+    /**
+     * Returns this order as a comparator of entities.
+     */
+    public <T extends HazelcastEntity> Comparator<T> forEntities() {
+        return this::compareEntities;
+    }
+
+    private String sortValue(HazelcastEntity entity) {
+        if (entity instanceof DeviceCommand) {
+            DeviceCommand command = (DeviceCommand) entity;
+            return STATUS.equals(field) ? command.getStatus() : COMMAND.equals(field) ? command.getCommand() : null;
+        }
+        if (entity instanceof DeviceNotification && NOTIFICATION.equals(field)) {
+            return ((DeviceNotification) entity).getNotification();
+        }
+        return null;
+    }
 
-        return o1Time.compareTo(o2Time);
+    private static <V extends Comparable<V>> int compareValues(V v1, V v2) {
+        if (v1 == null || v2 == null) {
+            return v1 == null ? (v2 == null ? 0 : -1) : 1;
+        }
+        return v1.compareTo(v2);
     }
 }
@@ -0,0 +1,104 @@
+package com.devicehive.model;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.hazelcast.core.PartitionAware;
+import com.hazelcast.nio.serialization.Portable;
+import com.hazelcast.nio.serialization.PortableReader;
+import com.hazelcast.nio.serialization.PortableWriter;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Key of notifications and commands in hazelcast maps. Entities are partitioned by device id,
+ * so that all entities of a device are kept in the same partition and can be searched on its owner only.
+ */
+public class HazelcastEntityKey implements PartitionAware<String>, Portable {
+
+    public static final int FACTORY_ID = 1;
+    public static final int CLASS_ID = 8;
+
+    private String key;
+    private String deviceId;
+
+    public HazelcastEntityKey() {
+    }
+
+    public HazelcastEntityKey(HazelcastEntity entity) {
+        this.key = entity.getHazelcastKey();
+        this.deviceId = entity.getDeviceId();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    @Override
+    public String getPartitionKey() {
+        return deviceId;
+    }
+
+    @Override
+    public int getFactoryId() {
+        return FACTORY_ID;
+    }
+
+    @Override
+    public int getClassId() {
+        return CLASS_ID;
+    }
+
+    @Override
+    public void writePortable(PortableWriter writer) throws IOException {
+        writer.writeUTF("key", key);
+        writer.writeUTF("deviceId", deviceId);
+    }
+
+    @Override
+    public void readPortable(PortableReader reader) throws IOException {
+        key = reader.readUTF("key");
+        deviceId = reader.readUTF("deviceId");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof HazelcastEntityKey)) return false;
+        HazelcastEntityKey that = (HazelcastEntityKey) o;
+        return Objects.equals(key, that.key) &&
+                Objects.equals(deviceId, that.deviceId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(key, deviceId);
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
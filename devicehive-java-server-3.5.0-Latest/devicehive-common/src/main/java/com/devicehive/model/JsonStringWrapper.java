@@ -22,37 +22,125 @@ package com.devicehive.model;
 
 import com.devicehive.configuration.Messages;
 import com.devicehive.exceptions.HiveException;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.hazelcast.nio.serialization.PortableReader;
 
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.Embeddable;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Objects;
 
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
 
+/**
+ * JSON object carried through the system as an opaque payload.
+ * Payload is kept either as string or as raw UTF-8 bytes, whichever it was received in, and the other form
+ * is produced only when asked for. JSON is validated once, when it enters the system: by the {@link #JsonStringWrapper(String)}
+ * constructor or by the streaming gson adapter. Setter, hazelcast and JPA loads take the payload as is.
+ */
 @Embeddable
+@Access(AccessType.PROPERTY)
 public class JsonStringWrapper implements HiveEntity {
 
     private static final long serialVersionUID = -152849186108390497L;
     private String jsonString;
+    private byte[] utf8;
 
     public JsonStringWrapper() {
     }
 
+    /**
+     * Wraps JSON received from outside, failing with bad request if it is not a JSON object.
+     */
     public JsonStringWrapper(String jsonString) {
-        setJsonString(jsonString);
+        validate(jsonString);
+        this.jsonString = jsonString;
     }
 
     public String getJsonString() {
+        if (jsonString == null && utf8 != null) {
+            jsonString = new String(utf8, StandardCharsets.UTF_8);
+        }
         return jsonString;
     }
 
     public void setJsonString(String jsonString) {
+        this.jsonString = jsonString;
+        this.utf8 = null;
+    }
+
+    /**
+     * Returns UTF-8 encoded payload, encoding it at most once.
+     */
+    public byte[] toUtf8() {
+        if (utf8 == null && jsonString != null) {
+            utf8 = jsonString.getBytes(StandardCharsets.UTF_8);
+        }
+        return utf8;
+    }
+
+    /**
+     * Wraps JSON which was already validated, without checking it again.
+     */
+    public static JsonStringWrapper trusted(String jsonString) {
+        if (jsonString == null) {
+            return null;
+        }
+        JsonStringWrapper wrapper = new JsonStringWrapper();
+        wrapper.jsonString = jsonString;
+        return wrapper;
+    }
+
+    /**
+     * Wraps UTF-8 encoded JSON which was already validated, without checking or decoding it.
+     */
+    public static JsonStringWrapper trusted(byte[] utf8) {
+        if (utf8 == null) {
+            return null;
+        }
+        JsonStringWrapper wrapper = new JsonStringWrapper();
+        wrapper.utf8 = utf8;
+        return wrapper;
+    }
+
+    /**
+     * Returns UTF-8 encoded JSON of the wrapper, or null if there is none.
+     */
+    static byte[] utf8(JsonStringWrapper wrapper) {
+        return wrapper != null ? wrapper.toUtf8() : null;
+    }
+
+    /**
+     * Reads JSON field of a portable without validating it again. Entries written before {@code utf8Version}
+     * keep it as UTF string.
+     */
+    static JsonStringWrapper read(PortableReader portableReader, String field, int utf8Version) throws IOException {
+        return portableReader.getVersion() < utf8Version
+                ? trusted(portableReader.readUTF(field))
+                : trusted(portableReader.readByteArray(field));
+    }
+
+    /**
+     * Checks that string holds exactly one JSON object. Tokens are skipped by a streaming reader, no DOM is built.
+     */
+    private static void validate(String jsonString) {
         try {
-            new JsonParser().parse(jsonString).getAsJsonObject();
-        } catch (Exception e) {
+            JsonReader reader = new JsonReader(new StringReader(jsonString));
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                throw new IllegalArgumentException("JSON object expected");
+            }
+            reader.skipValue();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IllegalArgumentException("Single JSON object expected");
+            }
+        } catch (IOException | RuntimeException e) {
             throw new HiveException(Messages.PARAMS_NOT_JSON, BAD_REQUEST.getStatusCode());
         }
-        this.jsonString = jsonString;
     }
 
     @Override
@@ -60,18 +148,21 @@ public class JsonStringWrapper implements HiveEntity {
         if (this == o) return true;
         if (!(o instanceof JsonStringWrapper)) return false;
         JsonStringWrapper that = (JsonStringWrapper) o;
-        return Objects.equals(jsonString, that.jsonString);
+        if (utf8 != null && that.utf8 != null) {
+            return Arrays.equals(utf8, that.utf8);
+        }
+        return Objects.equals(getJsonString(), that.getJsonString());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(jsonString);
+        return Objects.hash(getJsonString());
     }
 
     @Override
     public String toString() {
         return "JsonStringWrapper{" +
-                "jsonString='" + jsonString + '\'' +
+                "jsonString='" + getJsonString() + '\'' +
                 '}';
     }
 }
@@ -0,0 +1,102 @@
+package com.devicehive.model;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.configuration.Messages;
+import com.devicehive.exceptions.HiveException;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+
+/**
+ * Position of the last entity of a search page, made of its timestamp and id.
+ * Next page starts right after that position in the search order, so it is read as a range of the timestamp index
+ * instead of skipping all previous pages. Clients receive the position as an opaque url-safe string.
+ */
+public class SearchCursor {
+
+    private static final int SIZE = 2 * Long.BYTES;
+
+    private final long timestamp;
+    private final long id;
+
+    public SearchCursor(long timestamp, long id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * Returns position of given entity, or null if entity has no timestamp or id.
+     */
+    public static SearchCursor of(HazelcastEntity entity) {
+        if (entity == null || entity.getTimestamp() == null || entity.getId() == null) {
+            return null;
+        }
+        return new SearchCursor(entity.getTimestamp().getTime(), entity.getId());
+    }
+
+    public static SearchCursor parse(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(value);
+            if (bytes.length != SIZE) {
+                throw new IllegalArgumentException("Cursor should be " + SIZE + " bytes long");
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            return new SearchCursor(buffer.getLong(), buffer.getLong());
+        } catch (IllegalArgumentException e) {
+            throw new HiveException(Messages.UNPARSEABLE_CURSOR, e, BAD_REQUEST.getStatusCode());
+        }
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * Whether entity comes after this position in timestamp order, ties of timestamps broken by id.
+     */
+    public boolean isBefore(HazelcastEntity entity, boolean descending) {
+        if (entity.getTimestamp() == null || entity.getId() == null) {
+            return false;
+        }
+        int result = Long.compare(entity.getTimestamp().getTime(), timestamp);
+        if (result == 0) {
+            result = Long.compare(entity.getId(), id);
+        }
+        return descending ? result < 0 : result > 0;
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE)
+                .putLong(timestamp)
+                .putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+}
@@ -21,11 +21,10 @@ package com.devicehive.model.eventbus;
  */
 
 import com.devicehive.vo.DeviceVO;
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
 import com.google.gson.Gson;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Class for handling all subscriber's filters
@@ -33,60 +32,43 @@ import java.util.*;
 public abstract class FilterRegistry {
 
     /**
-     * Table for holding subscription request id (i.e. subscriber) for particular filter.
-     * First key is comma-separated string combination of networkId, iexperimentId, icomponentId and deviceId,
-     * second key is comma-separated string combination of eventName and name.
+     * Index for holding subscription request id (i.e. subscriber) for particular filter.
      */
-    private final Table<String, String, Set<Subscriber>> subscriberTable = HashBasedTable.create();
+    private final SubscriberIndex subscriberIndex = new SubscriberIndex();
 
     public abstract void register(Filter filter, Subscriber subscriber);
 
     public abstract void unregister(Subscriber subscriber);
 
-    protected synchronized void processRegister(Filter filter, Subscriber subscriber) {
-        Set<Subscriber> subscribers = subscriberTable.get(filter.getFirstKey(), filter.getSecondKey());
-        if (subscribers == null) {
-            subscribers = new HashSet<>();
-            subscribers.add(subscriber);
-            subscriberTable.put(filter.getFirstKey(), filter.getSecondKey(), subscribers);
-        } else {
-            subscribers.add(subscriber);
-        }
+    public abstract void unregisterAll(Collection<Long> subscriptionIds);
+
+    protected void processRegister(Filter filter, Subscriber subscriber) {
+        subscriberIndex.add(filter, subscriber);
+    }
+
+    protected void processUnregister(Subscriber subscriber) {
+        subscriberIndex.remove(subscriber.getId());
     }
 
-    protected synchronized void processUnregister(Subscriber subscriber) {
-        subscriberTable.values().forEach(subscribers -> {
-            Iterator iterator = subscribers.iterator();
-
-            while (iterator.hasNext()) {
-                Object element = iterator.next();
-                if (element.equals(subscriber)) {
-                    iterator.remove();
-                }
-            }
-        });
+    protected void processUnregisterAll(Collection<Long> subscriptionIds) {
+        subscriberIndex.removeAll(subscriptionIds);
     }
 
     public Collection<Subscriber> getSubscribers(Filter filter) {
         Set<Subscriber> subscribers = new HashSet<>();
-        Set<Subscriber> globalFilterSubscribers = subscriberTable.get("*,*,*", filter.getSecondKey());
-        if (globalFilterSubscribers != null) {
-            subscribers.addAll(globalFilterSubscribers);
-        }
-        Set<Subscriber> filterSubscribers = subscriberTable.get(filter.getDeviceIgnoredFirstKey(), filter.getSecondKey());
-        if (filterSubscribers != null) {
-            subscribers.addAll(filterSubscribers);
-        }
-        Set<Subscriber> deviceFilterSubscribers = subscriberTable.get(filter.getFirstKey(), filter.getSecondKey());
-        if (deviceFilterSubscribers != null) {
-            subscribers.addAll(deviceFilterSubscribers);
-        }
+        subscriberIndex.forEach(filter, subscribers::add);
         return subscribers;
     }
 
+    /**
+     * Allocation-free alternative of {@link #getSubscribers(Filter)} used on the publishing path.
+     */
+    public void forEachSubscriber(Filter filter, Consumer<Subscriber> action) {
+        subscriberIndex.forEach(filter, action);
+    }
+
     public void unregisterDevice(DeviceVO device) {
-        final Filter deviceFilter = new Filter(device.getNetworkId(), device.getIexperimentId(), device.getIcomponentId(), device.getDeviceId(), null, null);
-        subscriberTable.row(deviceFilter.getFirstKey()).clear();
+        subscriberIndex.removeDevice(device.getNetworkId(), device.getIexperimentId(), device.getIcomponentId(), device.getDeviceId());
     }
 
     protected void handleSubscriptionMessage(String message, Gson gson) {
@@ -99,6 +81,9 @@ public abstract class FilterRegistry {
             case UNREGISTER:
                 processUnregister(subscribeMessage.getSubscriber());
                 break;
+            case UNREGISTER_ALL:
+                processUnregisterAll(subscribeMessage.getSubscriptionIds());
+                break;
         }
     }
 }
@@ -0,0 +1,162 @@
+package com.devicehive.model.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Open-addressing map with primitive long keys.
+ * Reads are lock-free and do not allocate, writes are serialized on the map monitor.
+ * Removed keys stay in the table with a null value until the next resize.
+ */
+class LongKeyMap<V> {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final class Entry<V> {
+        private final long key;
+        private volatile V value;
+
+        private Entry(long key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private volatile AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /**
+     * Number of occupied slots, including removed ones. Guarded by this.
+     */
+    private int used;
+
+    /**
+     * Number of live mappings. Guarded by this.
+     */
+    private int size;
+
+    public V get(long key) {
+        AtomicReferenceArray<Entry<V>> tab = table;
+        int mask = tab.length() - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            Entry<V> entry = tab.get(i);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.key == key) {
+                return entry.value;
+            }
+        }
+    }
+
+    public synchronized V computeIfAbsent(long key, LongFunction<V> mappingFunction) {
+        AtomicReferenceArray<Entry<V>> tab = table;
+        int mask = tab.length() - 1;
+        int i = index(key, mask);
+        Entry<V> entry;
+        while ((entry = tab.get(i)) != null) {
+            if (entry.key == key) {
+                if (entry.value == null) {
+                    entry.value = mappingFunction.apply(key);
+                    size++;
+                }
+                return entry.value;
+            }
+            i = (i + 1) & mask;
+        }
+
+        V value = mappingFunction.apply(key);
+        tab.set(i, new Entry<>(key, value));
+        used++;
+        size++;
+        if (used * 2 > tab.length()) {
+            resize();
+        }
+        return value;
+    }
+
+    public synchronized V remove(long key) {
+        AtomicReferenceArray<Entry<V>> tab = table;
+        int mask = tab.length() - 1;
+        for (int i = index(key, mask); ; i = (i + 1) & mask) {
+            Entry<V> entry = tab.get(i);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.key == key) {
+                V value = entry.value;
+                if (value != null) {
+                    entry.value = null;
+                    size--;
+                }
+                return value;
+            }
+        }
+    }
+
+    public synchronized boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void forEachValue(Consumer<V> action) {
+        AtomicReferenceArray<Entry<V>> tab = table;
+        for (int i = 0; i < tab.length(); i++) {
+            Entry<V> entry = tab.get(i);
+            if (entry != null) {
+                V value = entry.value;
+                if (value != null) {
+                    action.accept(value);
+                }
+            }
+        }
+    }
+
+    private void resize() {
+        AtomicReferenceArray<Entry<V>> oldTable = table;
+        int capacity = oldTable.length();
+        while (size * 4 > capacity) {
+            capacity <<= 1;
+        }
+        AtomicReferenceArray<Entry<V>> newTable = new AtomicReferenceArray<>(capacity);
+        int mask = capacity - 1;
+        int live = 0;
+        for (int j = 0; j < oldTable.length(); j++) {
+            Entry<V> entry = oldTable.get(j);
+            if (entry != null && entry.value != null) {
+                int i = index(entry.key, mask);
+                while (newTable.get(i) != null) {
+                    i = (i + 1) & mask;
+                }
+                newTable.set(i, entry);
+                live++;
+            }
+        }
+        used = live;
+        table = newTable;
+    }
+
+    private static int index(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -22,6 +22,8 @@ package com.devicehive.model.eventbus;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.Collection;
+
 public class SubscribeMessage {
 
     @SerializedName("a")
@@ -33,6 +35,9 @@ public class SubscribeMessage {
     @SerializedName("s")
     private Subscriber subscriber;
 
+    @SerializedName("i")
+    private Collection<Long> subscriptionIds;
+
     public SubscribeMessage(SubscribeAction action, Filter filter, Subscriber subscriber) {
         this.action = action.getValue();
         this.filter = filter;
@@ -44,6 +49,11 @@ public class SubscribeMessage {
         this.subscriber = subscriber;
     }
 
+    public SubscribeMessage(SubscribeAction action, Collection<Long> subscriptionIds) {
+        this.action = action.getValue();
+        this.subscriptionIds = subscriptionIds;
+    }
+
     public SubscribeAction getAction() {
         return SubscribeAction.getValueForIndex(action);
     }
@@ -67,4 +77,12 @@ public class SubscribeMessage {
     public void setSubscriber(Subscriber subscriber) {
         this.subscriber = subscriber;
     }
+
+    public Collection<Long> getSubscriptionIds() {
+        return subscriptionIds;
+    }
+
+    public void setSubscriptionIds(Collection<Long> subscriptionIds) {
+        this.subscriptionIds = subscriptionIds;
+    }
 }
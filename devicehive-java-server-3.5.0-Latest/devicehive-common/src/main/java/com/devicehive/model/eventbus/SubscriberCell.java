@@ -0,0 +1,94 @@
+package com.devicehive.model.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Leaf of {@link SubscriberIndex}: copy-on-write array of subscribers registered for one exact filter.
+ * Readers iterate the current array without locking, writers are serialized by the shard lock of the index.
+ * Cell keeps its own index keys, so that it can be detached from the index without a lookup by filter.
+ */
+class SubscriberCell {
+
+    private static final Subscriber[] EMPTY = new Subscriber[0];
+
+    final long networkId;
+    final long iexperimentId;
+    final long icomponentId;
+    final String deviceId;
+    final String eventName;
+    final String name;
+
+    private volatile Subscriber[] subscribers = EMPTY;
+
+    SubscriberCell(long networkId, long iexperimentId, long icomponentId, String deviceId, String eventName, String name) {
+        this.networkId = networkId;
+        this.iexperimentId = iexperimentId;
+        this.icomponentId = icomponentId;
+        this.deviceId = deviceId;
+        this.eventName = eventName;
+        this.name = name;
+    }
+
+    boolean add(Subscriber subscriber) {
+        Subscriber[] current = subscribers;
+        for (Subscriber s : current) {
+            if (s.equals(subscriber)) {
+                return false;
+            }
+        }
+        Subscriber[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscriber;
+        subscribers = updated;
+        return true;
+    }
+
+    boolean remove(Long subscriptionId) {
+        Subscriber[] current = subscribers;
+        for (int i = 0; i < current.length; i++) {
+            if (Objects.equals(current[i].getId(), subscriptionId)) {
+                Subscriber[] updated = new Subscriber[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscribers = updated;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean isEmpty() {
+        return subscribers.length == 0;
+    }
+
+    int size() {
+        return subscribers.length;
+    }
+
+    void forEach(Consumer<Subscriber> action) {
+        for (Subscriber subscriber : subscribers) {
+            action.accept(subscriber);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.devicehive.model.eventbus;
+
+/*
+ * #%L
+ * DeviceHive Common Module
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical index of subscribers: network -> iexperiment -> icomponent -> device -> event name -> name.
+ * Numeric levels are keyed by primitive longs, missing filter values are stored under wildcard keys.
+ * Lookups are lock-free and allocation-free, so publishers are never blocked by subscription changes.
+ * Index is striped by network: modifications lock only the shard of the network they touch,
+ * so subscription churn in one network does not contend with other networks.
+ */
+public class SubscriberIndex {
+
+    private static final long ANY_ID = 0L;
+    private static final String ANY = "*";
+
+    private final LongKeyMap<NetworkShard> networks = new LongKeyMap<>();
+
+    /**
+     * Reverse index from subscription id to the cells it is registered in.
+     * Lists are only modified inside map's atomic operations while holding the lock of the cell's shard.
+     */
+    private final ConcurrentMap<Long, List<SubscriberCell>> cellsBySubscription = new ConcurrentHashMap<>();
+
+    /**
+     * Subscriptions of one network. Shard monitor serializes all modifications below the network level.
+     */
+    private static final class NetworkShard {
+        private final LongKeyMap<LongKeyMap<ComponentNode>> iexperiments = new LongKeyMap<>();
+    }
+
+    /**
+     * Devices of one (network, iexperiment, icomponent) combination.
+     */
+    private static final class ComponentNode {
+        private final ConcurrentMap<String, DeviceNode> devices = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Subscriber cells of one device, keyed by event name and then by name.
+     */
+    private static final class DeviceNode {
+        private final ConcurrentMap<String, ConcurrentMap<String, SubscriberCell>> events = new ConcurrentHashMap<>();
+    }
+
+    public void add(Filter filter, Subscriber subscriber) {
+        long networkId = key(filter.getNetworkId());
+        long iexperimentId = key(filter.getIexperimentId());
+        long icomponentId = key(filter.getIcomponentId());
+        String deviceId = key(filter.getDeviceId());
+        String eventName = key(filter.getEventName());
+        String name = key(filter.getName());
+
+        NetworkShard shard = networks.computeIfAbsent(networkId, k -> new NetworkShard());
+        synchronized (shard) {
+            SubscriberCell cell = shard.iexperiments.computeIfAbsent(iexperimentId, k -> new LongKeyMap<>())
+                    .computeIfAbsent(icomponentId, k -> new ComponentNode())
+                    .devices.computeIfAbsent(deviceId, k -> new DeviceNode())
+                    .events.computeIfAbsent(eventName, k -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(name, k -> new SubscriberCell(networkId, iexperimentId, icomponentId, deviceId, eventName, name));
+            cellsBySubscription.compute(subscriber.getId(), (id, cells) -> {
+                List<SubscriberCell> updated = cells != null ? cells : new ArrayList<>(1);
+                if (!updated.contains(cell)) {
+                    updated.add(cell);
+                }
+                return updated;
+            });
+            cell.add(subscriber);
+        }
+    }
+
+    public void remove(Long subscriptionId) {
+        removeAll(Collections.singleton(subscriptionId));
+    }
+
+    /**
+     * Removes subscribers from every filter they are registered for.
+     * Only cells holding given subscription ids are touched. Every cell is unlinked from the reverse index
+     * under the lock of its shard, and the reverse entry disappears only once it holds no cells, so cells
+     * added concurrently in other networks are picked up by the next pass instead of being left behind.
+     */
+    public void removeAll(Collection<Long> subscriptionIds) {
+        for (Long subscriptionId : subscriptionIds) {
+            List<SubscriberCell> cells;
+            while (!(cells = snapshot(subscriptionId)).isEmpty()) {
+                for (SubscriberCell cell : cells) {
+                    NetworkShard shard = networks.get(cell.networkId);
+                    synchronized (shard) {
+                        cell.remove(subscriptionId);
+                        if (cell.isEmpty()) {
+                            detach(shard, cell);
+                        }
+                        cellsBySubscription.computeIfPresent(subscriptionId, (id, registered) -> {
+                            registered.remove(cell);
+                            return registered.isEmpty() ? null : registered;
+                        });
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops all subscriptions bound to particular device.
+     */
+    public void removeDevice(Long networkId, Long iexperimentId, Long icomponentId, String deviceId) {
+        NetworkShard shard = networks.get(key(networkId));
+        if (shard == null) {
+            return;
+        }
+        synchronized (shard) {
+            ComponentNode component = component(shard, key(iexperimentId), key(icomponentId));
+            if (component == null) {
+                return;
+            }
+            DeviceNode device = component.devices.remove(key(deviceId));
+            if (device == null) {
+                return;
+            }
+            device.events.values().forEach(names -> names.values().forEach(cell -> cell.forEach(subscriber ->
+                    cellsBySubscription.computeIfPresent(subscriber.getId(), (id, cells) -> {
+                        cells.remove(cell);
+                        return cells.isEmpty() ? null : cells;
+                    }))));
+        }
+    }
+
+    /**
+     * Passes every subscriber whose filter matches event filter to the action.
+     * Subscribers are matched by exact event name and name and by one of the following scopes:
+     * global (no network, iexperiment, icomponent and device), event's icomponent (no device) or event's device.
+     */
+    public void forEach(Filter eventFilter, Consumer<Subscriber> action) {
+        long networkId = key(eventFilter.getNetworkId());
+        long iexperimentId = key(eventFilter.getIexperimentId());
+        long icomponentId = key(eventFilter.getIcomponentId());
+        String eventName = key(eventFilter.getEventName());
+        String name = key(eventFilter.getName());
+
+        if (networkId != ANY_ID || iexperimentId != ANY_ID || icomponentId != ANY_ID) {
+            ComponentNode global = component(networks.get(ANY_ID), ANY_ID, ANY_ID);
+            if (global != null) {
+                visit(global.devices.get(ANY), eventName, name, action);
+            }
+        }
+
+        ComponentNode component = component(networks.get(networkId), iexperimentId, icomponentId);
+        if (component != null) {
+            visit(component.devices.get(ANY), eventName, name, action);
+            if (eventFilter.getDeviceId() != null) {
+                visit(component.devices.get(eventFilter.getDeviceId()), eventName, name, action);
+            }
+        }
+    }
+
+    /**
+     * Copies cells registered for subscription inside map's atomic operation, as lists are modified concurrently.
+     */
+    private List<SubscriberCell> snapshot(Long subscriptionId) {
+        List<SubscriberCell> snapshot = new ArrayList<>();
+        cellsBySubscription.computeIfPresent(subscriptionId, (id, cells) -> {
+            snapshot.addAll(cells);
+            return cells;
+        });
+        return snapshot;
+    }
+
+    private static ComponentNode component(NetworkShard shard, long iexperimentId, long icomponentId) {
+        if (shard == null) {
+            return null;
+        }
+        LongKeyMap<ComponentNode> icomponents = shard.iexperiments.get(iexperimentId);
+        return icomponents != null ? icomponents.get(icomponentId) : null;
+    }
+
+    private static void visit(DeviceNode device, String eventName, String name, Consumer<Subscriber> action) {
+        if (device == null) {
+            return;
+        }
+        Map<String, SubscriberCell> names = device.events.get(eventName);
+        if (names == null) {
+            return;
+        }
+        SubscriberCell cell = names.get(name);
+        if (cell != null) {
+            cell.forEach(action);
+        }
+    }
+
+    /**
+     * Unlinks empty cell from the index together with device node left without cells.
+     * Must be called while holding the shard lock.
+     */
+    private static void detach(NetworkShard shard, SubscriberCell cell) {
+        ComponentNode component = component(shard, cell.iexperimentId, cell.icomponentId);
+        if (component == null) {
+            return;
+        }
+        DeviceNode device = component.devices.get(cell.deviceId);
+        if (device == null) {
+            return;
+        }
+        ConcurrentMap<String, SubscriberCell> names = device.events.get(cell.eventName);
+        if (names != null && names.remove(cell.name, cell) && names.isEmpty()) {
+            device.events.remove(cell.eventName, names);
+        }
+        if (device.events.isEmpty()) {
+            component.devices.remove(cell.deviceId, device);
+        }
+    }
+
+    private static long key(Long id) {
+        return id != null ? id : ANY_ID;
+    }
+
+    private static String key(String value) {
+        return value != null ? value : ANY;
+    }
+}
@@ -23,11 +23,20 @@ package com.devicehive.model.eventbus.events;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.shim.api.Action;
 import com.devicehive.shim.api.Body;
+import com.google.gson.Gson;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 
 public abstract class Event extends Body {
 
+    /**
+     * JSON form of this event, computed once and shared by all responses carrying the event.
+     * Events are immutable after being published, and all dispatchers use the same Gson configuration.
+     */
+    private transient volatile String serializedBody;
+    private transient volatile byte[] serializedBodyBytes;
+
     public Event(Action action) {
         super(action);
     }
@@ -42,4 +51,22 @@ public abstract class Event extends Body {
      */
     public abstract Collection<Filter> getApplicableFilters();
 
+    public String getSerializedBody(Gson gson) {
+        String body = serializedBody;
+        if (body == null) {
+            body = gson.toJson(this, Body.class);
+            serializedBody = body;
+        }
+        return body;
+    }
+
+    public byte[] getSerializedBodyBytes(Gson gson) {
+        byte[] bytes = serializedBodyBytes;
+        if (bytes == null) {
+            bytes = getSerializedBody(gson).getBytes(StandardCharsets.UTF_8);
+            serializedBodyBytes = bytes;
+        }
+        return bytes;
+    }
+
 }
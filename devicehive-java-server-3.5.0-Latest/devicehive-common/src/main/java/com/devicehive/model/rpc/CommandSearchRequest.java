@@ -55,6 +55,7 @@ public class CommandSearchRequest extends Body {
     private String sortOrder;
     private Integer take;
     private Integer skip;
+    private String cursor;
 
     public CommandSearchRequest() {
         super(Action.COMMAND_SEARCH_REQUEST);
@@ -176,4 +177,15 @@ public class CommandSearchRequest extends Body {
     public void setSkip(Integer skip) {
         this.skip = skip;
     }
+
+    /**
+     * Encoded {@link com.devicehive.model.SearchCursor} of the last entity of the previous page.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
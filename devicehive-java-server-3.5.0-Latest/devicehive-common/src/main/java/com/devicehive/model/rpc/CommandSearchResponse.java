@@ -30,6 +30,7 @@ import java.util.List;
 public class CommandSearchResponse extends Body {
 
     private List<DeviceCommand> commands;
+    private String cursor;
 
     public CommandSearchResponse() {
         super(Action.COMMAND_SEARCH_RESPONSE);
@@ -43,4 +44,15 @@ public class CommandSearchResponse extends Body {
     public void setCommands(List<DeviceCommand> commands) {
         this.commands = commands;
     }
+
+    /**
+     * Cursor to request the next page with, or null if there are no more commands.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
@@ -55,6 +55,7 @@ public class NotificationSearchRequest extends Body {
     private String sortOrder;
     private Integer take;
     private Integer skip;
+    private String cursor;
 
     public NotificationSearchRequest() {
         super(Action.NOTIFICATION_SEARCH_REQUEST);
@@ -169,4 +170,15 @@ public class NotificationSearchRequest extends Body {
     public void setSkip(Integer skip) {
         this.skip = skip;
     }
+
+    /**
+     * Encoded {@link com.devicehive.model.SearchCursor} of the last entity of the previous page.
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
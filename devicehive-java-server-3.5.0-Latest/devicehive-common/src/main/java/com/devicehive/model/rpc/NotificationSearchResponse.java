@@ -29,13 +29,26 @@ import java.util.List;
 public class NotificationSearchResponse extends Body {
 
     private List<DeviceNotification> notifications;
+    private String cursor;
 
     public NotificationSearchResponse(List<DeviceNotification> notifications) {
+        this(notifications, null);
+    }
+
+    public NotificationSearchResponse(List<DeviceNotification> notifications, String cursor) {
         super(Action.NOTIFICATION_SEARCH_RESPONSE);
         this.notifications = notifications;
+        this.cursor = cursor;
     }
 
     public List<DeviceNotification> getNotifications() {
         return notifications;
     }
+
+    /**
+     * Cursor to request the next page with, or null if there are no more notifications.
+     */
+    public String getCursor() {
+        return cursor;
+    }
 }
@@ -0,0 +1,58 @@
+package com.devicehive.application;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.service.CommandCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes hit ratio and staleness of the command cache on the metrics endpoint.
+ */
+@Component
+public class CommandCacheMetrics implements PublicMetrics {
+
+    private final CommandCache commandCache;
+
+    @Autowired
+    public CommandCacheMetrics(CommandCache commandCache) {
+        this.commandCache = commandCache;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("counter.command.cache.hits", commandCache.getHitCount()));
+        metrics.add(new Metric<>("counter.command.cache.misses", commandCache.getMissCount()));
+        metrics.add(new Metric<>("gauge.command.cache.hit.ratio", commandCache.getHitRatio()));
+        metrics.add(new Metric<>("counter.command.cache.invalidations", commandCache.getInvalidationCount()));
+        metrics.add(new Metric<>("gauge.command.cache.size", commandCache.getSize()));
+        metrics.add(new Metric<>("gauge.command.cache.staleness.avg", commandCache.getAverageStaleness()));
+        metrics.add(new Metric<>("gauge.command.cache.staleness.max", commandCache.getMaxStaleness()));
+        return metrics;
+    }
+}
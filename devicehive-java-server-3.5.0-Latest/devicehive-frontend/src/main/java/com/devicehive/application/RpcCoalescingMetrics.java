@@ -0,0 +1,55 @@
+package com.devicehive.application;
+
+/*
+ * #%L
+ * DeviceHive Java Server Common business logic
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.service.CoalescingRpcClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exposes how many read requests shared a backend round trip with an identical request on the metrics endpoint.
+ */
+@Component
+public class RpcCoalescingMetrics implements PublicMetrics {
+
+    private final CoalescingRpcClient coalescingRpcClient;
+
+    @Autowired
+    public RpcCoalescingMetrics(CoalescingRpcClient coalescingRpcClient) {
+        this.coalescingRpcClient = coalescingRpcClient;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("counter.rpc.coalesce.requests", coalescingRpcClient.getRequestCount()));
+        metrics.add(new Metric<>("counter.rpc.coalesce.shared", coalescingRpcClient.getSharedCount()));
+        metrics.add(new Metric<>("gauge.rpc.coalesce.dedup.ratio", coalescingRpcClient.getDedupRatio()));
+        metrics.add(new Metric<>("gauge.rpc.coalesce.in.flight", coalescingRpcClient.getInFlightCount()));
+        return metrics;
+    }
+}
@@ -213,6 +213,9 @@ public interface DeviceCommandResource {
             @QueryParam("skip")
             @DefaultValue(Constants.DEFAULT_SKIP_STR)
             Integer skip,
+            @ApiParam(name = "cursor", value = "Cursor of the previous page, returned in X-Next-Cursor header")
+            @QueryParam("cursor")
+            String cursor,
             @Suspended final AsyncResponse asyncResponse);
 
     /**
@@ -60,6 +60,8 @@ public interface DeviceNotificationResource {
      * @param sortOrderSt  Result list sort order. Available values are ASC and DESC.
      * @param take         Number of records to take from the result list (default is 1000).
      * @param skip         Number of records to skip from the result list.
+     * @param cursor       Cursor returned in <i>X-Next-Cursor</i> header of the previous page, next page starts right
+     *                     after its last entity. Cursor can be used only with the timestamp sort field.
      * @return If successful, this method returns array of <a href="http://www.devicehive
      * .com/restful#Reference/DeviceNotification">DeviceNotification</a> resources in the response body. <table>
      * <tr> <td>Property Name</td> <td>Type</td> <td>Description</td> </tr> <tr> <td>id</td> <td>integer</td>
@@ -104,6 +106,9 @@ public interface DeviceNotificationResource {
             @QueryParam("skip")
             @DefaultValue(Constants.DEFAULT_SKIP_STR)
             Integer skip,
+            @ApiParam(name = "cursor", value = "Cursor of the previous page, returned in X-Next-Cursor header")
+            @QueryParam("cursor")
+            String cursor,
             @Suspended
             AsyncResponse asyncResponse);
 
@@ -58,6 +58,7 @@ import java.util.concurrent.*;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
+import static com.devicehive.configuration.Constants.NEXT_CURSOR_HEADER;
 import static com.devicehive.json.strategies.JsonPolicyDef.Policy.COMMAND_TO_DEVICE;
 import static com.devicehive.shim.api.Action.COMMAND_EVENT;
 import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
@@ -297,7 +298,7 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
 
     @Override
     public void query(String deviceId, String startTs, String endTs, String command, String status, String sortField,
-                      String sortOrderSt, Integer take, Integer skip, @Suspended final AsyncResponse asyncResponse) {
+                      String sortOrderSt, Integer take, Integer skip, String cursor, @Suspended final AsyncResponse asyncResponse) {
         logger.debug("Device command query requested for device {}", deviceId);
 
         final Date timestampSt = TimestampQueryParamParser.parse(startTs);
@@ -313,8 +314,9 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
             List<String> names = StringUtils.isNoneEmpty(command) ? Collections.singletonList(command) : Collections.emptyList();
             
             commandService.find(Collections.singletonList(deviceId), names, timestampSt, timestampEnd, status,
-                    sortField, sortOrderSt, take, skip)
-                    .thenApply(commands -> ResponseFactory.response(OK, commands, Policy.COMMAND_LISTED))
+                    sortField, sortOrderSt, take, skip, cursor)
+                    .thenApply(searchResponse -> ResponseFactory.response(OK, searchResponse.getCommands(),
+                            Policy.COMMAND_LISTED, NEXT_CURSOR_HEADER, searchResponse.getCursor()))
                     .thenAccept(asyncResponse::resume);
         }
     }
@@ -407,7 +409,7 @@ public class DeviceCommandResourceImpl implements DeviceCommandResource {
             Response response = ResponseFactory.response(NOT_FOUND, errorCode);
             asyncResponse.resume(response);
         } else {
-            commandService.findOne(commandId, deviceId)
+            commandService.findOneForUpdate(commandId, deviceId)
                 .thenAccept(savedCommand -> {
                     if (!savedCommand.isPresent()) {
                         logger.warn("Device command update failed. No command with id = {} found for device with id = {}", commandId, deviceId);
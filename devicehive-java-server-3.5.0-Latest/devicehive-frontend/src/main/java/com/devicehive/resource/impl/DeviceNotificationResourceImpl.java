@@ -57,6 +57,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
+import static com.devicehive.configuration.Constants.NEXT_CURSOR_HEADER;
 import static com.devicehive.shim.api.Action.NOTIFICATION_EVENT;
 import static javax.ws.rs.core.Response.Status.*;
 
@@ -95,7 +96,7 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
      */
     @Override
     public void query(String deviceId, String startTs, String endTs, String notification, String sortField,
-                      String sortOrderSt, Integer take, Integer skip, @Suspended final AsyncResponse asyncResponse) {
+                      String sortOrderSt, Integer take, Integer skip, String cursor, @Suspended final AsyncResponse asyncResponse) {
         logger.debug("Device notification query requested for device {}", deviceId);
 
         final Date timestampSt = TimestampQueryParamParser.parse(startTs);
@@ -111,9 +112,9 @@ public class DeviceNotificationResourceImpl implements DeviceNotificationResourc
                     ? Collections.singleton(notification)
                     : Collections.emptySet();
             notificationService.find(Collections.singleton(deviceId), notificationNames, timestampSt, timestampEnd,
-                    sortField, sortOrderSt, take, skip)
-                    .thenApply(notifications -> 
-                            ResponseFactory.response(OK, notifications, JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT))
+                    sortField, sortOrderSt, take, skip, cursor)
+                    .thenApply(searchResponse -> ResponseFactory.response(OK, searchResponse.getNotifications(),
+                            JsonPolicyDef.Policy.NOTIFICATION_TO_CLIENT, NEXT_CURSOR_HEADER, searchResponse.getCursor()))
                     .thenAccept(asyncResponse::resume);
         }
     }
@@ -0,0 +1,169 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.client.RpcClient;
+import com.google.gson.Gson;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Single-flight layer in front of the backend client. Concurrent identical read requests, i.e. requests of
+ * the same coalesced action with equal JSON body, which includes the principal the request is made for,
+ * share one backend round trip: the first one is sent, the others receive its response. Response may be
+ * shared for a short window after it arrives as well, at the price of not seeing changes made within the window.
+ * Responses are shared between callers and must not be modified.
+ */
+@Component
+@Primary
+public class CoalescingRpcClient implements RpcClient {
+
+    private final RpcClient delegate;
+    private final Gson gson;
+    private final boolean enabled;
+    private final Set<Action> actions;
+    private final long windowMs;
+
+    private final ConcurrentHashMap<String, CompletableFuture<Response>> flights = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder shared = new LongAdder();
+
+    @Autowired
+    public CoalescingRpcClient(RpcClient delegate, Gson gson,
+                               @Value("${rpc.client.coalesce.enabled:true}") boolean enabled,
+                               @Value("${rpc.client.coalesce.actions:LIST_*,COUNT_*}") String[] actions,
+                               @Value("${rpc.client.coalesce.window-ms:0}") long windowMs) {
+        this.delegate = delegate;
+        this.gson = gson;
+        this.enabled = enabled;
+        this.actions = Action.matching(Arrays.asList(actions));
+        this.windowMs = windowMs;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rpc-coalesce-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void call(Request request, Consumer<Response> callback) {
+        final Action action = request.getAction();
+        if (!enabled || !request.isSingleReplyExpected() || action == null || !actions.contains(action)) {
+            delegate.call(request, callback);
+            return;
+        }
+        requests.increment();
+        final String key = action.name() + gson.toJson(request.getBody());
+        final CompletableFuture<Response> flight = new CompletableFuture<>();
+        final CompletableFuture<Response> existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            shared.increment();
+            // request is sent on its own if the shared one could not be sent at all
+            existing.whenComplete((response, e) -> {
+                if (e == null) {
+                    callback.accept(response);
+                } else {
+                    delegate.call(request, callback);
+                }
+            });
+            return;
+        }
+        flight.whenComplete((response, e) -> land(key, flight, response));
+        try {
+            delegate.call(request, response -> {
+                flight.complete(response);
+                callback.accept(response);
+            });
+        } catch (RuntimeException e) {
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void push(Request request) {
+        delegate.push(request);
+    }
+
+    /**
+     * Stops the window timer only, delegate is shut down as a bean of its own.
+     */
+    @PreDestroy
+    @Override
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Forgets completed request at once or after the window, failed responses are never shared after they arrive.
+     */
+    private void land(String key, CompletableFuture<Response> flight, Response response) {
+        if (windowMs <= 0 || response == null || response.isFailed()) {
+            flights.remove(key, flight);
+        } else {
+            timer.schedule(() -> flights.remove(key, flight), windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns number of requests of coalesced actions.
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns number of requests answered by response of another request.
+     */
+    public long getSharedCount() {
+        return shared.sum();
+    }
+
+    /**
+     * Returns share of requests of coalesced actions, which were not sent to the backend.
+     */
+    public double getDedupRatio() {
+        final long total = requests.sum();
+        return total == 0 ? 0 : (double) shared.sum() / total;
+    }
+
+    public int getInFlightCount() {
+        return flights.size();
+    }
+}
@@ -0,0 +1,202 @@
+package com.devicehive.service;
+
+/*
+ * #%L
+ * DeviceHive Frontend Logic
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of commands looked up by device id and command id, so that repeated command/get and command/wait
+ * calls are answered without a search request to the backend. Commands are cached when inserted or found
+ * and replaced when updated through this frontend or when an update event is received from the backend.
+ * Updates made through other frontends are seen after the entry expires, which bounds staleness of cached commands.
+ * Cache keeps its own copies of commands, so that callers may modify returned commands.
+ */
+@Component
+public class CommandCache {
+
+    /**
+     * Maximum staleness is tracked over a sliding window of buckets, each packing its epoch into the upper
+     * bits and the maximum age within the bucket into the lower bits, so that it is updated with a single CAS.
+     */
+    private static final long STALENESS_BUCKET_MS = TimeUnit.SECONDS.toMillis(10);
+    private static final int STALENESS_BUCKETS = 6;
+    private static final int AGE_BITS = 40;
+    private static final long AGE_MASK = (1L << AGE_BITS) - 1;
+    private static final long EPOCH_MASK = (1L << (Long.SIZE - AGE_BITS)) - 1;
+
+    private static final class Entry {
+        private final DeviceCommand command;
+        private final long cachedAt;
+
+        private Entry(DeviceCommand command, long cachedAt) {
+            this.command = command;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    private final boolean enabled;
+    private final Cache<Pair<String, Long>, Entry> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder servedAge = new LongAdder();
+    private final AtomicLongArray maxServedAge = new AtomicLongArray(STALENESS_BUCKETS);
+
+    @Autowired
+    public CommandCache(@Value("${command.cache.enabled:true}") boolean enabled,
+                        @Value("${command.cache.max-size:100000}") long maxSize,
+                        @Value("${command.cache.ttl-seconds:5}") long ttlSeconds) {
+        this.enabled = enabled && maxSize > 0 && ttlSeconds > 0;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(maxSize, 0))
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * Returns copy of cached command. Lookups of updated commands are answered only by commands already updated.
+     */
+    public Optional<DeviceCommand> get(String deviceId, Long id, boolean returnUpdated) {
+        if (!enabled || deviceId == null || id == null) {
+            return Optional.empty();
+        }
+        final Entry entry = cache.getIfPresent(Pair.of(deviceId, id));
+        if (entry == null || returnUpdated && !Boolean.TRUE.equals(entry.command.getIsUpdated())) {
+            misses.increment();
+            return Optional.empty();
+        }
+        final long now = System.currentTimeMillis();
+        final long age = now - entry.cachedAt;
+        hits.increment();
+        servedAge.add(age);
+        recordMaxAge(now, age);
+        return Optional.of(copy(entry.command));
+    }
+
+    public void put(DeviceCommand command) {
+        if (!enabled || command == null || command.getDeviceId() == null || command.getId() == null) {
+            return;
+        }
+        cache.put(Pair.of(command.getDeviceId(), command.getId()), new Entry(copy(command), System.currentTimeMillis()));
+    }
+
+    public void invalidate(DeviceCommand command) {
+        if (!enabled || command == null || command.getDeviceId() == null || command.getId() == null) {
+            return;
+        }
+        cache.invalidate(Pair.of(command.getDeviceId(), command.getId()));
+        invalidations.increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public double getHitRatio() {
+        final long hitCount = hits.sum();
+        final long total = hitCount + misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    public long getSize() {
+        return cache.size();
+    }
+
+    /**
+     * Returns average age in milliseconds of commands served from the cache.
+     */
+    public long getAverageStaleness() {
+        final long hitCount = hits.sum();
+        return hitCount == 0 ? 0 : servedAge.sum() / hitCount;
+    }
+
+    /**
+     * Returns age in milliseconds of the oldest command served from the cache within the last minute.
+     */
+    public long getMaxStaleness() {
+        final long epoch = System.currentTimeMillis() / STALENESS_BUCKET_MS;
+        long max = 0;
+        for (int i = 0; i < STALENESS_BUCKETS; i++) {
+            final long bucket = maxServedAge.get(i);
+            if (((epoch - (bucket >>> AGE_BITS)) & EPOCH_MASK) < STALENESS_BUCKETS) {
+                max = Math.max(max, bucket & AGE_MASK);
+            }
+        }
+        return max;
+    }
+
+    private void recordMaxAge(long now, long age) {
+        final long epoch = (now / STALENESS_BUCKET_MS) & EPOCH_MASK;
+        final int index = (int) ((now / STALENESS_BUCKET_MS) % STALENESS_BUCKETS);
+        final long bounded = Math.min(Math.max(age, 0), AGE_MASK);
+        long current;
+        long updated;
+        do {
+            current = maxServedAge.get(index);
+            final long max = (current >>> AGE_BITS) == epoch ? Math.max(current & AGE_MASK, bounded) : bounded;
+            updated = epoch << AGE_BITS | max;
+        } while (current != updated && !maxServedAge.compareAndSet(index, current, updated));
+    }
+
+    private static DeviceCommand copy(DeviceCommand command) {
+        final DeviceCommand copy = new DeviceCommand();
+        copy.setId(command.getId());
+        copy.setCommand(command.getCommand());
+        copy.setTimestamp(copy(command.getTimestamp()));
+        copy.setLastUpdated(copy(command.getLastUpdated()));
+        copy.setUserId(command.getUserId());
+        copy.setDeviceId(command.getDeviceId());
+        copy.setNetworkId(command.getNetworkId());
+        copy.setIexperimentId(command.getIexperimentId());
+        copy.setIcomponentId(command.getIcomponentId());
+        copy.setParameters(command.getParameters());
+        copy.setLifetime(command.getLifetime());
+        copy.setStatus(command.getStatus());
+        copy.setResult(command.getResult());
+        copy.setIsUpdated(command.getIsUpdated());
+        return copy;
+    }
+
+    private static Date copy(Date date) {
+        return date != null ? new Date(date.getTime()) : null;
+    }
+}
@@ -22,6 +22,7 @@ package com.devicehive.service;
 
 import com.devicehive.api.RequestResponseMatcher;
 import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.SearchCursor;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.eventbus.events.CommandEvent;
 import com.devicehive.model.eventbus.events.CommandUpdateEvent;
@@ -64,21 +65,44 @@ public class DeviceCommandService {
     private final RpcClient rpcClient;
     private final LongIdGenerator idGenerator;
     private final RequestResponseMatcher requestResponseMatcher;
+    private final CommandCache commandCache;
 
     @Autowired
     public DeviceCommandService(TimestampService timestampService,
                                 HiveValidator hiveValidator,
                                 RpcClient rpcClient,
                                 LongIdGenerator idGenerator,
-                                RequestResponseMatcher requestResponseMatcher) {
+                                RequestResponseMatcher requestResponseMatcher,
+                                CommandCache commandCache) {
         this.timestampService = timestampService;
         this.hiveValidator = hiveValidator;
         this.rpcClient = rpcClient;
         this.idGenerator = idGenerator;
         this.requestResponseMatcher = requestResponseMatcher;
+        this.commandCache = commandCache;
     }
 
     public CompletableFuture<Optional<DeviceCommand>> findOne(Long id, String deviceId, boolean returnUpdated) {
+        Optional<DeviceCommand> cached = commandCache.get(deviceId, id, returnUpdated);
+        if (cached.isPresent()) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return search(id, deviceId, returnUpdated);
+    }
+
+    public CompletableFuture<Optional<DeviceCommand>> findOne(Long id, String deviceId) {
+        return findOne(id, deviceId, false);
+    }
+
+    /**
+     * Looks up command to be passed to {@link #update(DeviceCommand, DeviceCommandUpdate)}, bypassing the cache,
+     * so that update does not overwrite status or result written through another frontend with a cached snapshot.
+     */
+    public CompletableFuture<Optional<DeviceCommand>> findOneForUpdate(Long id, String deviceId) {
+        return search(id, deviceId, false);
+    }
+
+    private CompletableFuture<Optional<DeviceCommand>> search(Long id, String deviceId, boolean returnUpdated) {
         CommandSearchRequest searchRequest = new CommandSearchRequest();
         searchRequest.setId(id);
         searchRequest.setDeviceIds(Collections.singleton(deviceId));
@@ -88,22 +112,35 @@ public class DeviceCommandService {
         rpcClient.call(Request.newBuilder()
                 .withBody(searchRequest)
                 .build(), new ResponseConsumer(future));
-        return future.thenApply(r -> r.getBody().cast(CommandSearchResponse.class).getCommands().stream().findFirst());
+        return future.thenApply(r -> {
+            Optional<DeviceCommand> command = r.getBody().cast(CommandSearchResponse.class).getCommands().stream().findFirst();
+            command.ifPresent(commandCache::put);
+            return command;
+        });
     }
 
-    public CompletableFuture<Optional<DeviceCommand>> findOne(Long id, String deviceId) {
-        return findOne(id, deviceId, false);
-    }
-
-    public CompletableFuture<List<DeviceCommand>> find(CommandSearchRequest request) {
+    public CompletableFuture<CommandSearchResponse> find(CommandSearchRequest request) {
         
         return find(request.getDeviceIds(), request.getNames(), request.getTimestampStart(), request.getTimestampEnd(),
-                request.getStatus(), request.getSortField(), request.getSortOrder(), request.getTake(), request.getSkip());
+                request.getStatus(), request.getSortField(), request.getSortOrder(), request.getTake(), request.getSkip(),
+                request.getCursor());
     }
 
     public CompletableFuture<List<DeviceCommand>> find(Collection<String> deviceIds, Collection<String> names,
             Date timestampSt, Date timestampEnd, String status, String sortField, String sortOrder, Integer take,
             Integer skip) {
+        return find(deviceIds, names, timestampSt, timestampEnd, status, sortField, sortOrder, take, skip, null)
+                .thenApply(CommandSearchResponse::getCommands);
+    }
+
+    /**
+     * Searches page of commands following cursor returned with the previous page, or the first page if cursor is null.
+     * Malformed cursor is rejected before the search request is sent.
+     */
+    public CompletableFuture<CommandSearchResponse> find(Collection<String> deviceIds, Collection<String> names,
+            Date timestampSt, Date timestampEnd, String status, String sortField, String sortOrder, Integer take,
+            Integer skip, String cursor) {
+        SearchCursor.parse(cursor);
         
         CommandSearchRequest searchRequest = new CommandSearchRequest();
         searchRequest.setDeviceIds(Sets.newHashSet(deviceIds));
@@ -117,6 +154,7 @@ public class DeviceCommandService {
         searchRequest.setSortOrder(sortOrder);
         searchRequest.setTake(take);
         searchRequest.setSkip(skip);
+        searchRequest.setCursor(cursor);
 
         CompletableFuture<Response> future = new CompletableFuture<>();
         rpcClient.call(Request.newBuilder()
@@ -124,9 +162,7 @@ public class DeviceCommandService {
                 .withPartitionKey(searchRequest.getDeviceId())
                 .build(), new ResponseConsumer(future));
                     
-        
-        // CompletableFuture<Response> => CompletableFuture<List<DeviceCommand>>
-        return future.thenApply(v -> v.getBody().cast(CommandSearchResponse.class).getCommands());
+        return future.thenApply(v -> v.getBody().cast(CommandSearchResponse.class));
     }
 
     public CompletableFuture<DeviceCommand> insert(DeviceCommandWrapper commandWrapper, DeviceVO device, UserVO user) {
@@ -138,7 +174,11 @@ public class DeviceCommandService {
                 .withBody(new CommandInsertRequest(command))
                 .withPartitionKey(device.getDeviceId())
                 .build(), new ResponseConsumer(future));
-        return future.thenApply(r -> ((CommandInsertResponse) r.getBody()).getDeviceCommand());
+        return future.thenApply(r -> {
+            DeviceCommand inserted = ((CommandInsertResponse) r.getBody()).getDeviceCommand();
+            commandCache.put(inserted);
+            return inserted;
+        });
     }
 
     public Pair<Long, CompletableFuture<List<DeviceCommand>>> sendSubscribeRequest(
@@ -162,7 +202,9 @@ public class DeviceCommandService {
                         } else if (!returnUpdated && resAction.equals(Action.COMMAND_EVENT)) {
                             callback.accept(response.getBody().cast(CommandEvent.class).getCommand(), subscriptionId);
                         } else if (returnUpdated && resAction.equals(Action.COMMANDS_UPDATE_EVENT)) {
-                            callback.accept(response.getBody().cast(CommandsUpdateEvent.class).getDeviceCommand(), subscriptionId);
+                            DeviceCommand updated = response.getBody().cast(CommandsUpdateEvent.class).getDeviceCommand();
+                            commandCache.put(updated);
+                            callback.accept(updated, subscriptionId);
                         } else {
                             logger.warn("Unknown action received from backend {}", resAction);
                         }
@@ -210,9 +252,13 @@ public class DeviceCommandService {
         Consumer<Response> responseConsumer = response -> {
             Action resAction = response.getBody().getAction();
             if (resAction.equals(Action.COMMAND_UPDATE_SUBSCRIBE_RESPONSE)) {
-                future.complete(Pair.of(response.getBody().cast(CommandUpdateSubscribeResponse.class).getSubscriptionId(), response.getBody().cast(CommandUpdateSubscribeResponse.class).getDeviceCommand()));
+                CommandUpdateSubscribeResponse subscribeResponse = response.getBody().cast(CommandUpdateSubscribeResponse.class);
+                commandCache.put(subscribeResponse.getDeviceCommand());
+                future.complete(Pair.of(subscribeResponse.getSubscriptionId(), subscribeResponse.getDeviceCommand()));
             } else if (resAction.equals(COMMAND_UPDATE_EVENT)) {
-                callback.accept(response.getBody().cast(CommandUpdateEvent.class).getDeviceCommand(), subscriptionId);
+                DeviceCommand updated = response.getBody().cast(CommandUpdateEvent.class).getDeviceCommand();
+                commandCache.put(updated);
+                callback.accept(updated, subscriptionId);
             } else {
                 logger.warn("Unknown action received from backend {}", resAction);
             }
@@ -220,6 +266,7 @@ public class DeviceCommandService {
         Filter filter = new Filter(device.getNetworkId(), device.getIexperimentId(), device.getIcomponentId(), Long.toString(commandId), COMMAND_UPDATE_EVENT.name(), null);
         rpcClient.call(Request.newBuilder()
                 .withBody(new CommandUpdateSubscribeRequest(commandId, device.getDeviceId(), subscriptionId, filter))
+                .withPartitionKey(device.getDeviceId())
                 .build(), responseConsumer);
         return future;
     }
@@ -240,16 +287,22 @@ public class DeviceCommandService {
         }
 
         hiveValidator.validate(cmd);
+        commandCache.invalidate(cmd);
 
         CompletableFuture<Response> commandUpdateFuture = new CompletableFuture<>();
         rpcClient.call(Request.newBuilder()
                 .withBody(new CommandUpdateRequest(cmd))
+                .withPartitionKey(cmd.getDeviceId())
                 .build(), new ResponseConsumer(commandUpdateFuture));
         CompletableFuture<Response> commandsUpdateFuture = new CompletableFuture<>();
         rpcClient.call(Request.newBuilder()
                 .withBody(new CommandsUpdateRequest(cmd))
+                .withPartitionKey(cmd.getDeviceId())
                 .build(), new ResponseConsumer(commandsUpdateFuture));
-        return CompletableFuture.allOf(commandUpdateFuture, commandsUpdateFuture).thenApply(response -> null);
+        return CompletableFuture.allOf(commandUpdateFuture, commandsUpdateFuture).thenApply(response -> {
+            commandCache.put(cmd);
+            return null;
+        });
     }
 
     private DeviceCommand convertWrapperToCommand(DeviceCommandWrapper commandWrapper, DeviceVO device, UserVO user) {
@@ -22,6 +22,7 @@ package com.devicehive.service;
 
 import com.devicehive.api.RequestResponseMatcher;
 import com.devicehive.model.DeviceNotification;
+import com.devicehive.model.SearchCursor;
 import com.devicehive.model.SpecialNotifications;
 import com.devicehive.model.eventbus.Filter;
 import com.devicehive.model.eventbus.events.NotificationEvent;
@@ -85,15 +86,26 @@ public class DeviceNotificationService {
         return future.thenApply(r -> ((NotificationSearchResponse) r.getBody()).getNotifications().stream().findFirst());
     }
 
-    public CompletableFuture<List<DeviceNotification>> find(NotificationSearchRequest request) {
+    public CompletableFuture<NotificationSearchResponse> find(NotificationSearchRequest request) {
         
         return find(request.getDeviceIds(), request.getNames(), request.getTimestampStart(), request.getTimestampEnd(),
-                request.getSortField(), request.getSortOrder(), request.getTake(), request.getSkip());
+                request.getSortField(), request.getSortOrder(), request.getTake(), request.getSkip(), request.getCursor());
     }
 
-    @SuppressWarnings("unchecked")
     public CompletableFuture<List<DeviceNotification>> find(Set<String> deviceIds, Set<String> names, Date timestampSt,
             Date timestampEnd, String sortField, String sortOrder, Integer take, Integer skip) {
+        return find(deviceIds, names, timestampSt, timestampEnd, sortField, sortOrder, take, skip, null)
+                .thenApply(NotificationSearchResponse::getNotifications);
+    }
+
+    /**
+     * Searches page of notifications following cursor returned with the previous page, or the first page if cursor is null.
+     * Malformed cursor is rejected before the search request is sent.
+     */
+    public CompletableFuture<NotificationSearchResponse> find(Set<String> deviceIds, Set<String> names, Date timestampSt,
+            Date timestampEnd, String sortField, String sortOrder, Integer take, Integer skip, String cursor) {
+        SearchCursor.parse(cursor);
+
         NotificationSearchRequest searchRequest = new NotificationSearchRequest();
         searchRequest.setDeviceIds(deviceIds);
         searchRequest.setNames(names);
@@ -103,6 +115,7 @@ public class DeviceNotificationService {
         searchRequest.setSortOrder(sortOrder);
         searchRequest.setTake(take);
         searchRequest.setSkip(skip);
+        searchRequest.setCursor(cursor);
         
         CompletableFuture<Response> future = new CompletableFuture<>();
         rpcClient.call(Request.newBuilder()
@@ -110,8 +123,7 @@ public class DeviceNotificationService {
                 .withPartitionKey(searchRequest.getDeviceId())
                 .build(), new ResponseConsumer(future));
 
-        // CompletableFuture<Response> => CompletableFuture<List<DeviceNotification>>
-        return future.thenApply(v -> v.getBody().cast(NotificationSearchResponse.class).getNotifications());
+        return future.thenApply(v -> v.getBody().cast(NotificationSearchResponse.class));
     }
 
     public CompletableFuture<DeviceNotification> insert(final DeviceNotification notification,
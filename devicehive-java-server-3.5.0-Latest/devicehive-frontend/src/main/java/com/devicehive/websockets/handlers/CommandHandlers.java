@@ -230,7 +230,7 @@ public class CommandHandlers {
             throw new HiveException(String.format(DEVICE_NOT_FOUND, deviceId), SC_NOT_FOUND);
         }
 
-        commandService.findOne(id, deviceVO.getDeviceId())
+        commandService.findOneForUpdate(id, deviceVO.getDeviceId())
                 .thenAccept(optionalCommand -> {
                     optionalCommand.map(deviceCommand -> commandService.update(deviceCommand, commandUpdate))
                             .orElseThrow(() -> new HiveException(String.format(COMMAND_NOT_FOUND, id), SC_NOT_FOUND));
@@ -304,8 +304,9 @@ public class CommandHandlers {
         WebSocketResponse response = new WebSocketResponse();
         
         commandService.find(commandSearchRequest)
-                .thenAccept(sortedDeviceCommands -> {
-                    response.addValue(COMMANDS, sortedDeviceCommands, COMMAND_LISTED);
+                .thenAccept(searchResponse -> {
+                    response.addValue(COMMANDS, searchResponse.getCommands(), COMMAND_LISTED);
+                    response.addValue(CURSOR, searchResponse.getCursor());
                     clientHandler.sendMessage(request, response, session);
                 })
                 .exceptionally(ex -> {
@@ -285,8 +285,9 @@ public class NotificationHandlers {
         WebSocketResponse response = new WebSocketResponse();
         
         notificationService.find(notificationSearchRequest)
-                .thenAccept(sortedDeviceNotifications -> {
-                    response.addValue(NOTIFICATIONS, sortedDeviceNotifications, NOTIFICATION_TO_CLIENT);
+                .thenAccept(searchResponse -> {
+                    response.addValue(NOTIFICATIONS, searchResponse.getNotifications(), NOTIFICATION_TO_CLIENT);
+                    response.addValue(CURSOR, searchResponse.getCursor());
                     clientHandler.sendMessage(request, response, session);
                 });
     }
@@ -20,6 +20,7 @@ package com.devicehive.application;
  * #L%
  */
 
+import com.devicehive.api.CallbackExecutor;
 import com.devicehive.api.RequestResponseMatcher;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.client.RpcClient;
@@ -101,14 +102,27 @@ public class PluginRpcClientConfig {
     @Value("${rpc.client.response-consumer.threads:3}")
     private int responseConsumerThreads;
 
+    @Value("${rpc.client.response-timeout-ms:60000}")
+    private long responseTimeoutMs;
+
+    @Value("${rpc.client.callback.mode:ordered}")
+    private String callbackMode;
+
+    @Value("${rpc.client.callback.threads:16}")
+    private int callbackThreads;
+
+    @Value("${rpc.client.callback.queue-capacity:1024}")
+    private int callbackQueueCapacity;
+
     @Bean
     public RequestResponseMatcher requestResponseMatcher() {
-        return new RequestResponseMatcher();
+        return new RequestResponseMatcher(responseTimeoutMs,
+                CallbackExecutor.forMode(callbackMode, callbackThreads, callbackQueueCapacity));
     }
 
     @Bean
     public Producer<String, Request> kafkaRequestProducer(Gson gson) {
-        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new RequestSerializer(gson));
+        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new RequestSerializer(kafkaRpcConfig.rpcCodec(gson)));
     }
 
     @Profile("!test")
@@ -139,7 +153,7 @@ public class PluginRpcClientConfig {
         ExecutorService executor = Executors.newFixedThreadPool(responseConsumerThreads);
         Properties consumerProps = kafkaRpcConfig.clientConsumerProps();
         return new ServerResponseListener(RESPONSE_TOPIC, responseConsumerThreads,
-                responseMatcher, consumerProps, executor, new ResponseSerializer(gson));
+                responseMatcher, consumerProps, executor, new ResponseSerializer(kafkaRpcConfig.rpcCodec(gson)));
     }
 
 }
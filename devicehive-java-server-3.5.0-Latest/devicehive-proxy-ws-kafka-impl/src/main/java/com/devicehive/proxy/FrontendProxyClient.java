@@ -70,7 +70,7 @@ public class FrontendProxyClient implements RpcClient {
 
     @Override
     public void call(Request request, Consumer<Response> callback) {
-        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), callback);
+        requestResponseMatcher.addRequestCallback(request, callback);
         logger.debug("Request callback added for request: {}, correlationId: {}", request.getBody(), request.getCorrelationId());
 
         ringBuffer.publishEvent((serverEvent, sequence, response) -> serverEvent.set(response), request);
@@ -20,6 +20,7 @@ package com.devicehive.proxy;
  * #L%
  */
 
+import com.devicehive.json.ResponseJsonWriter;
 import com.devicehive.proxy.api.ProxyClient;
 import com.devicehive.proxy.api.ProxyMessage;
 import com.devicehive.proxy.api.ProxyMessageBuilder;
@@ -47,7 +48,7 @@ public class ProxyMessageDispatcher implements MessageDispatcher {
 
     @Override
     public void send(String to, Response response) {
-        ProxyMessage responseMessage = ProxyMessageBuilder.notification(new NotificationCreatePayload(to, gson.toJson(response)));
+        ProxyMessage responseMessage = ProxyMessageBuilder.notification(new NotificationCreatePayload(to, ResponseJsonWriter.toJson(gson, response)));
         proxyClient.push(responseMessage);
     }
 }
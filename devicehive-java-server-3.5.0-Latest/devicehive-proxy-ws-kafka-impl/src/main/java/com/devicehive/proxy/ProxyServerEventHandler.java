@@ -37,10 +37,12 @@ import com.lmax.disruptor.WorkHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Component
 @Profile("ws-kafka-proxy-backend")
@@ -51,11 +53,14 @@ public class ProxyServerEventHandler implements WorkHandler<ServerEvent> {
     private final Gson gson;
     private final ProxyClient proxyClient;
     private final HandlersMapper requestHandlersMapper;
+    private final Executor replyExecutor;
 
     @Autowired
-    public ProxyServerEventHandler(Gson gson, WebSocketKafkaProxyConfig proxyConfig, HandlersMapper requestHandlersMapper) {
+    public ProxyServerEventHandler(Gson gson, WebSocketKafkaProxyConfig proxyConfig, HandlersMapper requestHandlersMapper,
+                                   @Qualifier("proxy-reply-executor") Executor replyExecutor) {
         this.gson = gson;
         this.requestHandlersMapper = requestHandlersMapper;
+        this.replyExecutor = replyExecutor;
         WebSocketKafkaProxyClient webSocketKafkaProxyClient = new WebSocketKafkaProxyClient((message, client) -> {});
         webSocketKafkaProxyClient.setWebSocketKafkaProxyConfig(proxyConfig);
         this.proxyClient = webSocketKafkaProxyClient;
@@ -67,7 +72,7 @@ public class ProxyServerEventHandler implements WorkHandler<ServerEvent> {
         final Request request = serverEvent.get();
         final String replyTo = request.getReplyTo();
 
-        Response response;
+        CompletableFuture<Response> response;
 
         switch (request.getType()) {
             case clientRequest:
@@ -76,40 +81,61 @@ public class ProxyServerEventHandler implements WorkHandler<ServerEvent> {
                 break;
             case ping:
                 logger.info("Ping request received from {}", replyTo);
-                response = Response.newBuilder().buildSuccess();
+                response = CompletableFuture.completedFuture(Response.newBuilder().buildSuccess());
                 break;
             default:
                 logger.warn("Unknown type of request received {} from client with topic {}, correlationId = {}",
                         request.getType(), replyTo, request.getCorrelationId());
-                response = Response.newBuilder()
-                        .buildFailed(404);
+                response = CompletableFuture.completedFuture(Response.newBuilder()
+                        .buildFailed(404));
         }
 
+        // responses completed later, e.g. by the hazelcast write batcher, are sent from the reply executor,
+        // so that serialization and send do not hold up the thread completing them
+        CompletableFuture<Void> replied = response.isDone()
+                ? response.thenAccept(r -> reply(request, r))
+                : response.thenAcceptAsync(r -> reply(request, r), replyExecutor);
+        replied.whenComplete((v, e) -> {
+            if (e != null) {
+                logger.error("Unable to reply to request (correlationId = {}, replyTo = {})",
+                        request.getCorrelationId(), replyTo, e);
+            }
+        });
+    }
+
+    private void reply(Request request, Response response) {
+        final String replyTo = request.getReplyTo();
         // set correlationId explicitly to prevent missing it in request
         response.setCorrelationId(request.getCorrelationId());
         ProxyMessage responseMessage = ProxyMessageBuilder.notification(new NotificationCreatePayload(replyTo, gson.toJson(response)));
         proxyClient.push(responseMessage);
     }
 
-    private Response handleClientRequest(Request request) {
-        Response response;
-        final Action action = request.getBody().getAction();
+    private CompletableFuture<Response> handleClientRequest(Request request) {
+        CompletableFuture<Response> response;
+        final Action action = request.getAction();
 
         RequestHandler requestHandler = requestHandlersMapper.requestHandlerMap().get(action);
         if (requestHandler == null) {
             throw new RuntimeException("Action '" + action + "' is not supported.");
         }
         try {
-            response = Optional.ofNullable(requestHandler.handle(request))
-                    .orElseThrow(() -> new NullPointerException("Response must not be null"));
+            response = requestHandler.handleAsync(request);
         } catch (Exception e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        return response.handle((r, e) -> {
+            if (e == null && r != null) {
+                return r;
+            }
             logger.error("Unexpected exception occurred during request handling (action='{}', handler='{}')",
-                    request.getBody().getAction().name(), requestHandler.getClass().getCanonicalName(), e);
+                    request.getAction().name(), requestHandler.getClass().getCanonicalName(),
+                    e != null ? e : new NullPointerException("Response must not be null"));
 
-            response = Response.newBuilder()
+            return Response.newBuilder()
                     .withLast(request.isSingleReplyExpected())
                     .buildFailed(500);
-        }
-        return response;
+        });
     }
 }
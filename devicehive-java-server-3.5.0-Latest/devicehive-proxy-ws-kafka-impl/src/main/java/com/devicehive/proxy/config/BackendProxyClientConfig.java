@@ -37,6 +37,7 @@ import com.devicehive.shim.api.server.MessageDispatcher;
 import com.google.gson.Gson;
 import com.lmax.disruptor.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -57,11 +58,17 @@ public class BackendProxyClientConfig {
     @Autowired
     private WebSocketKafkaProxyConfig proxyConfig;
 
+    @Bean(name = "proxy-reply-executor", destroyMethod = "shutdown")
+    public ExecutorService proxyReplyExecutor(WebSocketKafkaProxyConfig proxyConfig) {
+        return Executors.newFixedThreadPool(proxyConfig.getWorkerThreads());
+    }
+
     @Bean
-    public WorkerPool<ServerEvent> workerPool(Gson gson, WebSocketKafkaProxyConfig proxyConfig, HandlersMapper requestHandlersMapper) {
+    public WorkerPool<ServerEvent> workerPool(Gson gson, WebSocketKafkaProxyConfig proxyConfig, HandlersMapper requestHandlersMapper,
+                                              @Qualifier("proxy-reply-executor") Executor replyExecutor) {
         final ProxyServerEventHandler[] workHandlers = new ProxyServerEventHandler[proxyConfig.getWorkerThreads()];
         IntStream.range(0, proxyConfig.getWorkerThreads()).forEach(
-                nbr -> workHandlers[nbr] = new ProxyServerEventHandler(gson, proxyConfig, requestHandlersMapper)
+                nbr -> workHandlers[nbr] = new ProxyServerEventHandler(gson, proxyConfig, requestHandlersMapper, replyExecutor)
         );
         final RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, proxyConfig.getBufferSize(), getWaitStrategy());
         final SequenceBarrier barrier = ringBuffer.newBarrier();
@@ -20,6 +20,7 @@ package com.devicehive.proxy.config;
  * #L%
  */
 
+import com.devicehive.api.CallbackExecutor;
 import com.devicehive.api.RequestResponseMatcher;
 import com.devicehive.model.ServerEvent;
 import com.devicehive.proxy.FrontendProxyClient;
@@ -58,6 +59,18 @@ public class FrontendProxyClientConfig {
     @Value("${response.topic.perfix}")
     private String responseTopicPrefix;
 
+    @Value("${rpc.client.response-timeout-ms:60000}")
+    private long responseTimeoutMs;
+
+    @Value("${rpc.client.callback.mode:ordered}")
+    private String callbackMode;
+
+    @Value("${rpc.client.callback.threads:16}")
+    private int callbackThreads;
+
+    @Value("${rpc.client.callback.queue-capacity:1024}")
+    private int callbackQueueCapacity;
+
     @PostConstruct
     private void init() {
         try {
@@ -79,7 +92,8 @@ public class FrontendProxyClientConfig {
 
     @Bean
     public RequestResponseMatcher requestResponseMatcher() {
-        return new RequestResponseMatcher();
+        return new RequestResponseMatcher(responseTimeoutMs,
+                CallbackExecutor.forMode(callbackMode, callbackThreads, callbackQueueCapacity));
     }
 
     @Bean
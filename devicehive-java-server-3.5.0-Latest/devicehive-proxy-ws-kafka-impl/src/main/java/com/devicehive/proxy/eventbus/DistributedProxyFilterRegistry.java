@@ -38,6 +38,7 @@ import java.util.*;
 import static com.devicehive.configuration.Constants.SUBSCRIPTION_TOPIC;
 import static com.devicehive.model.eventbus.SubscribeAction.REGISTER;
 import static com.devicehive.model.eventbus.SubscribeAction.UNREGISTER;
+import static com.devicehive.model.eventbus.SubscribeAction.UNREGISTER_ALL;
 
 public class DistributedProxyFilterRegistry extends FilterRegistry {
 
@@ -85,4 +86,18 @@ public class DistributedProxyFilterRegistry extends FilterRegistry {
             }
         });
     }
+
+    @Override
+    public void unregisterAll(Collection<Long> subscriptionIds) {
+        processUnregisterAll(subscriptionIds);
+
+        String subscribeMessage = gson.toJson(new SubscribeMessage(UNREGISTER_ALL, subscriptionIds));
+        proxyClient.push(ProxyMessageBuilder.notification(
+                new NotificationCreatePayload(SUBSCRIPTION_TOPIC, subscribeMessage))).thenAccept(message -> {
+            if (message.getStatus() == null || message.getStatus() != 0) {
+                MessagePayload payload = (MessagePayload) message.getPayload();
+                throw new HiveException("Response message is failed: " + payload.getMessage());
+            }
+        });
+    }
 }
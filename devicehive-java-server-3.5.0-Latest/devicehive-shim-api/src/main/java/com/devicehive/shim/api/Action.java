@@ -20,6 +20,10 @@ package com.devicehive.shim.api;
  * #L%
  */
 
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Set;
+
 public enum Action {
     EMPTY,
     ERROR_RESPONSE,
@@ -82,5 +86,26 @@ public enum Action {
     DEVICE_DELETE_REQUEST,
     DEVICE_DELETE_RESPONSE,
 
-    COUNT_RESPONSE
+    COUNT_RESPONSE;
+
+    /**
+     * Returns actions with given names, name ending with '*' matches all actions with that prefix.
+     */
+    public static Set<Action> matching(Collection<String> names) {
+        final Set<Action> actions = EnumSet.noneOf(Action.class);
+        for (String name : names) {
+            final String pattern = name.trim();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            for (Action action : values()) {
+                if (pattern.endsWith("*")
+                        ? action.name().startsWith(pattern.substring(0, pattern.length() - 1))
+                        : action.name().equals(pattern)) {
+                    actions.add(action);
+                }
+            }
+        }
+        return actions;
+    }
 }
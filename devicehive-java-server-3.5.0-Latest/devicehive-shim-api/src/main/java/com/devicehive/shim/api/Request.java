@@ -23,8 +23,10 @@ package com.devicehive.shim.api;
 import com.google.gson.annotations.SerializedName;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import static com.devicehive.shim.api.RequestType.clientRequest;
 
@@ -48,11 +50,26 @@ public class Request {
     @SerializedName("t")
     private int type;
 
+    /**
+     * Action and deferred reader of the body, set when body is deserialized on first {@link #getBody()} call.
+     */
+    private transient Action action;
+    private transient Supplier<? extends Body> bodyReader;
+
+    /**
+     * Requests packed into envelope of {@link RequestType#batch} type.
+     */
+    private transient List<Request> batch;
+
     private Request(Body body,
+                    Action action,
+                    Supplier<? extends Body> bodyReader,
                     boolean singleReplyExpected,
                     String correlationId,
                     String partitionKey) {
         this.body = body;
+        this.action = action;
+        this.bodyReader = bodyReader;
         this.singleReplyExpected = singleReplyExpected;
         this.correlationId = correlationId;
         this.partitionKey = partitionKey;
@@ -60,9 +77,24 @@ public class Request {
     }
 
     public Body getBody() {
+        Supplier<? extends Body> reader = bodyReader;
+        if (reader != null) {
+            body = reader.get();
+            bodyReader = null;
+        }
         return body;
     }
 
+    /**
+     * Returns action of the body without deserializing it.
+     */
+    public Action getAction() {
+        if (bodyReader != null) {
+            return action;
+        }
+        return body != null ? body.getAction() : null;
+    }
+
     public String getReplyTo() {
         return replyTo;
     }
@@ -91,13 +123,34 @@ public class Request {
         return RequestType.values()[type];
     }
 
+    /**
+     * Returns requests packed into this envelope, or null if this is not an envelope.
+     */
+    public List<Request> getBatch() {
+        return batch;
+    }
+
+    /**
+     * Packs requests into an envelope, which is sent and received as a single message and unpacked by the server.
+     * Envelope has no body and is keyed by the partition key of the first request.
+     */
+    public static Request batch(List<Request> requests) {
+        final Request envelope = Request.newBuilder()
+                .withPartitionKey(requests.isEmpty() ? null : requests.get(0).getPartitionKey())
+                .withSingleReply(false)
+                .build();
+        envelope.setType(RequestType.batch);
+        envelope.batch = requests;
+        return envelope;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (!(o instanceof Request)) return false;
         Request request = (Request) o;
         return singleReplyExpected == request.singleReplyExpected &&
-                Objects.equals(body, request.body) &&
+                Objects.equals(getBody(), request.getBody()) &&
                 Objects.equals(correlationId, request.correlationId) &&
                 Objects.equals(partitionKey, request.partitionKey) &&
                 Objects.equals(replyTo, request.replyTo);
@@ -105,13 +158,13 @@ public class Request {
 
     @Override
     public int hashCode() {
-        return Objects.hash(body, correlationId, singleReplyExpected, replyTo);
+        return Objects.hash(getBody(), correlationId, singleReplyExpected, replyTo);
     }
 
     @Override
     public String toString() {
         final StringBuilder sb = new StringBuilder("Request{");
-        sb.append(", body=").append(body);
+        sb.append(", body=").append(getBody());
         sb.append(", correlationId='").append(correlationId).append('\'');
         sb.append(", singleReplyExpected=").append(singleReplyExpected);
         sb.append(", partitionKey=").append(partitionKey);
@@ -126,6 +179,8 @@ public class Request {
 
     public static class Builder<T extends Body> {
         private T body;
+        private Action action;
+        private Supplier<? extends T> bodyReader;
         private String correlationId = UUID.randomUUID().toString();
         private boolean singleReply = true;
         private String partitionKey;
@@ -135,6 +190,20 @@ public class Request {
             return this;
         }
 
+        /**
+         * Defers body deserialization until it is requested, so that request could be routed by action first.
+         */
+        public Builder<T> withLazyBody(Action action, Supplier<? extends T> bodyReader) {
+            this.action = action;
+            this.bodyReader = bodyReader;
+            return this;
+        }
+
+        public Builder<T> withCorrelationId(String correlationId) {
+            this.correlationId = correlationId;
+            return this;
+        }
+
         public Builder<T> withSingleReply(boolean singleReply) {
             this.singleReply = singleReply;
             return this;
@@ -147,7 +216,7 @@ public class Request {
 
         public Request build() {
             return new Request(
-                    body, singleReply,
+                    body, action, bodyReader, singleReply,
                     correlationId,
                     StringUtils.isBlank(partitionKey) // partitionKey is optional, set value to correlationId if it's blank
                             ? correlationId
@@ -21,5 +21,9 @@ package com.devicehive.shim.api;
  */
 
 public enum RequestType {
-    clientRequest, ping
+    clientRequest, ping,
+    /**
+     * Envelope of requests sent as a single message, see {@link Request#batch(java.util.List)}.
+     */
+    batch
 }
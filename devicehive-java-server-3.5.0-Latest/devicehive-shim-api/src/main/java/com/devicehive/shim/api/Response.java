@@ -22,6 +22,7 @@ package com.devicehive.shim.api;
 
 import com.google.gson.annotations.SerializedName;
 
+import java.util.List;
 import java.util.Objects;
 
 @SuppressWarnings("unused")
@@ -33,6 +34,13 @@ public class Response {
     @SerializedName("cId")
     private String correlationId;
 
+    /**
+     * Correlation ids of all recipients of grouped response. When set, the same body is delivered
+     * to every listed correlation id and {@link #correlationId} is not used.
+     */
+    @SerializedName("cIds")
+    private List<String> correlationIds;
+
     @SerializedName("l")
     private boolean last;
 
@@ -42,9 +50,10 @@ public class Response {
     @SerializedName("fld")
     private boolean failed;
 
-    private Response(Body body, String correlationId, boolean last, int errorCode, boolean failed) {
+    private Response(Body body, String correlationId, List<String> correlationIds, boolean last, int errorCode, boolean failed) {
         this.body = body;
         this.correlationId = correlationId;
+        this.correlationIds = correlationIds;
         this.last = last;
         this.errorCode = errorCode;
         this.failed = failed;
@@ -58,6 +67,14 @@ public class Response {
         return correlationId;
     }
 
+    public List<String> getCorrelationIds() {
+        return correlationIds;
+    }
+
+    public boolean isGrouped() {
+        return correlationIds != null;
+    }
+
     public boolean isLast() {
         return last;
     }
@@ -83,12 +100,13 @@ public class Response {
                 errorCode == response.errorCode &&
                 failed == response.failed &&
                 Objects.equals(body, response.body) &&
-                Objects.equals(correlationId, response.correlationId);
+                Objects.equals(correlationId, response.correlationId) &&
+                Objects.equals(correlationIds, response.correlationIds);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(body, correlationId, last, errorCode, failed);
+        return Objects.hash(body, correlationId, correlationIds, last, errorCode, failed);
     }
 
     @Override
@@ -96,6 +114,7 @@ public class Response {
         final StringBuilder sb = new StringBuilder("Response{");
         sb.append(", body=").append(body);
         sb.append(", correlationId='").append(correlationId).append('\'');
+        sb.append(", correlationIds=").append(correlationIds);
         sb.append(", last=").append(last);
         sb.append(", errorCode=").append(errorCode);
         sb.append(", failed=").append(failed);
@@ -111,6 +130,7 @@ public class Response {
         private T body;
         private boolean last = true;
         private String correlationId;
+        private List<String> correlationIds;
 
         public Builder<T> withBody(T body) {
             this.body = body;
@@ -122,17 +142,22 @@ public class Response {
             return this;
         }
 
+        public Builder<T> withCorrelationIds(List<String> correlationIds) {
+            this.correlationIds = correlationIds;
+            return this;
+        }
+
         public Builder<T> withLast(boolean last) {
             this.last = last;
             return this;
         }
 
         public Response buildFailed(int errorCode) {
-            return new Response(body, correlationId, last, errorCode, true);
+            return new Response(body, correlationId, correlationIds, last, errorCode, true);
         }
 
         public Response buildSuccess() {
-            return new Response(body, correlationId, last, 0, false);
+            return new Response(body, correlationId, correlationIds, last, 0, false);
         }
 
     }
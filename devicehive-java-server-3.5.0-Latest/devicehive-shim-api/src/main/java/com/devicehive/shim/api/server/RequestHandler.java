@@ -23,8 +23,18 @@ package com.devicehive.shim.api.server;
 import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface RequestHandler {
 
     Response handle(Request request);
 
+    /**
+     * Handles request without waiting for its response to be ready, so that the calling worker can proceed
+     * with the next request. Handlers completing requests asynchronously override this method,
+     * others respond synchronously.
+     */
+    default CompletableFuture<Response> handleAsync(Request request) {
+        return CompletableFuture.completedFuture(handle(request));
+    }
 }
@@ -21,6 +21,8 @@ package com.devicehive.shim.config;
  */
 
 
+import com.devicehive.shim.kafka.serializer.RpcCodec;
+import com.google.gson.Gson;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.producer.ProducerConfig;
 import org.springframework.beans.factory.annotation.Value;
@@ -88,6 +90,9 @@ public class KafkaRpcConfig {
     @Value("${rpc.handler.threads:1}")
     private int handlerThreads;
 
+    @Value("${rpc.codec:json}")
+    private String codec;
+
     public Properties producerProps() {
         Properties props = new Properties();
         props.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
@@ -117,6 +122,7 @@ public class KafkaRpcConfig {
     public Properties serverConsumerProps() {
         Properties props = commonConsumerProps();
         props.put(ConsumerConfig.GROUP_ID_CONFIG,  requestConsumerGroup);
+        props.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, enableAutoCommit);
         return props;
     }
     
@@ -149,4 +155,8 @@ public class KafkaRpcConfig {
     public int getHandlerThreads() {
         return handlerThreads;
     }
+
+    public RpcCodec rpcCodec(Gson gson) {
+        return RpcCodec.forName(codec, gson);
+    }
 }
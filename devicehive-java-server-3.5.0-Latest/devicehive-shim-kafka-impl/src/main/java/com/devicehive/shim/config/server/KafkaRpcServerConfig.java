@@ -28,6 +28,8 @@ import com.devicehive.shim.kafka.eventbus.DistributedRpcFilterRegistry;
 import com.devicehive.shim.kafka.serializer.RequestSerializer;
 import com.devicehive.shim.kafka.serializer.ResponseSerializer;
 import com.devicehive.shim.kafka.server.KafkaRpcServer;
+import com.devicehive.shim.kafka.server.OverloadPolicy;
+import com.devicehive.shim.kafka.server.PartitionAffineWorkers;
 import com.devicehive.shim.config.KafkaRpcConfig;
 import com.devicehive.shim.kafka.server.RequestConsumer;
 import com.devicehive.model.ServerEvent;
@@ -35,6 +37,7 @@ import com.devicehive.shim.kafka.server.ServerEventHandler;
 import com.devicehive.shim.kafka.topic.KafkaTopicService;
 import com.google.gson.Gson;
 import com.lmax.disruptor.*;
+import com.lmax.disruptor.dsl.ProducerType;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.common.serialization.StringSerializer;
@@ -47,6 +50,9 @@ import org.springframework.context.annotation.*;
 import org.springframework.core.env.Environment;
 
 import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.IntStream;
 
 import static com.devicehive.configuration.Constants.REQUEST_TOPIC;
@@ -70,9 +76,27 @@ public class KafkaRpcServerConfig {
     @Value("${rpc.server.request-consumer.threads:1}")
     private int consumerThreads;
 
+    @Value("${rpc.server.request-consumer.batch:true}")
+    private boolean batchConsume;
+
     @Value("${rpc.server.worker.threads:1}")
     private int workerThreads;
 
+    @Value("${rpc.server.worker.mode:pool}")
+    private String workerMode;
+
+    @Value("${rpc.server.overload.shed-actions:}")
+    private String[] shedActions;
+
+    @Value("${rpc.server.overload.resume-capacity:0.5}")
+    private double resumeCapacity;
+
+    @Value("${rpc.server.overload.paused-poll-ms:100}")
+    private long pausedPollMs;
+
+    @Value("${rpc.server.metrics.log-interval-ms:60000}")
+    private long metricsLogIntervalMs;
+
     @Value("${lmax.buffer-size:1024}")
     private int bufferSize;
 
@@ -86,16 +110,10 @@ public class KafkaRpcServerConfig {
 
     @Bean(name = "server-producer")
     public Producer<String, Response> kafkaResponseProducer(Gson gson) {
-        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new ResponseSerializer(gson));
+        return new KafkaProducer<>(kafkaRpcConfig.producerProps(), new StringSerializer(), new ResponseSerializer(kafkaRpcConfig.rpcCodec(gson)));
     }
 
-    @Bean
-    public WorkerPool<ServerEvent> workerPool(@Qualifier("request-dispatcher") RequestHandler requestHandler,
-                                              @Qualifier("server-producer") Producer<String, Response> responseProducer) {
-        final ServerEventHandler[] workHandlers = new ServerEventHandler[workerThreads];
-        IntStream.range(0, workerThreads).forEach(
-                nbr -> workHandlers[nbr] = new ServerEventHandler(requestHandler, responseProducer)
-        );
+    private WorkerPool<ServerEvent> workerPool(ServerEventHandler[] workHandlers) {
         final RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, bufferSize, getWaitStrategy());
         final SequenceBarrier barrier = ringBuffer.newBarrier();
         WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ringBuffer, barrier, new FatalExceptionHandler(), workHandlers);
@@ -103,6 +121,14 @@ public class KafkaRpcServerConfig {
         return workerPool;
     }
 
+    /**
+     * Rings of partition affine workers have a single producer when a single consumer thread feeds them.
+     */
+    private PartitionAffineWorkers affineWorkers(ServerEventHandler[] workHandlers) {
+        final ProducerType producerType = consumerThreads == 1 ? ProducerType.SINGLE : ProducerType.MULTI;
+        return new PartitionAffineWorkers(workHandlers, producerType, bufferSize, this::getWaitStrategy);
+    }
+
     private WaitStrategy getWaitStrategy() {
         logger.info("RPC server wait strategy: {}", waitStrategy);
         WaitStrategy strategy;
@@ -127,20 +153,45 @@ public class KafkaRpcServerConfig {
         return strategy;
     }
 
+    @Bean(name = "server-reply-executor", destroyMethod = "shutdown")
+    public ExecutorService serverReplyExecutor() {
+        return Executors.newFixedThreadPool(workerThreads);
+    }
+
     @Bean
     public ServerEventHandler serverEventHandler(@Qualifier("request-dispatcher") RequestHandler requestHandler,
-                                                 @Qualifier("server-producer") Producer<String, Response> responseProducer) {
-        return new ServerEventHandler(requestHandler, responseProducer);
+                                                 @Qualifier("server-producer") Producer<String, Response> responseProducer,
+                                                 @Qualifier("server-reply-executor") ExecutorService replyExecutor) {
+        return new ServerEventHandler(requestHandler, responseProducer, replyExecutor);
+    }
+
+    @Bean
+    public OverloadPolicy overloadPolicy(ServerEventHandler eventHandler) {
+        logger.info("RPC server sheds {} when overloaded", Arrays.toString(shedActions));
+        return new OverloadPolicy(eventHandler, Arrays.asList(shedActions), resumeCapacity, pausedPollMs);
     }
 
     @Bean
-    public RequestConsumer requestConsumer(Gson gson) {
-        return new RequestConsumer(REQUEST_TOPIC, kafkaRpcConfig.serverConsumerProps(), consumerThreads, new RequestSerializer(gson));
+    public RequestConsumer requestConsumer(Gson gson, OverloadPolicy overloadPolicy) {
+        RequestConsumer requestConsumer = new RequestConsumer(REQUEST_TOPIC, kafkaRpcConfig.serverConsumerProps(), consumerThreads,
+                new RequestSerializer(kafkaRpcConfig.rpcCodec(gson)), batchConsume, overloadPolicy);
+        requestConsumer.setMetricsLogInterval(metricsLogIntervalMs);
+        return requestConsumer;
     }
 
     @Bean
-    public RpcServer rpcServer(WorkerPool<ServerEvent> workerPool, RequestConsumer requestConsumer, ServerEventHandler eventHandler) {
-        RpcServer server = new KafkaRpcServer(workerPool, requestConsumer, eventHandler, workerThreads);
+    public RpcServer rpcServer(@Qualifier("request-dispatcher") RequestHandler requestHandler,
+                               @Qualifier("server-producer") Producer<String, Response> responseProducer,
+                               @Qualifier("server-reply-executor") ExecutorService replyExecutor,
+                               RequestConsumer requestConsumer, ServerEventHandler eventHandler) {
+        final ServerEventHandler[] workHandlers = new ServerEventHandler[workerThreads];
+        IntStream.range(0, workerThreads).forEach(
+                nbr -> workHandlers[nbr] = new ServerEventHandler(requestHandler, responseProducer, replyExecutor)
+        );
+        logger.info("RPC server worker mode: {}", workerMode);
+        RpcServer server = "pool".equals(workerMode)
+                ? new KafkaRpcServer(workerPool(workHandlers), requestConsumer, eventHandler, workerThreads)
+                : new KafkaRpcServer(affineWorkers(workHandlers), requestConsumer, eventHandler);
         server.start();
         return server;
     }
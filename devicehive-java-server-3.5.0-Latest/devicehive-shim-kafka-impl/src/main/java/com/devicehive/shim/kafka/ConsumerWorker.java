@@ -24,6 +24,7 @@ package com.devicehive.shim.kafka;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetCommitCallback;
 import org.apache.kafka.clients.consumer.internals.NoOpConsumerRebalanceListener;
 import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.errors.WakeupException;
@@ -34,47 +35,119 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.concurrent.CountDownLatch;
 
+/**
+ * Polls topic and hands records over to {@link #process(ConsumerRecords)}.
+ * With manual commit, offsets of every poll are committed once its records are handed over,
+ * so that records are neither skipped by a commit running ahead of processing nor consumed twice
+ * because of a commit lagging behind it by the whole auto commit interval.
+ */
 public abstract class ConsumerWorker<T> implements Runnable {
     private static final Logger logger = LoggerFactory.getLogger(ConsumerWorker.class);
 
     private String topic;
     private KafkaConsumer<String, T> consumer;
     private CountDownLatch latch;
+    private boolean manualCommit;
+
+    private final OffsetCommitCallback commitCallback = (offsets, e) -> {
+        if (e != null) {
+            logger.warn("Unable to commit offsets {}", offsets, e);
+        }
+    };
 
     public ConsumerWorker(String topic, KafkaConsumer<String, T> consumer, CountDownLatch latch) {
+        this(topic, consumer, latch, false);
+    }
+
+    public ConsumerWorker(String topic, KafkaConsumer<String, T> consumer, CountDownLatch latch, boolean manualCommit) {
         this.topic = topic;
         this.consumer = consumer;
         this.latch = latch;
+        this.manualCommit = manualCommit;
     }
 
     @Override
     public void run() {
         try {
             consumer.subscribe(Collections.singletonList(topic), new NoOpConsumerRebalanceListener() {
+                @Override
+                public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+                    if (manualCommit) {
+                        consumer.commitSync();
+                    }
+                }
+
                 @Override
                 public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
                     latch.countDown();
                 }
             });
             while (!Thread.currentThread().isInterrupted()) {
-                ConsumerRecords<String, T> records = consumer.poll(Long.MAX_VALUE);
-                records.forEach(record -> {
-                    logger.trace("Topic {}, partition {}, offset {}", record.topic(), record.partition(), record.offset());
-                    process(record);
-                });
+                beforePoll();
+                ConsumerRecords<String, T> records = consumer.poll(getPollTimeout());
+                if (records.isEmpty()) {
+                    continue;
+                }
+                process(records);
+                if (manualCommit) {
+                    consumer.commitAsync(commitCallback);
+                }
             }
         }  catch (WakeupException e) {
             logger.warn("Kafka consumer thread is shutting down");
         } catch (Exception e) {
             logger.error("Unexpected exception in server Kafka consumer", e);
         } finally {
+            commitOnClose();
             consumer.close();
         }
     }
 
+    /**
+     * Called before every poll, e.g. to resume paused partitions.
+     */
+    protected void beforePoll() {
+    }
+
+    /**
+     * Returns how long poll may wait for records. Workers which have to check something between polls,
+     * e.g. whether paused partitions can be resumed, have to return a finite timeout.
+     */
+    protected long getPollTimeout() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Consumer is not thread safe and may be used only from the callbacks of this worker.
+     */
+    protected KafkaConsumer<String, T> getConsumer() {
+        return consumer;
+    }
+
+    /**
+     * Hands over records of a single poll. Processes them one by one unless overridden.
+     */
+    public void process(ConsumerRecords<String, T> records) {
+        records.forEach(record -> {
+            logger.trace("Topic {}, partition {}, offset {}", record.topic(), record.partition(), record.offset());
+            process(record);
+        });
+    }
+
     public abstract void process(ConsumerRecord<String, T> record);
 
     public void shutdown() {
         consumer.wakeup();
     }
+
+    private void commitOnClose() {
+        if (!manualCommit) {
+            return;
+        }
+        try {
+            consumer.commitSync();
+        } catch (Exception e) {
+            logger.warn("Unable to commit offsets on shutdown", e);
+        }
+    }
 }
@@ -24,6 +24,7 @@ import com.devicehive.shim.api.Request;
 import com.devicehive.shim.api.Response;
 import com.devicehive.shim.api.client.RpcClient;
 import com.devicehive.shim.kafka.client.KafkaRpcClient;
+import com.devicehive.api.CallbackExecutor;
 import com.devicehive.api.RequestResponseMatcher;
 import com.devicehive.shim.kafka.client.ServerResponseListener;
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -48,6 +49,9 @@ public class ClientBuilder {
     private Deserializer<Response> consumerValueDeserializer;
     private int consumerThreads;
 
+    private long responseTimeoutMs = RequestResponseMatcher.DEFAULT_RESPONSE_TIMEOUT_MS;
+    private CallbackExecutor callbackExecutor;
+
     public ClientBuilder withRequestTopic(String requestTopic) {
         this.requestTopic = requestTopic;
         return this;
@@ -83,8 +87,20 @@ public class ClientBuilder {
         return this;
     }
 
+    public ClientBuilder withResponseTimeoutMs(long responseTimeoutMs) {
+        this.responseTimeoutMs = responseTimeoutMs;
+        return this;
+    }
+
+    public ClientBuilder withCallbackExecutor(CallbackExecutor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
     public RpcClient build() {
-        RequestResponseMatcher matcher = new RequestResponseMatcher();
+        RequestResponseMatcher matcher = callbackExecutor != null
+                ? new RequestResponseMatcher(responseTimeoutMs, callbackExecutor)
+                : new RequestResponseMatcher(responseTimeoutMs);
 
         ExecutorService consumerExecutor = Executors.newFixedThreadPool(consumerThreads);
         ServerResponseListener responseListener = new ServerResponseListener(replyTopic, consumerThreads,
@@ -37,6 +37,8 @@ import org.apache.kafka.common.serialization.Serializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
 import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.IntStream;
 
 public class ServerBuilder {
@@ -91,14 +93,15 @@ public class ServerBuilder {
     public RpcServer build() {
         final int workerThreads = 3;
         Producer<String, Response> responseProducer = new KafkaProducer<>(producerProps, new StringSerializer(), producerValueSerializer);
+        final ExecutorService replyExecutor = Executors.newFixedThreadPool(workerThreads);
         final ServerEventHandler[] workHandlers = new ServerEventHandler[workerThreads];
         IntStream.range(0, workerThreads).forEach(
-                nbr -> workHandlers[nbr] = new ServerEventHandler(requestHandler, responseProducer)
+                nbr -> workHandlers[nbr] = new ServerEventHandler(requestHandler, responseProducer, replyExecutor)
         );
         final WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ServerEvent::new, new FatalExceptionHandler(), workHandlers);
 
         RequestConsumer requestConsumer = new RequestConsumer(topic, consumerProps, consumerThreads, consumerValueDeserializer);
-        return new KafkaRpcServer(workerPool, requestConsumer, new ServerEventHandler(requestHandler, responseProducer), workerThreads);
+        return new KafkaRpcServer(workerPool, requestConsumer, new ServerEventHandler(requestHandler, responseProducer, replyExecutor), workerThreads);
     }
 
 }
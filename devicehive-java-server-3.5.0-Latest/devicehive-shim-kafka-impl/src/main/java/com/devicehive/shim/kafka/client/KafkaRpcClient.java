@@ -36,6 +36,11 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
+/**
+ * Sends requests to the request topic and matches responses with callbacks. With batching enabled, requests
+ * bound for the same partition are packed into envelopes by {@link RequestBatcher} instead of being sent
+ * as a record each.
+ */
 public class KafkaRpcClient implements RpcClient {
     private static final Logger logger = LoggerFactory.getLogger(KafkaRpcClient.class);
 
@@ -44,6 +49,7 @@ public class KafkaRpcClient implements RpcClient {
     private Producer<String, Request> requestProducer;
     private RequestResponseMatcher requestResponseMatcher;
     private ServerResponseListener responseListener;
+    private RequestBatcher batcher;
 
     public KafkaRpcClient(String requestTopic, String replyToTopic, Producer<String, Request> requestProducer,
                           RequestResponseMatcher requestResponseMatcher, ServerResponseListener responseListener) {
@@ -54,6 +60,20 @@ public class KafkaRpcClient implements RpcClient {
         this.responseListener = responseListener;
     }
 
+    /**
+     * @param batchMaxRequests maximum number of requests packed into one envelope, batching is disabled unless above 1
+     * @param batchLingerMs    maximum time a request waits for other requests of its partition
+     */
+    public KafkaRpcClient(String requestTopic, String replyToTopic, Producer<String, Request> requestProducer,
+                          RequestResponseMatcher requestResponseMatcher, ServerResponseListener responseListener,
+                          int batchMaxRequests, long batchLingerMs) {
+        this(requestTopic, replyToTopic, requestProducer, requestResponseMatcher, responseListener);
+        if (batchMaxRequests > 1) {
+            this.batcher = new RequestBatcher(requestTopic, requestProducer, batchMaxRequests, batchLingerMs,
+                    requests -> requests.forEach(r -> requestResponseMatcher.removeRequestCallback(r.getCorrelationId())));
+        }
+    }
+
     @Override
     public void start() {
         responseListener.startWorkers();
@@ -62,7 +82,7 @@ public class KafkaRpcClient implements RpcClient {
 
     @Override
     public void call(Request request, Consumer<Response> callback) {
-        requestResponseMatcher.addRequestCallback(request.getCorrelationId(), callback);
+        requestResponseMatcher.addRequestCallback(request, callback);
         logger.debug("Request callback added for request: {}, correlationId: {}", request.getBody(), request.getCorrelationId());
 
         push(request);
@@ -75,6 +95,12 @@ public class KafkaRpcClient implements RpcClient {
         }
 
         request.setReplyTo(replyToTopic);
+        // Request.Builder keys requests built without partition key by correlation id, requests without any key
+        // are not bound to a partition, so they are sent as is and the producer spreads them round robin
+        if (batcher != null && request.getPartitionKey() != null) {
+            batcher.add(request);
+            return;
+        }
         requestProducer.send(new ProducerRecord<>(requestTopic, request.getPartitionKey(), request),
                 (recordMetadata, e) -> {
                     if (e != null) {
@@ -88,6 +114,9 @@ public class KafkaRpcClient implements RpcClient {
 
     @Override
     public void shutdown() {
+        if (batcher != null) {
+            batcher.close();
+        }
         requestProducer.close();
         responseListener.shutdown();
     }
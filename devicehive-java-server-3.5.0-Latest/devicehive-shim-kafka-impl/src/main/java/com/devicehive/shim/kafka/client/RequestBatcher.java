@@ -0,0 +1,145 @@
+package com.devicehive.shim.kafka.client;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.shim.api.Request;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.utils.Utils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Packs requests bound for the same partition of the request topic into envelopes, see {@link Request#batch(List)}.
+ * Envelope is sent once it holds {@code maxRequests} requests or {@code lingerMs} after its first request
+ * was added, whichever comes first. Partition is chosen for the key of every request the same way the default
+ * Kafka partitioner chooses it, so that requests of one device stay in one partition and in order.
+ */
+class RequestBatcher {
+    private static final Logger logger = LoggerFactory.getLogger(RequestBatcher.class);
+
+    private final String topic;
+    private final Producer<String, Request> producer;
+    private final int maxRequests;
+    private final long lingerMs;
+    private final Consumer<List<Request>> failureHandler;
+
+    private final ConcurrentHashMap<Integer, Slot> slots = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+
+    /**
+     * Requests collected for one partition. Slot monitor guards them and orders sends to the partition.
+     */
+    private static final class Slot {
+        private final int partition;
+        private List<Request> requests;
+
+        private Slot(int partition) {
+            this.partition = partition;
+        }
+    }
+
+    /**
+     * @param failureHandler receives requests of the envelope which could not be sent
+     */
+    RequestBatcher(String topic, Producer<String, Request> producer, int maxRequests, long lingerMs,
+                   Consumer<List<Request>> failureHandler) {
+        this.topic = topic;
+        this.producer = producer;
+        this.maxRequests = maxRequests;
+        this.lingerMs = lingerMs;
+        this.failureHandler = failureHandler;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rpc-request-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds request with partition key to the envelope of its partition.
+     */
+    void add(Request request) {
+        final Slot slot = slots.computeIfAbsent(partition(request.getPartitionKey()), Slot::new);
+        synchronized (slot) {
+            if (slot.requests == null) {
+                final List<Request> requests = new ArrayList<>(maxRequests);
+                slot.requests = requests;
+                timer.schedule(() -> flush(slot, requests), lingerMs, TimeUnit.MILLISECONDS);
+            }
+            slot.requests.add(request);
+            if (slot.requests.size() >= maxRequests) {
+                send(slot);
+            }
+        }
+    }
+
+    /**
+     * Sends all collected requests and stops the linger timer.
+     */
+    void close() {
+        timer.shutdownNow();
+        slots.values().forEach(slot -> {
+            synchronized (slot) {
+                if (slot.requests != null) {
+                    send(slot);
+                }
+            }
+        });
+    }
+
+    private void flush(Slot slot, List<Request> requests) {
+        synchronized (slot) {
+            if (slot.requests == requests) {
+                send(slot);
+            }
+        }
+    }
+
+    /**
+     * Must be called while holding the slot monitor. Single request is sent as is, without envelope.
+     */
+    private void send(Slot slot) {
+        final List<Request> requests = slot.requests;
+        slot.requests = null;
+        final Request record = requests.size() == 1 ? requests.get(0) : Request.batch(requests);
+        producer.send(new ProducerRecord<>(topic, slot.partition, record.getPartitionKey(), record), (metadata, e) -> {
+            if (e != null) {
+                logger.error("Send of {} requests failed", requests.size(), e);
+                failureHandler.accept(requests);
+            }
+        });
+    }
+
+    private int partition(String key) {
+        final int partitions = producer.partitionsFor(topic).size();
+        return (Utils.murmur2(key.getBytes(StandardCharsets.UTF_8)) & 0x7fffffff) % partitions;
+    }
+}
@@ -28,9 +28,12 @@ import com.devicehive.shim.config.KafkaRpcConfig;
 import com.devicehive.shim.kafka.KafkaMessageHandler;
 import com.google.gson.Gson;
 
+import java.util.Collection;
+
 import static com.devicehive.configuration.Constants.SUBSCRIPTION_TOPIC;
 import static com.devicehive.model.eventbus.SubscribeAction.REGISTER;
 import static com.devicehive.model.eventbus.SubscribeAction.UNREGISTER;
+import static com.devicehive.model.eventbus.SubscribeAction.UNREGISTER_ALL;
 
 public class DistributedRpcFilterRegistry extends FilterRegistry {
 
@@ -64,4 +67,12 @@ public class DistributedRpcFilterRegistry extends FilterRegistry {
         String subscribeMessage = gson.toJson(new SubscribeMessage(UNREGISTER, subscriber));
         messageHandler.push(subscribeMessage);
     }
+
+    @Override
+    public void unregisterAll(Collection<Long> subscriptionIds) {
+        processUnregisterAll(subscriptionIds);
+
+        String subscribeMessage = gson.toJson(new SubscribeMessage(UNREGISTER_ALL, subscriptionIds));
+        messageHandler.push(subscribeMessage);
+    }
 }
@@ -0,0 +1,339 @@
+package com.devicehive.shim.kafka.serializer;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.eventbus.events.Event;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestType;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.Action;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Compact binary codec. Frame layout:
+ * <pre>
+ *   magic (0xDB) | version | kind (0 - request, 1 - response, 2 - batch) | fields
+ * </pre>
+ * Integers are written as unsigned varints, strings as varint (length + 1, 0 for null) followed by UTF-8 bytes.
+ * Body is written as varint (action id + 1, 0 for null) followed by length-prefixed JSON of the body.
+ * When body types are given, body class is resolved by action id, so decoding does not go through
+ * the JSON tree built by {@link com.devicehive.json.adapters.RuntimeTypeAdapterFactory}.
+ * Request body is only deserialized on first {@link Request#getBody()} call.
+ * Batch frame is an envelope of requests: varint count followed by length-prefixed frames of the requests,
+ * which are written by the codec in use, so that envelope is binary even when JSON codec is configured.
+ * JSON frames are still accepted on decoding, so that codec could be switched with a rolling restart.
+ */
+public class BinaryRpcCodec implements RpcCodec {
+
+    static final byte MAGIC = (byte) 0xDB;
+    static final byte VERSION = 1;
+
+    private static final byte KIND_REQUEST = 0;
+    private static final byte KIND_RESPONSE = 1;
+    private static final byte KIND_BATCH = 2;
+
+    private static final int REQUEST_SINGLE_REPLY = 1;
+
+    private static final int RESPONSE_LAST = 1;
+    private static final int RESPONSE_FAILED = 1 << 1;
+    private static final int RESPONSE_GROUPED = 1 << 2;
+
+    private final Gson gson;
+    private final JsonRpcCodec jsonCodec;
+
+    public BinaryRpcCodec(Gson gson) {
+        this(gson, null);
+    }
+
+    /**
+     * @param bodyTypes resolves body class by action id, must match subtypes registered in the Gson instance
+     */
+    public BinaryRpcCodec(Gson gson, IntFunction<Class<? extends Body>> bodyTypes) {
+        this.gson = gson;
+        this.jsonCodec = new JsonRpcCodec(gson, bodyTypes, this);
+    }
+
+    BinaryRpcCodec(JsonRpcCodec jsonCodec) {
+        this.gson = jsonCodec.getGson();
+        this.jsonCodec = jsonCodec;
+    }
+
+    static boolean isBinary(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == MAGIC;
+    }
+
+    @Override
+    public byte[] encodeRequest(Request request) {
+        if (request.getType() == RequestType.batch) {
+            return encodeBatch(this, request.getBatch());
+        }
+        FrameWriter out = new FrameWriter(KIND_REQUEST);
+        out.writeVarint(request.getType().ordinal());
+        out.writeVarint(request.isSingleReplyExpected() ? REQUEST_SINGLE_REPLY : 0);
+        out.writeString(request.getCorrelationId());
+        out.writeString(request.getPartitionKey());
+        out.writeString(request.getReplyTo());
+        writeBody(out, request.getBody());
+        return out.toByteArray();
+    }
+
+    @Override
+    public Request decodeRequest(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            return jsonCodec.decodeRequest(bytes);
+        }
+        if (bytes.length > 2 && bytes[2] == KIND_BATCH) {
+            return decodeBatch(bytes);
+        }
+        FrameReader in = new FrameReader(bytes, KIND_REQUEST);
+        RequestType type = RequestType.values()[in.readVarint()];
+        int flags = in.readVarint();
+        String correlationId = in.readString();
+        String partitionKey = in.readString();
+        String replyTo = in.readString();
+        Request.Builder<Body> builder = Request.newBuilder();
+        int action = in.readVarint() - 1;
+        if (action >= 0) {
+            int length = in.readVarint();
+            int offset = in.skip(length);
+            builder.withLazyBody(Action.values()[action], () -> readBody(bytes, offset, length, action));
+        }
+        Request request = builder
+                .withCorrelationId(correlationId)
+                .withPartitionKey(partitionKey)
+                .withSingleReply((flags & REQUEST_SINGLE_REPLY) != 0)
+                .build();
+        request.setReplyTo(replyTo);
+        request.setType(type);
+        return request;
+    }
+
+    /**
+     * Writes envelope of requests encoded by the given codec.
+     */
+    static byte[] encodeBatch(RpcCodec codec, List<Request> requests) {
+        FrameWriter out = new FrameWriter(KIND_BATCH);
+        out.writeVarint(requests.size());
+        for (Request request : requests) {
+            out.writeBytes(codec.encodeRequest(request));
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Frames of requests are copied out of the envelope, as their bodies are read lazily from the frame bytes.
+     */
+    private Request decodeBatch(byte[] bytes) {
+        FrameReader in = new FrameReader(bytes, KIND_BATCH);
+        int size = in.readVarint();
+        List<Request> requests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            int length = in.readVarint();
+            int offset = in.skip(length);
+            requests.add(decodeRequest(Arrays.copyOfRange(bytes, offset, offset + length)));
+        }
+        return Request.batch(requests);
+    }
+
+    @Override
+    public byte[] encodeResponse(Response response) {
+        FrameWriter out = new FrameWriter(KIND_RESPONSE);
+        int flags = (response.isLast() ? RESPONSE_LAST : 0)
+                | (response.isFailed() ? RESPONSE_FAILED : 0)
+                | (response.isGrouped() ? RESPONSE_GROUPED : 0);
+        out.writeVarint(flags);
+        out.writeVarint(response.getErrorCode());
+        if (response.isGrouped()) {
+            List<String> correlationIds = response.getCorrelationIds();
+            out.writeVarint(correlationIds.size());
+            correlationIds.forEach(out::writeString);
+        } else {
+            out.writeString(response.getCorrelationId());
+        }
+        writeBody(out, response.getBody());
+        return out.toByteArray();
+    }
+
+    @Override
+    public Response decodeResponse(byte[] bytes) {
+        if (!isBinary(bytes)) {
+            return jsonCodec.decodeResponse(bytes);
+        }
+        FrameReader in = new FrameReader(bytes, KIND_RESPONSE);
+        int flags = in.readVarint();
+        int errorCode = in.readVarint();
+        Response.Builder<Body> builder = Response.newBuilder();
+        if ((flags & RESPONSE_GROUPED) != 0) {
+            int size = in.readVarint();
+            List<String> correlationIds = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                correlationIds.add(in.readString());
+            }
+            builder.withCorrelationIds(correlationIds);
+        } else {
+            builder.withCorrelationId(in.readString());
+        }
+        builder.withBody(readBody(in))
+                .withLast((flags & RESPONSE_LAST) != 0);
+        return (flags & RESPONSE_FAILED) != 0 ? builder.buildFailed(errorCode) : builder.buildSuccess();
+    }
+
+    private void writeBody(FrameWriter out, Body body) {
+        if (body == null) {
+            out.writeVarint(0);
+            return;
+        }
+        out.writeVarint(body.getAction().ordinal() + 1);
+        out.writeBytes(body instanceof Event
+                ? ((Event) body).getSerializedBodyBytes(gson)
+                : gson.toJson(body, Body.class).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Body readBody(FrameReader in) {
+        int action = in.readVarint() - 1;
+        if (action < 0) {
+            return null;
+        }
+        int length = in.readVarint();
+        return readBody(in.bytes, in.skip(length), length, action);
+    }
+
+    private Body readBody(byte[] bytes, int offset, int length, int action) {
+        try (JsonReader reader = JsonRpcCodec.reader(bytes, offset, length)) {
+            return jsonCodec.readBody(reader, action);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    private static final class FrameWriter {
+        private byte[] buf = new byte[256];
+        private int pos;
+
+        private FrameWriter(byte kind) {
+            buf[pos++] = MAGIC;
+            buf[pos++] = VERSION;
+            buf[pos++] = kind;
+        }
+
+        private void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        private void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length + 1);
+            writeRaw(bytes);
+        }
+
+        private void writeBytes(byte[] bytes) {
+            writeVarint(bytes.length);
+            writeRaw(bytes);
+        }
+
+        private void writeRaw(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        private void ensure(int length) {
+            if (pos + length > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + length));
+            }
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static final class FrameReader {
+        private final byte[] bytes;
+        private int pos;
+
+        private FrameReader(byte[] bytes, byte kind) {
+            if (bytes.length < 3) {
+                throw new IllegalArgumentException("Binary RPC frame is truncated");
+            }
+            if (bytes[1] != VERSION) {
+                throw new IllegalArgumentException("Unsupported binary RPC frame version " + bytes[1]);
+            }
+            if (bytes[2] != kind) {
+                throw new IllegalArgumentException("Unexpected binary RPC frame kind " + bytes[2]);
+            }
+            this.bytes = bytes;
+            this.pos = 3;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                if (pos >= bytes.length) {
+                    throw new IllegalArgumentException("Binary RPC frame is truncated");
+                }
+                byte b = bytes[pos++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint in binary RPC frame");
+        }
+
+        private String readString() {
+            int length = readVarint();
+            if (length == 0) {
+                return null;
+            }
+            int offset = skip(length - 1);
+            return new String(bytes, offset, length - 1, StandardCharsets.UTF_8);
+        }
+
+        private int skip(int length) {
+            int offset = pos;
+            if (length < 0 || offset + length > bytes.length) {
+                throw new IllegalArgumentException("Binary RPC frame is truncated");
+            }
+            pos += length;
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.devicehive.shim.kafka.serializer;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.ResponseJsonWriter;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestType;
+import com.devicehive.shim.api.Response;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntFunction;
+
+/**
+ * Default codec, writes messages as JSON. Frames produced by {@link BinaryRpcCodec} are decoded as well.
+ * Messages are parsed straight from the record bytes, without copying them into a string.
+ * Request body is only deserialized on first {@link Request#getBody()} call: decoding reads its action id
+ * and skips the rest, so that request could be dispatched by {@link Request#getAction()} first.
+ * When body types are given, body is bound directly to the class of its action, otherwise it is read
+ * by the polymorphic {@link Body} adapter of the Gson instance.
+ * Envelopes of requests are written as binary batch frames holding JSON frames of the requests.
+ */
+public class JsonRpcCodec implements RpcCodec {
+
+    private final Gson gson;
+    private final IntFunction<Class<? extends Body>> bodyTypes;
+    private final BinaryRpcCodec binaryCodec;
+
+    public JsonRpcCodec(Gson gson) {
+        this(gson, null);
+    }
+
+    /**
+     * @param bodyTypes resolves body class by action id, must match subtypes registered in the Gson instance
+     */
+    public JsonRpcCodec(Gson gson, IntFunction<Class<? extends Body>> bodyTypes) {
+        this.gson = gson;
+        this.bodyTypes = bodyTypes;
+        this.binaryCodec = new BinaryRpcCodec(this);
+    }
+
+    JsonRpcCodec(Gson gson, IntFunction<Class<? extends Body>> bodyTypes, BinaryRpcCodec binaryCodec) {
+        this.gson = gson;
+        this.bodyTypes = bodyTypes;
+        this.binaryCodec = binaryCodec;
+    }
+
+    Gson getGson() {
+        return gson;
+    }
+
+    @Override
+    public byte[] encodeRequest(Request request) {
+        if (request.getType() == RequestType.batch) {
+            return BinaryRpcCodec.encodeBatch(this, request.getBatch());
+        }
+        request.getBody(); // body of decoded request may be not deserialized yet, Gson reads the field directly
+        return gson.toJson(request).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public Request decodeRequest(byte[] bytes) {
+        if (BinaryRpcCodec.isBinary(bytes)) {
+            return binaryCodec.decodeRequest(bytes);
+        }
+        try (JsonReader in = reader(bytes)) {
+            Request.Builder<Body> builder = Request.newBuilder();
+            int action = -1;
+            String replyTo = null;
+            RequestType type = RequestType.clientRequest;
+
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "b":
+                        action = readAction(in);
+                        break;
+                    case "cId":
+                        builder.withCorrelationId(nextString(in));
+                        break;
+                    case "pK":
+                        builder.withPartitionKey(nextString(in));
+                        break;
+                    case "sre":
+                        builder.withSingleReply(in.nextBoolean());
+                        break;
+                    case "rTo":
+                        replyTo = nextString(in);
+                        break;
+                    case "t":
+                        type = RequestType.values()[in.nextInt()];
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+
+            if (action >= 0) {
+                int bodyAction = action;
+                builder.withLazyBody(Action.values()[action], () -> readBody(bytes, bodyAction));
+            }
+            Request request = builder.build();
+            request.setReplyTo(replyTo);
+            request.setType(type);
+            return request;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        } catch (IllegalStateException | NumberFormatException | IndexOutOfBoundsException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    @Override
+    public byte[] encodeResponse(Response response) {
+        return ResponseJsonWriter.toJsonBytes(gson, response);
+    }
+
+    @Override
+    public Response decodeResponse(byte[] bytes) {
+        if (BinaryRpcCodec.isBinary(bytes)) {
+            return binaryCodec.decodeResponse(bytes);
+        }
+        try (JsonReader in = reader(bytes)) {
+            return gson.fromJson(in, Response.class);
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        }
+    }
+
+    /**
+     * Reads action id of request body, skipping the rest of it. Returns -1 for null body.
+     */
+    private static int readAction(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return -1;
+        }
+        int action = -1;
+        in.beginObject();
+        while (in.hasNext()) {
+            if ("a".equals(in.nextName())) {
+                action = in.nextInt();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return action;
+    }
+
+    /**
+     * Binds request body directly to its concrete type, bypassing the label lookup of the polymorphic adapter.
+     */
+    private Body readBody(byte[] bytes, int action) {
+        try (JsonReader in = reader(bytes)) {
+            in.beginObject();
+            while (in.hasNext()) {
+                if ("b".equals(in.nextName())) {
+                    return readBody(in, action);
+                }
+                in.skipValue();
+            }
+            return null;
+        } catch (IOException e) {
+            throw new JsonIOException(e);
+        } catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    Body readBody(JsonReader in, int action) throws IOException {
+        Class<? extends Body> type = bodyTypes != null ? bodyTypes.apply(action) : null;
+        if (type == null) {
+            type = Body.class;
+        }
+        return gson.getAdapter(type).read(in);
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+
+    static JsonReader reader(byte[] bytes) {
+        return reader(bytes, 0, bytes.length);
+    }
+
+    static JsonReader reader(byte[] bytes, int offset, int length) {
+        return new JsonReader(new InputStreamReader(new ByteArrayInputStream(bytes, offset, length), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,56 @@
+package com.devicehive.shim.kafka.serializer;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.GsonFactory;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.google.gson.Gson;
+
+/**
+ * Wire format of RPC messages exchanged through Kafka.
+ * Every codec must be able to decode frames written by any other codec, so that codec could be switched
+ * with a rolling restart.
+ */
+public interface RpcCodec {
+
+    byte[] encodeRequest(Request request);
+
+    Request decodeRequest(byte[] bytes);
+
+    byte[] encodeResponse(Response response);
+
+    Response decodeResponse(byte[] bytes);
+
+    /**
+     * Creates codec by name for Gson instance created by {@link GsonFactory}.
+     */
+    static RpcCodec forName(String name, Gson gson) {
+        switch (name) {
+            case "json":
+                return new JsonRpcCodec(gson, GsonFactory::getBodyType);
+            case "binary":
+                return new BinaryRpcCodec(gson, GsonFactory::getBodyType);
+            default:
+                throw new IllegalArgumentException("Unknown RPC codec: " + name);
+        }
+    }
+}
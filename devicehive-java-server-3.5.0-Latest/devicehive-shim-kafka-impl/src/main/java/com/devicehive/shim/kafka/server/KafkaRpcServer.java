@@ -31,10 +31,15 @@ import org.slf4j.LoggerFactory;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+/**
+ * Consumes requests and hands them over to workers, either to a worker pool sharing one ring buffer
+ * or to {@link PartitionAffineWorkers}, which handle requests of each device on a single worker.
+ */
 public class KafkaRpcServer implements RpcServer {
     private static final Logger logger = LoggerFactory.getLogger(KafkaRpcServer.class);
 
     private WorkerPool<ServerEvent> workerPool;
+    private PartitionAffineWorkers affineWorkers;
     private RequestConsumer requestConsumer;
     private ServerEventHandler eventHandler;
     private int workerThreads;
@@ -47,9 +52,23 @@ public class KafkaRpcServer implements RpcServer {
         this.workerThreads = workerThreads;
     }
 
+    public KafkaRpcServer(PartitionAffineWorkers affineWorkers, RequestConsumer requestConsumer, ServerEventHandler eventHandler) {
+        this.affineWorkers = affineWorkers;
+        this.requestConsumer = requestConsumer;
+        this.eventHandler = eventHandler;
+        this.workerThreads = affineWorkers.size();
+    }
+
     @Override
     public void start() {
         final ExecutorService execService = Executors.newFixedThreadPool(workerThreads);
+        if (affineWorkers != null) {
+            affineWorkers.start(execService);
+            logger.info("LMAX Disruptor started with {} partition affine workers. Buffer size: {}",
+                    affineWorkers.size(), affineWorkers.get(0).getBufferSize());
+            requestConsumer.startConsumers(affineWorkers);
+            return;
+        }
         RingBuffer<ServerEvent> ringBuffer = workerPool.start(execService);
         logger.info("LMAX Disruptor started. Buffer size: {}", ringBuffer.getBufferSize());
         requestConsumer.startConsumers(ringBuffer);
@@ -58,7 +77,11 @@ public class KafkaRpcServer implements RpcServer {
     @Override
     public void shutdown() {
         requestConsumer.shutdownConsumers();
-        workerPool.drainAndHalt();
+        if (affineWorkers != null) {
+            affineWorkers.drainAndHalt();
+        } else {
+            workerPool.drainAndHalt();
+        }
     }
 
     @Override
@@ -0,0 +1,125 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.model.rpc.ErrorResponse;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.server.MessageDispatcher;
+import com.lmax.disruptor.RingBuffer;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides what happens to consumed requests that do not fit into the ring buffer they are routed to.
+ * Requests of sheddable actions are answered at once with {@link #OVERLOADED_ERROR_CODE}, other requests stay
+ * in Kafka: their partition is rewound to the first of them and paused until the ring buffer has at least
+ * {@code resumeCapacity} of its size free again. Paused consumers keep polling, so they are not evicted
+ * from the group while workers catch up.
+ */
+public class OverloadPolicy {
+
+    public static final int OVERLOADED_ERROR_CODE = 503;
+    public static final long DEFAULT_PAUSED_POLL_TIMEOUT_MS = 100;
+    public static final double DEFAULT_RESUME_CAPACITY = 0.5;
+
+    private final MessageDispatcher dispatcher;
+    private final Set<Action> sheddable;
+    private final double resumeCapacity;
+    private final long pausedPollTimeoutMs;
+
+    private final AtomicLong shedCount = new AtomicLong();
+    private final AtomicLong pauseCount = new AtomicLong();
+    private final AtomicInteger pausedPartitions = new AtomicInteger();
+
+    /**
+     * Policy which never sheds requests and only pauses partitions.
+     */
+    public OverloadPolicy() {
+        this(null, Collections.emptyList(), DEFAULT_RESUME_CAPACITY, DEFAULT_PAUSED_POLL_TIMEOUT_MS);
+    }
+
+    /**
+     * @param dispatcher     sends responses to shed requests
+     * @param shedActions    names of sheddable actions, name ending with '*' matches all actions with that prefix
+     * @param resumeCapacity free fraction of the ring buffer required to resume paused partitions
+     */
+    public OverloadPolicy(MessageDispatcher dispatcher, Collection<String> shedActions, double resumeCapacity,
+                          long pausedPollTimeoutMs) {
+        this.dispatcher = dispatcher;
+        this.sheddable = Action.matching(shedActions);
+        this.resumeCapacity = resumeCapacity;
+        this.pausedPollTimeoutMs = pausedPollTimeoutMs;
+    }
+
+    public boolean isSheddable(Request request) {
+        final Action action = request.getAction();
+        return action != null && sheddable.contains(action);
+    }
+
+    public void shed(Request request) {
+        shedCount.incrementAndGet();
+        final Response response = Response.newBuilder()
+                .withBody(new ErrorResponse("Server is overloaded, try again later"))
+                .withCorrelationId(request.getCorrelationId())
+                .withLast(request.isSingleReplyExpected())
+                .buildFailed(OVERLOADED_ERROR_CODE);
+        dispatcher.send(request.getReplyTo(), response);
+    }
+
+    public boolean canResume(RingBuffer<ServerEvent> ringBuffer) {
+        return ringBuffer.remainingCapacity() >= ringBuffer.getBufferSize() * resumeCapacity;
+    }
+
+    public long getPausedPollTimeout() {
+        return pausedPollTimeoutMs;
+    }
+
+    void paused(int partitions) {
+        pauseCount.addAndGet(partitions);
+        pausedPartitions.addAndGet(partitions);
+    }
+
+    void resumed(int partitions) {
+        pausedPartitions.addAndGet(-partitions);
+    }
+
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    /**
+     * Returns how many times partitions were paused because of full ring buffer.
+     */
+    public long getPauseCount() {
+        return pauseCount.get();
+    }
+
+    public int getPausedPartitions() {
+        return pausedPartitions.get();
+    }
+}
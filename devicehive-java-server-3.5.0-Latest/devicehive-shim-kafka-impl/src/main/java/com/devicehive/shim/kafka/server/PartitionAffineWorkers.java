@@ -0,0 +1,163 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Workers with a ring buffer of their own. Requests are routed by hash of their partition key, so that requests
+ * of one device are always handled by the same worker in the order they were consumed, without any locking.
+ * Kafka keeps requests of a device in one partition, which is read by a single consumer, so with a single
+ * consumer thread every ring has a single producer. Requests without partition key are spread round robin.
+ */
+public class PartitionAffineWorkers implements RequestRouter {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionAffineWorkers.class);
+
+    private static final long DRAIN_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final List<RingBuffer<ServerEvent>> rings;
+    private final List<BatchEventProcessor<ServerEvent>> processors;
+    private final List<AtomicBoolean> exited;
+    private final AtomicInteger unkeyed = new AtomicInteger();
+
+    public PartitionAffineWorkers(WorkHandler<ServerEvent>[] handlers, ProducerType producerType, int bufferSize,
+                                  Supplier<WaitStrategy> waitStrategy) {
+        this.rings = new ArrayList<>(handlers.length);
+        this.processors = new ArrayList<>(handlers.length);
+        this.exited = new ArrayList<>(handlers.length);
+        for (WorkHandler<ServerEvent> handler : handlers) {
+            RingBuffer<ServerEvent> ring = RingBuffer.create(producerType, ServerEvent::new, bufferSize, waitStrategy.get());
+            BatchEventProcessor<ServerEvent> processor = new BatchEventProcessor<>(ring, ring.newBarrier(),
+                    (event, sequence, endOfBatch) -> handler.onEvent(event));
+            processor.setExceptionHandler(new LoggingExceptionHandler());
+            ring.addGatingSequences(processor.getSequence());
+            rings.add(ring);
+            processors.add(processor);
+            exited.add(new AtomicBoolean());
+        }
+    }
+
+    public void start(Executor executor) {
+        for (int i = 0; i < processors.size(); i++) {
+            final BatchEventProcessor<ServerEvent> processor = processors.get(i);
+            final AtomicBoolean processorExited = exited.get(i);
+            executor.execute(() -> {
+                try {
+                    processor.run();
+                } finally {
+                    processorExited.set(true);
+                }
+            });
+        }
+    }
+
+    /**
+     * Waits until every published request is handled and stops workers.
+     */
+    public void drainAndHalt() {
+        drainAndHalt(DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits until every published request is handled or the timeout elapses, and stops workers.
+     * Workers which have exited are not waited for.
+     *
+     * @return true if every published request was handled
+     */
+    public boolean drainAndHalt(long timeout, TimeUnit unit) {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean drained = true;
+        for (int i = 0; i < processors.size(); i++) {
+            final BatchEventProcessor<ServerEvent> processor = processors.get(i);
+            final RingBuffer<ServerEvent> ring = rings.get(i);
+            while (processor.getSequence().get() < ring.getCursor()) {
+                if (exited.get(i).get() || System.nanoTime() - deadline >= 0) {
+                    logger.warn("Worker {} stopped with {} requests not handled", i,
+                            ring.getCursor() - processor.getSequence().get());
+                    drained = false;
+                    break;
+                }
+                Thread.yield();
+            }
+            processor.halt();
+        }
+        return drained;
+    }
+
+    @Override
+    public int size() {
+        return rings.size();
+    }
+
+    @Override
+    public int route(Request request) {
+        final String key = request.getPartitionKey();
+        if (key == null) {
+            return Math.floorMod(unkeyed.getAndIncrement(), rings.size());
+        }
+        final int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), rings.size());
+    }
+
+    @Override
+    public RingBuffer<ServerEvent> get(int ring) {
+        return rings.get(ring);
+    }
+
+    /**
+     * Logs request which failed and lets the worker go on with the next one. Stopping the worker would leave
+     * its ring undrained, with partitions paused by {@link OverloadPolicy} never resumed.
+     */
+    private static class LoggingExceptionHandler implements ExceptionHandler<ServerEvent> {
+
+        @Override
+        public void handleEventException(Throwable ex, long sequence, ServerEvent event) {
+            logger.error("Error handling request {} at sequence {}", event.get(), sequence, ex);
+        }
+
+        @Override
+        public void handleOnStartException(Throwable ex) {
+            logger.error("Error starting worker", ex);
+        }
+
+        @Override
+        public void handleOnShutdownException(Throwable ex) {
+            logger.error("Error stopping worker", ex);
+        }
+    }
+}
@@ -23,6 +23,7 @@ package com.devicehive.shim.kafka.server;
 import com.devicehive.model.ServerEvent;
 import com.devicehive.shim.api.Request;
 import com.lmax.disruptor.RingBuffer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.common.serialization.Deserializer;
 import org.apache.kafka.common.serialization.StringDeserializer;
@@ -33,6 +34,7 @@ import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 public class RequestConsumer {
@@ -42,29 +44,76 @@ public class RequestConsumer {
     private Properties consumerProps;
     private int consumerThreads;
     private Deserializer<Request> deserializer;
+    private boolean batch;
+    private OverloadPolicy overloadPolicy;
+    private long metricsLogIntervalMs;
 
+    private RequestRouter router;
     private ExecutorService consumerExecutor;
     private List<RequestConsumerWorker> workers;
+    private ScheduledExecutorService metricsLogger;
 
     public RequestConsumer(String topic, Properties consumerProps, int consumerThreads, Deserializer<Request> deserializer) {
+        this(topic, consumerProps, consumerThreads, deserializer, false);
+    }
+
+    /**
+     * @param batch publish every poll result into the ring buffer as one batch instead of record by record
+     */
+    public RequestConsumer(String topic, Properties consumerProps, int consumerThreads, Deserializer<Request> deserializer,
+                           boolean batch) {
+        this(topic, consumerProps, consumerThreads, deserializer, batch, new OverloadPolicy());
+    }
+
+    /**
+     * @param overloadPolicy decides what to do with requests which do not fit into full ring buffer
+     */
+    public RequestConsumer(String topic, Properties consumerProps, int consumerThreads, Deserializer<Request> deserializer,
+                           boolean batch, OverloadPolicy overloadPolicy) {
         this.topic = topic;
         this.consumerProps = consumerProps;
         this.consumerThreads = consumerThreads;
         this.deserializer = deserializer;
+        this.batch = batch;
+        this.overloadPolicy = overloadPolicy;
+    }
+
+    /**
+     * Sets interval of logging ring buffer occupancy and overload counters once consumers are started, 0 disables it.
+     */
+    public void setMetricsLogInterval(long metricsLogIntervalMs) {
+        this.metricsLogIntervalMs = metricsLogIntervalMs;
     }
 
     public void startConsumers(RingBuffer<ServerEvent> ringBuffer) {
         assert ringBuffer != null;
+        startConsumers(RequestRouter.of(ringBuffer));
+    }
+
+    public void startConsumers(RequestRouter router) {
+        assert router != null;
 
+        this.router = router;
         workers = new ArrayList<>(consumerThreads);
         consumerExecutor = Executors.newFixedThreadPool(consumerThreads);
         CountDownLatch latch = new CountDownLatch(consumerThreads);
+        boolean manualCommit = !Boolean.parseBoolean(String.valueOf(
+                consumerProps.getOrDefault(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "true")));
         for (int i = 0; i < consumerThreads; i++) {
             KafkaConsumer<String, Request> consumer = new KafkaConsumer<>(consumerProps, new StringDeserializer(), deserializer);
-            RequestConsumerWorker worker = new RequestConsumerWorker(this.topic, consumer, ringBuffer, latch);
+            RequestConsumerWorker worker = new RequestConsumerWorker(this.topic, consumer, router, latch, batch, manualCommit,
+                    overloadPolicy);
             consumerExecutor.submit(worker);
             workers.add(worker);
         }
+        if (metricsLogIntervalMs > 0) {
+            metricsLogger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "rpc-server-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            metricsLogger.scheduleAtFixedRate(this::logMetrics, metricsLogIntervalMs, metricsLogIntervalMs, TimeUnit.MILLISECONDS);
+        }
         try {
             latch.await();
             logger.info("RpcServer request consumers started");
@@ -73,7 +122,43 @@ public class RequestConsumer {
         }
     }
 
+    /**
+     * Returns number of requests waiting in ring buffers to be handled by workers. Counted from published and
+     * handled sequences, since remaining capacity of a single producer ring is only up to date on the producer thread.
+     */
+    public long getRingOccupancy() {
+        long occupancy = 0;
+        if (router != null) {
+            for (int i = 0; i < router.size(); i++) {
+                RingBuffer<ServerEvent> ring = router.get(i);
+                occupancy += Math.max(0, ring.getCursor() - ring.getMinimumGatingSequence());
+            }
+        }
+        return occupancy;
+    }
+
+    public OverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    private void logMetrics() {
+        try {
+            long capacity = 0;
+            for (int i = 0; i < router.size(); i++) {
+                capacity += router.get(i).getBufferSize();
+            }
+            logger.info("RpcServer ring buffers hold {} of {} requests, {} requests shed, {} partitions paused, {} pauses in total",
+                    getRingOccupancy(), capacity, overloadPolicy.getShedCount(), overloadPolicy.getPausedPartitions(),
+                    overloadPolicy.getPauseCount());
+        } catch (Exception e) {
+            logger.error("Unable to log RpcServer metrics", e);
+        }
+    }
+
     public void shutdownConsumers() {
+        if (metricsLogger != null) {
+            metricsLogger.shutdownNow();
+        }
         workers.forEach(RequestConsumerWorker::shutdown);
         consumerExecutor.shutdown();
         try {
@@ -22,26 +22,225 @@ package com.devicehive.shim.kafka.server;
 
 import com.devicehive.model.ServerEvent;
 import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestType;
 import com.devicehive.shim.kafka.ConsumerWorker;
 import com.lmax.disruptor.RingBuffer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
-
+/**
+ * Publishes consumed requests into ring buffers chosen by the router. Requests are never published into
+ * a full ring buffer: they are either shed or left in Kafka according to {@link OverloadPolicy}, so that
+ * the consumer keeps polling instead of blocking on the ring buffer.
+ */
 public class RequestConsumerWorker extends ConsumerWorker<Request> {
+    private static final Logger logger = LoggerFactory.getLogger(RequestConsumerWorker.class);
+
+    private RequestRouter router;
+    private boolean batch;
+    private OverloadPolicy overloadPolicy;
 
-    private RingBuffer<ServerEvent> ringBuffer;
+    /**
+     * Paused partitions with the index of the ring buffer which was full when they were paused.
+     */
+    private final Map<TopicPartition, Integer> paused = new HashMap<>();
 
-    RequestConsumerWorker(String topic, KafkaConsumer<String, Request> consumer,
-                          RingBuffer<ServerEvent> ringBuffer, CountDownLatch latch) {
-        super(topic, consumer, latch);
-        this.ringBuffer = ringBuffer;
+    RequestConsumerWorker(String topic, KafkaConsumer<String, Request> consumer, RequestRouter router,
+                          CountDownLatch latch, boolean batch, boolean manualCommit, OverloadPolicy overloadPolicy) {
+        super(topic, consumer, latch, manualCommit);
+        this.router = router;
+        this.batch = batch;
+        this.overloadPolicy = overloadPolicy;
+    }
+
+    /**
+     * Hands over requests partition by partition. In batch mode claims one contiguous range of sequences
+     * per ring buffer the poll result is routed to, and publishes the whole range at once.
+     * Requests routed to the same ring buffer keep the order they were polled in.
+     * When ring buffer has no room for a request, which may not be shed, partition of the request is rewound
+     * to it and paused, and the rest of its records is skipped. Envelopes of requests packed by the client
+     * are unpacked and handed over as a whole.
+     */
+    @Override
+    public void process(ConsumerRecords<String, Request> records) {
+        final int[] claimed = new int[router.size()];
+        final List<List<Request>> routed = new ArrayList<>(batch ? router.size() : 0);
+        if (batch) {
+            for (int i = 0; i < router.size(); i++) {
+                routed.add(new ArrayList<>());
+            }
+        }
+        for (TopicPartition partition : records.partitions()) {
+            for (ConsumerRecord<String, Request> record : records.records(partition)) {
+                final Request request = record.value();
+                if (request.getType() == RequestType.batch) {
+                    if (!handOver(partition, record.offset(), request.getBatch(), claimed, routed)) {
+                        break;
+                    }
+                    continue;
+                }
+                final int ring = router.route(request);
+                if (router.get(ring).remainingCapacity() <= claimed[ring]) {
+                    if (overloadPolicy.isSheddable(request)) {
+                        overloadPolicy.shed(request);
+                        continue;
+                    }
+                    pause(partition, record.offset(), ring);
+                    break;
+                }
+                handOver(request, ring, claimed, routed);
+            }
+        }
+        for (int i = 0; i < routed.size(); i++) {
+            publish(router.get(i), routed.get(i));
+        }
     }
 
     @Override
     public void process(ConsumerRecord<String, Request> record) {
-        ringBuffer.publishEvent((serverEvent, sequence, response) -> serverEvent.set(response), record.value());
+        final Request request = record.value();
+        if (request.getType() == RequestType.batch) {
+            request.getBatch().forEach(r -> publish(router.get(router.route(r)), r));
+        } else {
+            publish(router.get(router.route(request)), request);
+        }
+    }
+
+    private void handOver(Request request, int ring, int[] claimed, List<List<Request>> routed) {
+        if (batch) {
+            routed.get(ring).add(request);
+            claimed[ring]++;
+        } else {
+            publish(router.get(ring), request);
+        }
+    }
+
+    /**
+     * Hands over requests of an envelope. When ring buffers have no room for all of them, sheddable requests
+     * are shed only if that leaves room for the rest, otherwise partition is paused at the envelope,
+     * so that no request of the envelope is handed over or answered twice. Returns false if partition was paused.
+     */
+    private boolean handOver(TopicPartition partition, long offset, List<Request> requests, int[] claimed,
+                             List<List<Request>> routed) {
+        final int[] rings = new int[requests.size()];
+        for (int i = 0; i < rings.length; i++) {
+            rings[i] = router.route(requests.get(i));
+        }
+        final boolean shed = lackingRing(requests, rings, claimed, false) >= 0;
+        if (shed) {
+            final int ring = lackingRing(requests, rings, claimed, true);
+            if (ring >= 0) {
+                pause(partition, offset, ring);
+                return false;
+            }
+        }
+        for (int i = 0; i < rings.length; i++) {
+            final Request request = requests.get(i);
+            if (shed && overloadPolicy.isSheddable(request)) {
+                overloadPolicy.shed(request);
+            } else {
+                handOver(request, rings[i], claimed, routed);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns index of a ring buffer without room for its share of the envelope, or -1 if every share fits.
+     * Share larger than the whole ring buffer never fits, so it is published waiting for workers instead.
+     */
+    private int lackingRing(List<Request> requests, int[] rings, int[] claimed, boolean skipSheddable) {
+        final int[] needed = new int[router.size()];
+        for (int i = 0; i < rings.length; i++) {
+            if (!skipSheddable || !overloadPolicy.isSheddable(requests.get(i))) {
+                needed[rings[i]]++;
+            }
+        }
+        for (int ring = 0; ring < needed.length; ring++) {
+            final RingBuffer<ServerEvent> ringBuffer = router.get(ring);
+            if (needed[ring] > 0 && needed[ring] <= ringBuffer.getBufferSize()
+                    && ringBuffer.remainingCapacity() < claimed[ring] + needed[ring]) {
+                return ring;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Resumes paused partitions, whose ring buffer has been drained enough, and forgets partitions
+     * revoked by rebalance.
+     */
+    @Override
+    protected void beforePoll() {
+        if (paused.isEmpty()) {
+            return;
+        }
+        final KafkaConsumer<String, Request> consumer = getConsumer();
+        final Set<TopicPartition> assignment = consumer.assignment();
+        final List<TopicPartition> resumed = new ArrayList<>();
+        int revoked = 0;
+        for (Iterator<Map.Entry<TopicPartition, Integer>> it = paused.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<TopicPartition, Integer> entry = it.next();
+            if (!assignment.contains(entry.getKey())) {
+                revoked++;
+                it.remove();
+            } else if (overloadPolicy.canResume(router.get(entry.getValue()))) {
+                resumed.add(entry.getKey());
+                it.remove();
+            }
+        }
+        if (!resumed.isEmpty()) {
+            consumer.resume(resumed);
+            logger.info("Resumed partitions {}, requests shed so far: {}", resumed, overloadPolicy.getShedCount());
+        }
+        overloadPolicy.resumed(resumed.size() + revoked);
+    }
+
+    @Override
+    protected long getPollTimeout() {
+        return paused.isEmpty() ? super.getPollTimeout() : overloadPolicy.getPausedPollTimeout();
+    }
+
+    private void pause(TopicPartition partition, long offset, int ring) {
+        final KafkaConsumer<String, Request> consumer = getConsumer();
+        consumer.seek(partition, offset);
+        consumer.pause(Collections.singletonList(partition));
+        paused.put(partition, ring);
+        overloadPolicy.paused(1);
+        logger.warn("Ring buffer {} is full, paused partition {} at offset {}", ring, partition, offset);
+    }
+
+    private static void publish(RingBuffer<ServerEvent> ringBuffer, Request request) {
+        ringBuffer.publishEvent((serverEvent, sequence, response) -> serverEvent.set(response), request);
+    }
+
+    /**
+     * Ring buffer has room for all requests unless other consumer threads publish into it concurrently,
+     * in which case claiming a range waits until workers free it.
+     */
+    private static void publish(RingBuffer<ServerEvent> ringBuffer, List<Request> requests) {
+        int published = 0;
+        while (published < requests.size()) {
+            final int size = Math.min(requests.size() - published, ringBuffer.getBufferSize());
+            final long hi = ringBuffer.next(size);
+            final long lo = hi - size + 1;
+            for (long sequence = lo; sequence <= hi; sequence++) {
+                ringBuffer.get(sequence).set(requests.get(published++));
+            }
+            ringBuffer.publish(lo, hi);
+        }
     }
 }
@@ -0,0 +1,62 @@
+package com.devicehive.shim.kafka.server;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.lmax.disruptor.RingBuffer;
+
+/**
+ * Chooses ring buffer each incoming request is published to.
+ */
+public interface RequestRouter {
+
+    int size();
+
+    /**
+     * Returns index of the ring buffer the request has to be published to.
+     */
+    int route(Request request);
+
+    RingBuffer<ServerEvent> get(int ring);
+
+    /**
+     * Routes all requests to the single ring buffer, e.g. one drained by a worker pool.
+     */
+    static RequestRouter of(RingBuffer<ServerEvent> ringBuffer) {
+        return new RequestRouter() {
+            @Override
+            public int size() {
+                return 1;
+            }
+
+            @Override
+            public int route(Request request) {
+                return 0;
+            }
+
+            @Override
+            public RingBuffer<ServerEvent> get(int ring) {
+                return ringBuffer;
+            }
+        };
+    }
+}
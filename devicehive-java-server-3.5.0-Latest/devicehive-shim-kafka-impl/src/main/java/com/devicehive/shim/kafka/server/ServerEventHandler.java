@@ -31,17 +31,24 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public class ServerEventHandler implements MessageDispatcher, WorkHandler<ServerEvent> {
     private static final Logger logger = LoggerFactory.getLogger(ServerEventHandler.class);
 
     private RequestHandler requestHandler;
     private Producer<String, Response> responseProducer;
+    private Executor replyExecutor;
 
-    public ServerEventHandler(RequestHandler requestHandler, Producer<String, Response> responseProducer) {
+    /**
+     * @param replyExecutor sends responses which were not ready when the handler returned
+     */
+    public ServerEventHandler(RequestHandler requestHandler, Producer<String, Response> responseProducer,
+                              Executor replyExecutor) {
         this.requestHandler = requestHandler;
         this.responseProducer = responseProducer;
+        this.replyExecutor = replyExecutor;
     }
 
     @Override
@@ -49,7 +56,7 @@ public class ServerEventHandler implements MessageDispatcher, WorkHandler<Server
         final Request request = event.get();
         final String replyTo = request.getReplyTo();
 
-        Response response;
+        CompletableFuture<Response> response;
 
         switch (request.getType()) {
             case clientRequest:
@@ -58,34 +65,55 @@ public class ServerEventHandler implements MessageDispatcher, WorkHandler<Server
                 break;
             case ping:
                 logger.info("Ping request received from {}", replyTo);
-                response = Response.newBuilder().buildSuccess();
+                response = CompletableFuture.completedFuture(Response.newBuilder().buildSuccess());
                 break;
             default:
                 logger.warn("Unknown type of request received {} from client with topic {}, correlationId = {}",
                         request.getType(), replyTo, request.getCorrelationId());
-                response = Response.newBuilder()
-                        .buildFailed(404);
+                response = CompletableFuture.completedFuture(Response.newBuilder()
+                        .buildFailed(404));
         }
 
+        // responses completed later, e.g. by the hazelcast write batcher, are sent from the reply executor,
+        // so that serialization and send do not hold up the thread completing them
+        CompletableFuture<Void> replied = response.isDone()
+                ? response.thenAccept(r -> reply(request, r))
+                : response.thenAcceptAsync(r -> reply(request, r), replyExecutor);
+        replied.whenComplete((v, e) -> {
+            if (e != null) {
+                logger.error("Unable to reply to request (correlationId = {}, replyTo = {})",
+                        request.getCorrelationId(), replyTo, e);
+            }
+        });
+    }
+
+    private void reply(Request request, Response response) {
+        final String replyTo = request.getReplyTo();
         // set correlationId explicitly to prevent missing it in request
         response.setCorrelationId(request.getCorrelationId());
         send(replyTo, response);
     }
 
-    private Response handleClientRequest(Request request) {
-        Response response;
+    private CompletableFuture<Response> handleClientRequest(Request request) {
+        CompletableFuture<Response> response;
         try {
-            response = Optional.ofNullable(requestHandler.handle(request))
-                    .orElseThrow(() -> new NullPointerException("Response must not be null"));
+            response = requestHandler.handleAsync(request);
         } catch (Exception e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        return response.handle((r, e) -> {
+            if (e == null && r != null) {
+                return r;
+            }
             logger.error("Unexpected exception occurred during request handling (action='{}', handler='{}')",
-                    request.getBody().getAction().name(), requestHandler.getClass().getCanonicalName(), e);
+                    request.getAction().name(), requestHandler.getClass().getCanonicalName(),
+                    e != null ? e : new NullPointerException("Response must not be null"));
 
-            response = Response.newBuilder()
+            return Response.newBuilder()
                     .withLast(request.isSingleReplyExpected())
                     .buildFailed(500);
-        }
-        return response;
+        });
     }
 
     @Override
@@ -0,0 +1,162 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.OrderedCallbackExecutor;
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.kafka.fixture.TestResponseBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OrderedCallbackDispatchTest {
+
+    private static final int PRODUCERS = 64;
+    private static final int RESPONSES_PER_PRODUCER = 500;
+
+    private RequestResponseMatcher matcher;
+
+    @Before
+    public void setUp() {
+        matcher = new RequestResponseMatcher(RequestResponseMatcher.DEFAULT_RESPONSE_TIMEOUT_MS, new OrderedCallbackExecutor(8));
+    }
+
+    @After
+    public void tearDown() {
+        matcher.shutdown();
+    }
+
+    @Test
+    public void shouldDeliverResponsesOfEachSubscriptionInOrder() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(PRODUCERS * RESPONSES_PER_PRODUCER);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        List<String> correlationIds = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            String correlationId = subscribe(received, delivered);
+            correlationIds.add(correlationId);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (String correlationId : correlationIds) {
+            Thread producer = new Thread(() -> {
+                await(start);
+                for (int seq = 0; seq < RESPONSES_PER_PRODUCER; seq++) {
+                    matcher.offerResponse(event(correlationId, seq));
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue(delivered.await(1, TimeUnit.MINUTES));
+        for (String correlationId : correlationIds) {
+            assertInOrder(received.get(correlationId), RESPONSES_PER_PRODUCER);
+        }
+    }
+
+    @Test
+    public void shouldDeliverResponsesOfSharedSubscriptionInOrderOfSubmission() throws Exception {
+        CountDownLatch delivered = new CountDownLatch(PRODUCERS * RESPONSES_PER_PRODUCER);
+        Map<String, List<Integer>> received = new ConcurrentHashMap<>();
+        String correlationId = subscribe(received, delivered);
+        Object submission = new Object();
+        int[] next = new int[1];
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int i = 0; i < PRODUCERS; i++) {
+            Thread producer = new Thread(() -> {
+                await(start);
+                for (int j = 0; j < RESPONSES_PER_PRODUCER; j++) {
+                    // the lock only defines the expected order, executor is not aware of it
+                    synchronized (submission) {
+                        matcher.offerResponse(event(correlationId, next[0]++));
+                    }
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        assertTrue(delivered.await(1, TimeUnit.MINUTES));
+        assertInOrder(received.get(correlationId), PRODUCERS * RESPONSES_PER_PRODUCER);
+    }
+
+    private String subscribe(Map<String, List<Integer>> received, CountDownLatch delivered) {
+        Request request = Request.newBuilder().withSingleReply(false).build();
+        List<Integer> sequence = new ArrayList<>();
+        received.put(request.getCorrelationId(), sequence);
+        matcher.addRequestCallback(request, response -> {
+            // callbacks of one subscription never run concurrently, so the list is not synchronized
+            sequence.add(Integer.valueOf(response.getBody().cast(TestResponseBody.class).getResponseBody()));
+            if (ThreadLocalRandom.current().nextInt(100) == 0) {
+                Thread.yield();
+            }
+            delivered.countDown();
+        });
+        return request.getCorrelationId();
+    }
+
+    private static Response event(String correlationId, int seq) {
+        return Response.newBuilder()
+                .withBody(new TestResponseBody(String.valueOf(seq)))
+                .withCorrelationId(correlationId)
+                .withLast(false)
+                .buildSuccess();
+    }
+
+    private static void assertInOrder(List<Integer> sequence, int expectedSize) {
+        assertEquals(expectedSize, sequence.size());
+        for (int i = 0; i < sequence.size(); i++) {
+            assertEquals(Integer.valueOf(i), sequence.get(i));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.adapters.RuntimeTypeAdapterFactory;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.kafka.fixture.TestRequestBody;
+import com.devicehive.shim.kafka.serializer.RequestSerializer;
+import com.devicehive.shim.kafka.server.OverloadPolicy;
+import com.devicehive.shim.kafka.server.PartitionAffineWorkers;
+import com.devicehive.shim.kafka.server.RequestConsumer;
+import com.devicehive.test.rule.KafkaEmbeddedRule;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OverloadPolicyTest {
+    private static final Logger logger = LoggerFactory.getLogger(OverloadPolicyTest.class);
+
+    private static final String RECORD_TOPIC = "overload_record_request_topic";
+    private static final String BATCH_TOPIC = "overload_batch_request_topic";
+    private static final int PARTITIONS = 3;
+    private static final int DEVICES = 30;
+    private static final int REQUESTS = 1000;
+    private static final int BUFFER_SIZE = 64;
+
+    @ClassRule
+    public static KafkaEmbeddedRule kafkaRule = new KafkaEmbeddedRule(true, PARTITIONS, RECORD_TOPIC, BATCH_TOPIC);
+
+    private static Gson gson;
+
+    /**
+     * Body of a request, which may be shed.
+     */
+    public static class ListRequestBody extends Body {
+        public ListRequestBody() {
+            super(Action.LIST_NETWORK_REQUEST);
+        }
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        RuntimeTypeAdapterFactory<Body> requestFactory = RuntimeTypeAdapterFactory.of(Body.class, "a")
+                .registerSubtype(TestRequestBody.class, Action.EMPTY.ordinal())
+                .registerSubtype(ListRequestBody.class, Action.LIST_NETWORK_REQUEST.ordinal());
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(requestFactory)
+                .create();
+
+        try (Producer<String, Request> producer = new KafkaProducer<>(kafkaRule.getProducerProperties(),
+                new StringSerializer(), new RequestSerializer(gson))) {
+            for (int i = 0; i < REQUESTS; i++) {
+                Request request = Request.newBuilder()
+                        .withBody(i % 2 == 0 ? new TestRequestBody(String.valueOf(i)) : new ListRequestBody())
+                        .withPartitionKey("device-" + i % DEVICES)
+                        .withSingleReply(true)
+                        .build();
+                request.setReplyTo("response_topic");
+                producer.send(new ProducerRecord<>(RECORD_TOPIC, request.getPartitionKey(), request));
+                producer.send(new ProducerRecord<>(BATCH_TOPIC, request.getPartitionKey(), request));
+            }
+            producer.flush();
+        }
+    }
+
+    @Test
+    public void shouldPausePartitionsAndShedListRequestsWhenRingBufferIsFullRecordByRecord() throws Exception {
+        consume(RECORD_TOPIC, false);
+    }
+
+    @Test
+    public void shouldPausePartitionsAndShedListRequestsWhenRingBufferIsFullInBatches() throws Exception {
+        consume(BATCH_TOPIC, true);
+    }
+
+    /**
+     * Workers are blocked until the consumer pauses partitions, so that ring buffer stays full. Every request,
+     * which may not be shed, must be handled exactly once and in order of its device, every list request
+     * must be either handled or answered with 503, and committed offsets must cover all requests.
+     */
+    private static void consume(String topic, boolean batch) throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        ConcurrentHashMap<String, AtomicLong> lastSequence = new ConcurrentHashMap<>();
+        AtomicLong reordered = new AtomicLong();
+        AtomicLong handled = new AtomicLong();
+        AtomicLong handledList = new AtomicLong();
+        WorkHandler<ServerEvent> handler = event -> {
+            gate.await();
+            Body body = event.get().getBody();
+            if (body instanceof TestRequestBody) {
+                long sequence = Long.parseLong(((TestRequestBody) body).getBody());
+                long previous = lastSequence.computeIfAbsent(event.get().getPartitionKey(), k -> new AtomicLong(-1))
+                        .getAndSet(sequence);
+                if (previous >= sequence) {
+                    reordered.incrementAndGet();
+                }
+            } else {
+                handledList.incrementAndGet();
+            }
+            handled.incrementAndGet();
+        };
+        ExecutorService workers = Executors.newFixedThreadPool(PARTITIONS);
+        PartitionAffineWorkers affineWorkers = new PartitionAffineWorkers(new WorkHandler[]{handler, handler, handler},
+                ProducerType.SINGLE, BUFFER_SIZE, BlockingWaitStrategy::new);
+        affineWorkers.start(workers);
+
+        AtomicLong overloaded = new AtomicLong();
+        OverloadPolicy policy = new OverloadPolicy((to, response) -> {
+            assertEquals(OverloadPolicy.OVERLOADED_ERROR_CODE, response.getErrorCode());
+            assertTrue(response.isLast());
+            overloaded.incrementAndGet();
+        }, Collections.singletonList("LIST_*"), 0.5, 20);
+
+        Properties consumerProps = consumerProps(topic);
+        RequestConsumer requestConsumer = new RequestConsumer(topic, consumerProps, 1, new RequestSerializer(gson), batch, policy);
+        requestConsumer.setMetricsLogInterval(100);
+        requestConsumer.startConsumers(affineWorkers);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+        while (policy.getPausedPartitions() < PARTITIONS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(PARTITIONS, policy.getPausedPartitions());
+        assertTrue(requestConsumer.getRingOccupancy() >= BUFFER_SIZE);
+        gate.countDown();
+
+        while (handled.get() + overloaded.get() < REQUESTS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        requestConsumer.shutdownConsumers();
+        affineWorkers.drainAndHalt();
+        workers.shutdown();
+
+        logger.info("{} requests: {} handled, {} shed, partitions paused {} times",
+                REQUESTS, handled.get(), policy.getShedCount(), policy.getPauseCount());
+        assertEquals(REQUESTS, handled.get() + overloaded.get());
+        assertEquals(REQUESTS / 2, handled.get() - handledList.get());
+        assertEquals(0, reordered.get());
+        assertEquals(overloaded.get(), policy.getShedCount());
+        assertTrue(policy.getShedCount() > 0);
+        assertEquals(REQUESTS, committed(topic, consumerProps));
+    }
+
+    private static long committed(String topic, Properties consumerProps) {
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(consumerProps, new StringDeserializer(), new StringDeserializer())) {
+            long total = 0;
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                OffsetAndMetadata offset = consumer.committed(new TopicPartition(topic, partition));
+                total += offset != null ? offset.offset() : 0;
+            }
+            return total;
+        }
+    }
+
+    private static Properties consumerProps(String group) {
+        Properties consumerProps = kafkaRule.getConsumerProperties();
+        consumerProps.put(ConsumerConfig.GROUP_ID_CONFIG, group);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        return consumerProps;
+    }
+}
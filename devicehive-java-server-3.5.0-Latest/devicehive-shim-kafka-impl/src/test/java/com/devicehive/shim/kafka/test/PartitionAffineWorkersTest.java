@@ -0,0 +1,265 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.DeviceCommand;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.model.rpc.CommandInsertRequest;
+import com.devicehive.model.rpc.CommandUpdateRequest;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.kafka.fixture.TestRequestBody;
+import com.devicehive.shim.kafka.server.PartitionAffineWorkers;
+import com.devicehive.shim.kafka.server.RequestRouter;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.FatalExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.WorkerPool;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionAffineWorkersTest {
+    private static final Logger logger = LoggerFactory.getLogger(PartitionAffineWorkersTest.class);
+
+    private static final int WORKERS = 3;
+    private static final int DEVICES = 64;
+    private static final int REQUESTS = 300000;
+    private static final int BUFFER_SIZE = 1024;
+
+    /**
+     * Handler checking that requests of every device arrive in order and never run concurrently.
+     */
+    private static class DeviceStateHandler implements WorkHandler<ServerEvent> {
+        private final ConcurrentHashMap<String, AtomicLong> lastSequence;
+        private final ConcurrentHashMap<String, AtomicInteger> running;
+        private final AtomicLong reordered;
+        private final AtomicLong overlapped;
+        private final CountDownLatch handled;
+
+        private DeviceStateHandler(ConcurrentHashMap<String, AtomicLong> lastSequence, ConcurrentHashMap<String, AtomicInteger> running,
+                                   AtomicLong reordered, AtomicLong overlapped, CountDownLatch handled) {
+            this.lastSequence = lastSequence;
+            this.running = running;
+            this.reordered = reordered;
+            this.overlapped = overlapped;
+            this.handled = handled;
+        }
+
+        @Override
+        public void onEvent(ServerEvent event) {
+            Request request = event.get();
+            String deviceId = request.getPartitionKey();
+            AtomicInteger inFlight = running.computeIfAbsent(deviceId, k -> new AtomicInteger());
+            if (inFlight.incrementAndGet() > 1) {
+                overlapped.incrementAndGet();
+            }
+            long sequence = Long.parseLong(((TestRequestBody) request.getBody()).getBody());
+            long previous = lastSequence.computeIfAbsent(deviceId, k -> new AtomicLong(-1)).getAndSet(sequence);
+            if (previous > sequence) {
+                reordered.incrementAndGet();
+            }
+            inFlight.decrementAndGet();
+            handled.countDown();
+        }
+    }
+
+    @Test
+    public void shouldHandleRequestsOfDeviceInOrderOnOneWorker() throws Exception {
+        Result affine = run(true);
+
+        assertEquals(0, affine.reordered);
+        assertEquals(0, affine.overlapped);
+    }
+
+    @Test
+    public void shouldCompareThroughputWithWorkerPool() throws Exception {
+        run(false);
+        run(true);
+        Result pool = run(false);
+        Result affine = run(true);
+
+        logger.info("{} workers: worker pool {} requests/sec ({} reordered, {} overlapped), partition affine {} requests/sec",
+                WORKERS, Math.round(pool.rate), pool.reordered, pool.overlapped, Math.round(affine.rate));
+        assertTrue(affine.rate > 0);
+    }
+
+    @Test
+    public void shouldHandleInsertAndUpdateOfCommandOnOneWorker() throws Exception {
+        ConcurrentHashMap<String, Set<Integer>> workersOfDevice = new ConcurrentHashMap<>();
+        CountDownLatch handled = new CountDownLatch(DEVICES * 2);
+        WorkHandler<ServerEvent>[] handlers = IntStream.range(0, WORKERS)
+                .mapToObj(i -> (WorkHandler<ServerEvent>) event -> {
+                    workersOfDevice.computeIfAbsent(event.get().getPartitionKey(), k -> ConcurrentHashMap.newKeySet()).add(i);
+                    handled.countDown();
+                })
+                .toArray(WorkHandler[]::new);
+        PartitionAffineWorkers affineWorkers = new PartitionAffineWorkers(handlers, ProducerType.SINGLE, BUFFER_SIZE, BlockingWaitStrategy::new);
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        affineWorkers.start(workers);
+
+        for (int i = 0; i < DEVICES; i++) {
+            DeviceCommand command = new DeviceCommand();
+            command.setId((long) i);
+            command.setDeviceId("device-" + i);
+            Request insert = Request.newBuilder()
+                    .withBody(new CommandInsertRequest(command))
+                    .withPartitionKey(command.getDeviceId())
+                    .build();
+            Request update = Request.newBuilder()
+                    .withBody(new CommandUpdateRequest(command))
+                    .withPartitionKey(command.getDeviceId())
+                    .build();
+            for (Request request : new Request[]{insert, update}) {
+                affineWorkers.get(affineWorkers.route(request)).publishEvent((event, sequence, r) -> event.set(r), request);
+            }
+        }
+
+        assertTrue(handled.await(10, TimeUnit.SECONDS));
+        assertEquals(DEVICES, workersOfDevice.size());
+        workersOfDevice.forEach((deviceId, workerIds) -> assertEquals(deviceId, 1, workerIds.size()));
+        assertTrue(affineWorkers.drainAndHalt(10, TimeUnit.SECONDS));
+        workers.shutdown();
+    }
+
+    @Test
+    public void shouldKeepHandlingRequestsAfterHandlerFailure() throws Exception {
+        AtomicInteger handled = new AtomicInteger();
+        WorkHandler<ServerEvent> failingOnFirst = event -> {
+            if (handled.getAndIncrement() == 0) {
+                throw new IllegalStateException("Handler failed");
+            }
+        };
+        PartitionAffineWorkers affineWorkers = new PartitionAffineWorkers(new WorkHandler[]{failingOnFirst},
+                ProducerType.SINGLE, BUFFER_SIZE, BlockingWaitStrategy::new);
+        ExecutorService workers = Executors.newSingleThreadExecutor();
+        affineWorkers.start(workers);
+        publish(affineWorkers, 3);
+
+        assertTrue(affineWorkers.drainAndHalt(10, TimeUnit.SECONDS));
+        assertEquals(3, handled.get());
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shouldStopWaitingForBusyWorkerAfterTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        WorkHandler<ServerEvent> blocked = event -> release.await();
+        PartitionAffineWorkers affineWorkers = new PartitionAffineWorkers(new WorkHandler[]{blocked},
+                ProducerType.SINGLE, BUFFER_SIZE, BlockingWaitStrategy::new);
+        ExecutorService workers = Executors.newSingleThreadExecutor();
+        affineWorkers.start(workers);
+        publish(affineWorkers, 2);
+
+        assertFalse(affineWorkers.drainAndHalt(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        workers.shutdown();
+        assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    private static void publish(RequestRouter router, int count) {
+        for (int i = 0; i < count; i++) {
+            Request request = Request.newBuilder()
+                    .withBody(new TestRequestBody(String.valueOf(i)))
+                    .withPartitionKey("device")
+                    .build();
+            router.get(router.route(request)).publishEvent((event, sequence, r) -> event.set(r), request);
+        }
+    }
+
+    private static class Result {
+        private double rate;
+        private long reordered;
+        private long overlapped;
+    }
+
+    /**
+     * Publishes requests of {@link #DEVICES} devices round robin from a single producer thread.
+     */
+    private static Result run(boolean affine) throws Exception {
+        ConcurrentHashMap<String, AtomicLong> lastSequence = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicLong reordered = new AtomicLong();
+        AtomicLong overlapped = new AtomicLong();
+        CountDownLatch handled = new CountDownLatch(REQUESTS);
+        DeviceStateHandler[] handlers = IntStream.range(0, WORKERS)
+                .mapToObj(i -> new DeviceStateHandler(lastSequence, running, reordered, overlapped, handled))
+                .toArray(DeviceStateHandler[]::new);
+
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        RequestRouter router;
+        PartitionAffineWorkers affineWorkers = null;
+        WorkerPool<ServerEvent> workerPool = null;
+        if (affine) {
+            affineWorkers = new PartitionAffineWorkers(handlers, ProducerType.SINGLE, BUFFER_SIZE, BlockingWaitStrategy::new);
+            affineWorkers.start(workers);
+            router = affineWorkers;
+        } else {
+            RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, BUFFER_SIZE, new BlockingWaitStrategy());
+            workerPool = new WorkerPool<>(ringBuffer, ringBuffer.newBarrier(), new FatalExceptionHandler(), handlers);
+            ringBuffer.addGatingSequences(workerPool.getWorkerSequences());
+            workerPool.start(workers);
+            router = RequestRouter.of(ringBuffer);
+        }
+
+        Request[] requests = new Request[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            requests[i] = Request.newBuilder()
+                    .withBody(new TestRequestBody(String.valueOf(i)))
+                    .withPartitionKey("device-" + i % DEVICES)
+                    .build();
+        }
+
+        long started = System.nanoTime();
+        for (Request request : requests) {
+            router.get(router.route(request)).publishEvent((event, sequence, r) -> event.set(r), request);
+        }
+        assertTrue(handled.await(1, TimeUnit.MINUTES));
+        Result result = new Result();
+        result.rate = REQUESTS * 1e9 / (System.nanoTime() - started);
+        result.reordered = reordered.get();
+        result.overlapped = overlapped.get();
+
+        if (affine) {
+            affineWorkers.drainAndHalt();
+        } else {
+            workerPool.drainAndHalt();
+        }
+        workers.shutdown();
+        return result;
+    }
+}
@@ -0,0 +1,225 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.json.adapters.RuntimeTypeAdapterFactory;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestType;
+import com.devicehive.shim.kafka.client.KafkaRpcClient;
+import com.devicehive.shim.kafka.fixture.TestRequestBody;
+import com.devicehive.shim.kafka.serializer.BinaryRpcCodec;
+import com.devicehive.shim.kafka.serializer.JsonRpcCodec;
+import com.devicehive.shim.kafka.serializer.RequestSerializer;
+import com.devicehive.shim.kafka.serializer.RpcCodec;
+import com.devicehive.shim.kafka.server.PartitionAffineWorkers;
+import com.devicehive.shim.kafka.server.RequestConsumer;
+import com.devicehive.test.rule.KafkaEmbeddedRule;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestBatchingTest {
+    private static final Logger logger = LoggerFactory.getLogger(RequestBatchingTest.class);
+
+    private static final String RECORD_TOPIC = "unbatched_request_topic";
+    private static final String BATCH_TOPIC = "batched_request_topic";
+    private static final String WARM_UP_TOPIC = "warm_up_request_topic";
+    private static final String MIXED_TOPIC = "mixed_request_topic";
+    private static final int PARTITIONS = 3;
+    private static final int DEVICES = 100;
+    private static final int REQUESTS = 50000;
+    private static final int WORKERS = 3;
+    private static final int UNKEYED_EVERY = 10;
+
+    @ClassRule
+    public static KafkaEmbeddedRule kafkaRule = new KafkaEmbeddedRule(true, PARTITIONS, RECORD_TOPIC, BATCH_TOPIC, WARM_UP_TOPIC, MIXED_TOPIC);
+
+    private static Gson gson;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        RuntimeTypeAdapterFactory<Body> requestFactory = RuntimeTypeAdapterFactory.of(Body.class, "a")
+                .registerSubtype(TestRequestBody.class, Action.EMPTY.ordinal());
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(requestFactory)
+                .create();
+    }
+
+    @Test
+    public void shouldDecodeEnvelopeWrittenByEitherCodec() throws Exception {
+        List<Request> requests = IntStream.range(0, 10)
+                .mapToObj(i -> Request.newBuilder()
+                        .withBody(new TestRequestBody("request-" + i))
+                        .withPartitionKey("device-" + i)
+                        .withSingleReply(i % 2 == 0)
+                        .build())
+                .collect(Collectors.toList());
+        requests.forEach(request -> request.setReplyTo("response_topic"));
+
+        RpcCodec json = new JsonRpcCodec(gson);
+        RpcCodec binary = new BinaryRpcCodec(gson);
+        for (RpcCodec writer : new RpcCodec[]{json, binary}) {
+            byte[] bytes = writer.encodeRequest(Request.batch(requests));
+            for (RpcCodec reader : new RpcCodec[]{json, binary}) {
+                Request envelope = reader.decodeRequest(bytes);
+                assertEquals(RequestType.batch, envelope.getType());
+                assertEquals(requests, envelope.getBatch());
+            }
+        }
+    }
+
+    @Test
+    public void shouldDeliverPackedRequestsInOrderOfDevice() throws Exception {
+        consume(WARM_UP_TOPIC, 100, false);
+        Result unbatched = consume(RECORD_TOPIC, 1, false);
+        Result batched = consume(BATCH_TOPIC, 100, false);
+
+        logger.info("{} requests: {} requests/sec in {} records unbatched, {} requests/sec in {} records batched",
+                REQUESTS, Math.round(unbatched.rate), unbatched.records, Math.round(batched.rate), batched.records);
+        assertEquals(REQUESTS, unbatched.records);
+        assertTrue(batched.records < REQUESTS / 10);
+    }
+
+    @Test
+    public void shouldDeliverRequestsWithoutPartitionKey() throws Exception {
+        Result mixed = consume(MIXED_TOPIC, 100, true);
+
+        assertTrue(mixed.records < REQUESTS / 2);
+    }
+
+    private static class Result {
+        private double rate;
+        private long records;
+    }
+
+    /**
+     * Pushes requests of {@link #DEVICES} devices round robin from a single thread and waits until all of them
+     * are handled by partition affine workers, which check that requests of every device arrive in order.
+     * With {@code withUnkeyed} every {@link #UNKEYED_EVERY}th request is built without partition key.
+     */
+    private static Result consume(String topic, int batchMaxRequests, boolean withUnkeyed) throws Exception {
+        ConcurrentHashMap<String, AtomicLong> lastSequence = new ConcurrentHashMap<>();
+        AtomicLong reordered = new AtomicLong();
+        CountDownLatch handled = new CountDownLatch(REQUESTS);
+        WorkHandler<ServerEvent> handler = event -> {
+            Request request = event.get();
+            long sequence = Long.parseLong(((TestRequestBody) request.getBody()).getBody());
+            long previous = lastSequence.computeIfAbsent(request.getPartitionKey(), k -> new AtomicLong(-1))
+                    .getAndSet(sequence);
+            if (previous >= sequence) {
+                reordered.incrementAndGet();
+            }
+            handled.countDown();
+        };
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        PartitionAffineWorkers affineWorkers = new PartitionAffineWorkers(new WorkHandler[]{handler, handler, handler},
+                ProducerType.SINGLE, 1024, BlockingWaitStrategy::new);
+        affineWorkers.start(workers);
+        Properties consumerProps = consumerProps(topic);
+        RequestConsumer requestConsumer = new RequestConsumer(topic, consumerProps, 1, new RequestSerializer(gson), true);
+        requestConsumer.startConsumers(affineWorkers);
+
+        Request[] requests = new Request[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            Request.Builder<TestRequestBody> builder = Request.<TestRequestBody>newBuilder()
+                    .withBody(new TestRequestBody(String.valueOf(i)));
+            if (!withUnkeyed || i % UNKEYED_EVERY != 0) {
+                builder.withPartitionKey("device-" + i % DEVICES);
+            }
+            requests[i] = builder.build();
+        }
+        RequestResponseMatcher matcher = new RequestResponseMatcher();
+        Producer<String, Request> producer = new KafkaProducer<>(kafkaRule.getProducerProperties(),
+                new StringSerializer(), new RequestSerializer(gson));
+        KafkaRpcClient client = new KafkaRpcClient(topic, "response_topic", producer, matcher, null, batchMaxRequests, 5);
+
+        long started = System.nanoTime();
+        for (Request request : requests) {
+            client.push(request);
+        }
+        assertTrue(handled.await(2, TimeUnit.MINUTES));
+        Result result = new Result();
+        result.rate = REQUESTS * 1e9 / (System.nanoTime() - started);
+        result.records = records(topic, consumerProps);
+
+        producer.close();
+        matcher.shutdown();
+        requestConsumer.shutdownConsumers();
+        affineWorkers.drainAndHalt();
+        workers.shutdown();
+
+        assertEquals(0, reordered.get());
+        return result;
+    }
+
+    private static long records(String topic, Properties consumerProps) {
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(consumerProps, new StringDeserializer(), new StringDeserializer())) {
+            List<TopicPartition> partitions = new ArrayList<>();
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                partitions.add(new TopicPartition(topic, partition));
+            }
+            consumer.assign(partitions);
+            consumer.seekToEnd(partitions);
+            return partitions.stream().mapToLong(consumer::position).sum();
+        }
+    }
+
+    private static Properties consumerProps(String group) {
+        Properties consumerProps = kafkaRule.getConsumerProperties();
+        consumerProps.put(ConsumerConfig.GROUP_ID_CONFIG, group);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        return consumerProps;
+    }
+}
@@ -0,0 +1,165 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.adapters.RuntimeTypeAdapterFactory;
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.kafka.fixture.TestRequestBody;
+import com.devicehive.shim.kafka.fixture.TestResponseBody;
+import com.devicehive.shim.kafka.serializer.RequestSerializer;
+import com.devicehive.shim.kafka.server.RequestConsumer;
+import com.devicehive.test.rule.KafkaEmbeddedRule;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.FatalExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.WorkHandler;
+import com.lmax.disruptor.WorkerPool;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestConsumerThroughputTest {
+    private static final Logger logger = LoggerFactory.getLogger(RequestConsumerThroughputTest.class);
+
+    private static final String RECORD_TOPIC = "record_request_topic";
+    private static final String BATCH_TOPIC = "batch_request_topic";
+    private static final int PARTITIONS = 3;
+    private static final int REQUESTS = 20000;
+    private static final int WORKERS = 3;
+
+    @ClassRule
+    public static KafkaEmbeddedRule kafkaRule = new KafkaEmbeddedRule(true, PARTITIONS, RECORD_TOPIC, BATCH_TOPIC);
+
+    private static Gson gson;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        RuntimeTypeAdapterFactory<Body> requestFactory = RuntimeTypeAdapterFactory.of(Body.class, "a")
+                .registerSubtype(TestResponseBody.class, 0)
+                .registerSubtype(TestRequestBody.class, 1);
+        gson = new GsonBuilder()
+                .registerTypeAdapterFactory(requestFactory)
+                .create();
+
+        try (Producer<String, Request> producer = new KafkaProducer<>(kafkaRule.getProducerProperties(),
+                new StringSerializer(), new RequestSerializer(gson))) {
+            for (int i = 0; i < REQUESTS; i++) {
+                Request request = Request.newBuilder()
+                        .withBody(new TestRequestBody("request-" + i))
+                        .withPartitionKey("device-" + i % 100)
+                        .build();
+                producer.send(new ProducerRecord<>(RECORD_TOPIC, request.getPartitionKey(), request));
+                producer.send(new ProducerRecord<>(BATCH_TOPIC, request.getPartitionKey(), request));
+            }
+            producer.flush();
+        }
+    }
+
+    @Test
+    public void shouldConsumeMoreRequestsPerSecondInBatchMode() throws Exception {
+        consume(RECORD_TOPIC, false, "warm-up");
+        consume(BATCH_TOPIC, true, "warm-up");
+        double recordRate = consume(RECORD_TOPIC, false, "measured");
+        double batchRate = consume(BATCH_TOPIC, true, "measured");
+
+        logger.info("{} requests: {} requests/sec record by record, {} requests/sec in batches",
+                REQUESTS, Math.round(recordRate), Math.round(batchRate));
+    }
+
+    /**
+     * Consumes all requests of the topic by a single consumer of a new group with manual commit, so that
+     * no rebalance stalls the measurement, and returns requests
+     * handled per second, counted from the first handled request. Offsets committed by consumers must cover
+     * every request once they are shut down.
+     */
+    private static double consume(String topic, boolean batch, String round) throws Exception {
+        CountDownLatch handled = new CountDownLatch(REQUESTS);
+        AtomicLong firstHandled = new AtomicLong();
+        WorkHandler<ServerEvent> handler = event -> {
+            firstHandled.compareAndSet(0, System.nanoTime());
+            handled.countDown();
+        };
+        WorkHandler<ServerEvent>[] handlers = IntStream.range(0, WORKERS).mapToObj(i -> handler).toArray(WorkHandler[]::new);
+        RingBuffer<ServerEvent> ringBuffer = RingBuffer.createMultiProducer(ServerEvent::new, 1024, new BlockingWaitStrategy());
+        WorkerPool<ServerEvent> workerPool = new WorkerPool<>(ringBuffer, ringBuffer.newBarrier(), new FatalExceptionHandler(), handlers);
+        ringBuffer.addGatingSequences(workerPool.getWorkerSequences());
+        ExecutorService workers = Executors.newFixedThreadPool(WORKERS);
+        workerPool.start(workers);
+
+        Properties consumerProps = consumerProps(topic + "-" + round);
+        RequestConsumer requestConsumer = new RequestConsumer(topic, consumerProps, 1, new RequestSerializer(gson), batch);
+        requestConsumer.startConsumers(ringBuffer);
+        assertTrue(handled.await(2, TimeUnit.MINUTES));
+        double rate = REQUESTS * 1e9 / (System.nanoTime() - firstHandled.get());
+
+        requestConsumer.shutdownConsumers();
+        workerPool.drainAndHalt();
+        workers.shutdown();
+
+        assertEquals(REQUESTS, committed(topic, consumerProps));
+        return rate;
+    }
+
+    private static long committed(String topic, Properties consumerProps) {
+        try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(consumerProps, new StringDeserializer(), new StringDeserializer())) {
+            long total = 0;
+            for (int partition = 0; partition < PARTITIONS; partition++) {
+                OffsetAndMetadata offset = consumer.committed(new TopicPartition(topic, partition));
+                total += offset != null ? offset.offset() : 0;
+            }
+            return total;
+        }
+    }
+
+    private static Properties consumerProps(String group) {
+        Properties consumerProps = kafkaRule.getConsumerProperties();
+        consumerProps.put(ConsumerConfig.GROUP_ID_CONFIG, group);
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        consumerProps.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        return consumerProps;
+    }
+}
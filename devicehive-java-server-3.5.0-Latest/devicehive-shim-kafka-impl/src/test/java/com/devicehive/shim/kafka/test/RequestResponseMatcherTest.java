@@ -0,0 +1,218 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.api.RequestResponseMatcher;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.kafka.fixture.TestResponseBody;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RequestResponseMatcherTest {
+
+    private static final long RESPONSE_TIMEOUT_MS = 1000;
+
+    private RequestResponseMatcher matcher;
+
+    private final Map<String, BlockingQueue<Response>> received = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() {
+        matcher = new RequestResponseMatcher(RESPONSE_TIMEOUT_MS);
+    }
+
+    @After
+    public void tearDown() {
+        matcher.shutdown();
+    }
+
+    @Test
+    public void shouldDeliverGroupedResponseToEveryListedCallback() throws Exception {
+        List<String> grouped = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            grouped.add(register(false));
+        }
+        String other = register(false);
+
+        matcher.offerResponse(Response.newBuilder()
+                .withBody(new TestResponseBody("event"))
+                .withCorrelationIds(grouped)
+                .withLast(false)
+                .buildSuccess());
+
+        for (String correlationId : grouped) {
+            Response response = received.get(correlationId).poll(10, TimeUnit.SECONDS);
+            assertNotNull(response);
+            assertEquals(correlationId, response.getCorrelationId());
+            assertFalse(response.isGrouped());
+            assertFalse(response.isLast());
+            assertFalse(response.isFailed());
+            assertEquals("event", response.getBody().cast(TestResponseBody.class).getResponseBody());
+        }
+        assertNull(received.get(other).poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(4, matcher.getPendingCount());
+    }
+
+    @Test
+    public void shouldKeepFailedStatusOfGroupedResponse() throws Exception {
+        List<String> grouped = Arrays.asList(register(false), register(false));
+
+        matcher.offerResponse(Response.newBuilder()
+                .withBody(new TestResponseBody("error"))
+                .withCorrelationIds(grouped)
+                .withLast(false)
+                .buildFailed(404));
+
+        for (String correlationId : grouped) {
+            Response response = received.get(correlationId).poll(10, TimeUnit.SECONDS);
+            assertNotNull(response);
+            assertTrue(response.isFailed());
+            assertEquals(404, response.getErrorCode());
+        }
+    }
+
+    @Test
+    public void shouldRemoveCallbacksOnLastGroupedResponseAndSkipUnknownIds() throws Exception {
+        String first = register(true);
+        String second = register(true);
+
+        matcher.offerResponse(Response.newBuilder()
+                .withBody(new TestResponseBody("reply"))
+                .withCorrelationIds(Arrays.asList(first, "unknown", second))
+                .withLast(true)
+                .buildSuccess());
+
+        for (String correlationId : Arrays.asList(first, second)) {
+            Response response = received.get(correlationId).poll(10, TimeUnit.SECONDS);
+            assertNotNull(response);
+            assertTrue(response.isLast());
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (matcher.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, matcher.getPendingCount());
+    }
+
+    @Test
+    public void shouldFailSingleReplyCallbackWithoutResponse() throws Exception {
+        long started = System.currentTimeMillis();
+        String correlationId = register(true);
+
+        Response response = received.get(correlationId).poll(RESPONSE_TIMEOUT_MS * 5, TimeUnit.MILLISECONDS);
+        assertNotNull(response);
+        // deadlines are rounded down to the 100 ms tick of the timing wheel
+        assertTrue(System.currentTimeMillis() - started >= RESPONSE_TIMEOUT_MS - 100);
+        assertEquals(correlationId, response.getCorrelationId());
+        assertTrue(response.isFailed());
+        assertTrue(response.isLast());
+        assertEquals(RequestResponseMatcher.TIMEOUT_ERROR_CODE, response.getErrorCode());
+        assertEquals(1, matcher.getExpiredCount());
+        assertEquals(0, matcher.getPendingCount());
+
+        matcher.offerResponse(reply(correlationId, true));
+        assertNull(received.get(correlationId).poll(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldNotExpireSubscriptionCallbacks() throws Exception {
+        String correlationId = register(false);
+
+        assertNull(received.get(correlationId).poll(RESPONSE_TIMEOUT_MS * 3, TimeUnit.MILLISECONDS));
+        assertEquals(0, matcher.getExpiredCount());
+        assertEquals(1, matcher.getPendingCount());
+
+        matcher.offerResponse(reply(correlationId, false));
+        Response response = received.get(correlationId).poll(10, TimeUnit.SECONDS);
+        assertNotNull(response);
+        assertFalse(response.isFailed());
+    }
+
+    @Test
+    public void shouldCancelExpiryWhenResponseArrivesInTime() throws Exception {
+        String answered = register(true);
+        String streamed = register(true);
+
+        matcher.offerResponse(reply(answered, true));
+        matcher.offerResponse(reply(streamed, false));
+        assertFalse(received.get(answered).poll(10, TimeUnit.SECONDS).isFailed());
+        assertFalse(received.get(streamed).poll(10, TimeUnit.SECONDS).isFailed());
+
+        // intermediate response does not cancel the deadline, the last one does
+        Response timeout = received.get(streamed).poll(RESPONSE_TIMEOUT_MS * 5, TimeUnit.MILLISECONDS);
+        assertNotNull(timeout);
+        assertEquals(RequestResponseMatcher.TIMEOUT_ERROR_CODE, timeout.getErrorCode());
+        assertNull(received.get(answered).poll(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        assertEquals(1, matcher.getExpiredCount());
+        assertEquals(0, matcher.getPendingCount());
+    }
+
+    @Test
+    public void shouldReportAgeOfOldestSingleReplyCallbackOnly() throws Exception {
+        register(false);
+        Thread.sleep(500);
+        String correlationId = register(true);
+        Thread.sleep(300);
+
+        // the age is looked up on the 100 ms tick of the timing wheel
+        long age = matcher.getOldestPendingAge();
+        assertTrue(age >= 100);
+        assertTrue(age < 500);
+
+        matcher.offerResponse(reply(correlationId, true));
+        assertNotNull(received.get(correlationId).poll(10, TimeUnit.SECONDS));
+        Thread.sleep(300);
+        assertEquals(0, matcher.getOldestPendingAge());
+    }
+
+    private static Response reply(String correlationId, boolean last) {
+        return Response.newBuilder()
+                .withBody(new TestResponseBody("reply"))
+                .withCorrelationId(correlationId)
+                .withLast(last)
+                .buildSuccess();
+    }
+
+    private String register(boolean singleReply) {
+        Request request = Request.newBuilder().withSingleReply(singleReply).build();
+        BlockingQueue<Response> responses = new LinkedBlockingQueue<>();
+        received.put(request.getCorrelationId(), responses);
+        matcher.addRequestCallback(request, responses::add);
+        return request.getCorrelationId();
+    }
+}
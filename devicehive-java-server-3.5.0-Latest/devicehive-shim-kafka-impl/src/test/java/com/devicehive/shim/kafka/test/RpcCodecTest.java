@@ -0,0 +1,232 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.json.adapters.RuntimeTypeAdapterFactory;
+import com.devicehive.shim.api.Action;
+import com.devicehive.shim.api.Body;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.RequestType;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.kafka.fixture.TestRequestBody;
+import com.devicehive.shim.kafka.serializer.BinaryRpcCodec;
+import com.devicehive.shim.kafka.serializer.JsonRpcCodec;
+import com.devicehive.shim.kafka.serializer.RpcCodec;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RpcCodecTest {
+
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapterFactory(RuntimeTypeAdapterFactory.of(Body.class, "a")
+                    .registerSubtype(TestRequestBody.class, Action.EMPTY.ordinal()))
+            .create();
+
+    private static final RpcCodec json = new JsonRpcCodec(gson);
+    private static final RpcCodec binary = new BinaryRpcCodec(gson);
+    private static final RpcCodec[] codecs = {json, binary};
+
+    @Test
+    public void shouldRoundTripRequestsBetweenAnyCodecs() throws Exception {
+        Request request = Request.newBuilder()
+                .withBody(new TestRequestBody("body é中"))
+                .withPartitionKey("device")
+                .withSingleReply(false)
+                .build();
+        request.setReplyTo("response_topic");
+        request.setType(RequestType.clientRequest);
+
+        for (RpcCodec writer : codecs) {
+            byte[] bytes = writer.encodeRequest(request);
+            for (RpcCodec reader : codecs) {
+                Request decoded = reader.decodeRequest(bytes);
+                assertEquals(request.getCorrelationId(), decoded.getCorrelationId());
+                assertEquals("device", decoded.getPartitionKey());
+                assertEquals("response_topic", decoded.getReplyTo());
+                assertFalse(decoded.isSingleReplyExpected());
+                assertEquals(RequestType.clientRequest, decoded.getType());
+                assertEquals(Action.EMPTY, decoded.getAction());
+                assertEquals("body é中", ((TestRequestBody) decoded.getBody()).getBody());
+            }
+        }
+    }
+
+    @Test
+    public void shouldRoundTripRequestsWithoutBody() throws Exception {
+        Request request = Request.newBuilder().build();
+        request.setType(RequestType.ping);
+        for (RpcCodec writer : codecs) {
+            for (RpcCodec reader : codecs) {
+                Request decoded = reader.decodeRequest(writer.encodeRequest(request));
+                assertEquals(RequestType.ping, decoded.getType());
+                assertNull(decoded.getAction());
+                assertNull(decoded.getBody());
+                assertNull(decoded.getReplyTo());
+            }
+        }
+    }
+
+    @Test
+    public void shouldRoundTripResponsesBetweenAnyCodecs() throws Exception {
+        Response success = Response.newBuilder()
+                .withBody(new TestRequestBody("result"))
+                .withCorrelationId("correlation")
+                .withLast(false)
+                .buildSuccess();
+        Response failure = Response.newBuilder()
+                .withCorrelationId("correlation")
+                .buildFailed(404);
+
+        for (RpcCodec writer : codecs) {
+            for (RpcCodec reader : codecs) {
+                Response decoded = reader.decodeResponse(writer.encodeResponse(success));
+                assertEquals("correlation", decoded.getCorrelationId());
+                assertFalse(decoded.isLast());
+                assertFalse(decoded.isFailed());
+                assertFalse(decoded.isGrouped());
+                assertEquals("result", ((TestRequestBody) decoded.getBody()).getBody());
+
+                decoded = reader.decodeResponse(writer.encodeResponse(failure));
+                assertTrue(decoded.isLast());
+                assertTrue(decoded.isFailed());
+                assertEquals(404, decoded.getErrorCode());
+                assertNull(decoded.getBody());
+            }
+        }
+    }
+
+    @Test
+    public void shouldRoundTripGroupedResponsesBetweenAnyCodecs() throws Exception {
+        Response grouped = Response.newBuilder()
+                .withBody(new TestRequestBody("event"))
+                .withCorrelationIds(Arrays.asList("first", "second", "third"))
+                .withLast(false)
+                .buildSuccess();
+
+        for (RpcCodec writer : codecs) {
+            for (RpcCodec reader : codecs) {
+                Response decoded = reader.decodeResponse(writer.encodeResponse(grouped));
+                assertTrue(decoded.isGrouped());
+                assertEquals(Arrays.asList("first", "second", "third"), decoded.getCorrelationIds());
+                assertNull(decoded.getCorrelationId());
+                assertEquals("event", ((TestRequestBody) decoded.getBody()).getBody());
+            }
+        }
+    }
+
+    @Test
+    public void shouldBindRequestBodyOnFirstAccess() throws Exception {
+        AtomicInteger resolved = new AtomicInteger();
+        RpcCodec[] lazyCodecs = {
+                new JsonRpcCodec(gson, action -> {
+                    resolved.incrementAndGet();
+                    return TestRequestBody.class;
+                }),
+                new BinaryRpcCodec(gson, action -> {
+                    resolved.incrementAndGet();
+                    return TestRequestBody.class;
+                })
+        };
+        Request request = Request.newBuilder().withBody(new TestRequestBody("lazy")).build();
+
+        for (RpcCodec writer : codecs) {
+            byte[] bytes = writer.encodeRequest(request);
+            for (RpcCodec reader : lazyCodecs) {
+                resolved.set(0);
+                Request decoded = reader.decodeRequest(bytes);
+                assertEquals(Action.EMPTY, decoded.getAction());
+                assertEquals(0, resolved.get());
+
+                assertEquals("lazy", ((TestRequestBody) decoded.getBody()).getBody());
+                assertEquals(1, resolved.get());
+                decoded.getBody();
+                assertEquals(1, resolved.get());
+            }
+        }
+
+        for (RpcCodec reader : lazyCodecs) {
+            Request decoded = reader.decodeRequest(binary.encodeRequest(request));
+            for (RpcCodec writer : codecs) {
+                Request reencoded = json.decodeRequest(writer.encodeRequest(decoded));
+                assertEquals("lazy", ((TestRequestBody) reencoded.getBody()).getBody());
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectTruncatedBinaryFrames() throws Exception {
+        Request request = Request.newBuilder()
+                .withBody(new TestRequestBody("body"))
+                .withPartitionKey("device")
+                .build();
+        request.setReplyTo("response_topic");
+        byte[] requestFrame = binary.encodeRequest(request);
+        byte[] responseFrame = binary.encodeResponse(Response.newBuilder()
+                .withBody(new TestRequestBody("result"))
+                .withCorrelationId("correlation")
+                .buildSuccess());
+
+        for (int length = 1; length < requestFrame.length; length++) {
+            byte[] truncated = Arrays.copyOf(requestFrame, length);
+            for (RpcCodec codec : codecs) {
+                assertRejected(() -> codec.decodeRequest(truncated).getBody());
+            }
+        }
+        for (int length = 1; length < responseFrame.length; length++) {
+            byte[] truncated = Arrays.copyOf(responseFrame, length);
+            for (RpcCodec codec : codecs) {
+                assertRejected(() -> codec.decodeResponse(truncated));
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectUnknownBinaryFrameVersion() throws Exception {
+        byte[] requestFrame = binary.encodeRequest(Request.newBuilder().withBody(new TestRequestBody("body")).build());
+        byte[] responseFrame = binary.encodeResponse(Response.newBuilder().withCorrelationId("correlation").buildSuccess());
+        requestFrame[1]++;
+        responseFrame[1]++;
+
+        for (RpcCodec codec : codecs) {
+            assertRejected(() -> codec.decodeRequest(requestFrame));
+            assertRejected(() -> codec.decodeResponse(responseFrame));
+        }
+    }
+
+    private static void assertRejected(Runnable decode) {
+        try {
+            decode.run();
+            fail("Malformed frame was decoded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
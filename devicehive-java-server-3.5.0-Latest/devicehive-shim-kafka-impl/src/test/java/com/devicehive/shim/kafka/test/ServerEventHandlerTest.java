@@ -0,0 +1,130 @@
+package com.devicehive.shim.kafka.test;
+
+/*
+ * #%L
+ * DeviceHive Shim Kafka Implementation
+ * %%
+ * Copyright (C) 2016 - 2017 DataArt
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.devicehive.model.ServerEvent;
+import com.devicehive.shim.api.Request;
+import com.devicehive.shim.api.Response;
+import com.devicehive.shim.api.server.RequestHandler;
+import com.devicehive.shim.kafka.fixture.TestRequestBody;
+import com.devicehive.shim.kafka.server.ServerEventHandler;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ServerEventHandlerTest {
+
+    private final MockProducer<String, Response> producer = new MockProducer<>(true, new StringSerializer(), new NoopSerializer());
+    private final ExecutorService replyPool = Executors.newSingleThreadExecutor();
+    private final AtomicInteger replyTasks = new AtomicInteger();
+    private final Executor replyExecutor = task -> {
+        replyTasks.incrementAndGet();
+        replyPool.execute(task);
+    };
+
+    @After
+    public void tearDown() {
+        replyPool.shutdownNow();
+    }
+
+    @Test
+    public void shouldReplyOnWorkerWhenResponseIsReady() throws Exception {
+        ServerEventHandler handler = new ServerEventHandler(request -> Response.newBuilder().buildSuccess(), producer, replyExecutor);
+        Request request = request();
+
+        handler.onEvent(event(request));
+
+        assertEquals(1, producer.history().size());
+        assertEquals(request.getCorrelationId(), producer.history().get(0).key());
+        assertEquals(0, replyTasks.get());
+    }
+
+    @Test
+    public void shouldReplyFromReplyExecutorWhenResponseCompletesLater() throws Exception {
+        CompletableFuture<Response> pending = new CompletableFuture<>();
+        ServerEventHandler handler = new ServerEventHandler(new RequestHandler() {
+            @Override
+            public Response handle(Request request) {
+                return pending.join();
+            }
+
+            @Override
+            public CompletableFuture<Response> handleAsync(Request request) {
+                return pending;
+            }
+        }, producer, replyExecutor);
+        Request request = request();
+
+        handler.onEvent(event(request));
+        assertTrue(producer.history().isEmpty());
+
+        pending.complete(Response.newBuilder().buildSuccess());
+        replyPool.shutdown();
+        assertTrue(replyPool.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(1, replyTasks.get());
+        assertEquals(1, producer.history().size());
+        assertEquals(request.getCorrelationId(), producer.history().get(0).key());
+    }
+
+    private static Request request() {
+        Request request = Request.newBuilder()
+                .withBody(new TestRequestBody("request"))
+                .build();
+        request.setReplyTo("response_topic");
+        return request;
+    }
+
+    private static ServerEvent event(Request request) {
+        ServerEvent event = new ServerEvent();
+        event.set(request);
+        return event;
+    }
+
+    private static class NoopSerializer implements Serializer<Response> {
+
+        @Override
+        public void configure(Map<String, ?> configs, boolean isKey) {
+        }
+
+        @Override
+        public byte[] serialize(String topic, Response data) {
+            return new byte[0];
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -68,7 +68,8 @@ java -server -Xms1g -Xmx2g -XX:+UseG1GC -XX:MaxGCPauseMillis=20 -XX:+DisableExpl
 -Dbatch.size="${DH_BATCH_SIZE:-98304}" \
 -Dbootstrap.servers="${DH_KAFKA_BOOTSTRAP_SERVERS}" \
 -Dcom.devicehive.log.level="${DH_LOG_LEVEL:-WARN}" \
--Denable.auto.commit="${DH_ENABLE_AUTO_COMMIT:-true}" \
+-Denable.auto.commit="${DH_ENABLE_AUTO_COMMIT:-false}" \
+-Deventbus.fanout.grouped="${DH_EVENTBUS_FANOUT_GROUPED:-false}" \
 -Dfetch.max.wait.ms="${DH_FETCH_MAX_WAIT_MS:-100}" \
 -Dfetch.min.bytes="${DH_FETCH_MIN_BYTES:-1}" \
 -Dhazelcast.cluster.members="${HC_MEMBERS}:${HC_PORT}" \
@@ -78,7 +79,11 @@ java -server -Xms1g -Xmx2g -XX:+UseG1GC -XX:MaxGCPauseMillis=20 -XX:+DisableExpl
 -Dproxy.worker.threads="${DH_WS_PROXY_BE_THREADS:-3}" \
 -Dreplication.factor="${DH_REPLICATION_FACTOR:-1}" \
 -Droot.log.level="${ROOT_LOG_LEVEL:-WARN}" \
+-Drpc.server.request-consumer.batch="${DH_RPC_SERVER_REQ_CONS_BATCH:-true}" \
 -Drpc.server.request-consumer.threads="${DH_RPC_SERVER_REQ_CONS_THREADS:-3}" \
+-Drpc.server.overload.shed-actions="${DH_RPC_SERVER_SHED_ACTIONS:-COUNT_*,LIST_*}" \
+-Drpc.server.metrics.log-interval-ms="${DH_RPC_SERVER_METRICS_LOG_INTERVAL_MS:-60000}" \
+-Drpc.server.worker.mode="${DH_RPC_SERVER_WORKER_MODE:-pool}" \
 -Drpc.server.worker.threads="${DH_RPC_SERVER_WORKER_THREADS:-3}" \
 -Dspring.datasource.url="jdbc:postgresql://${DH_POSTGRES_ADDRESS}:${DH_POSTGRES_PORT}/${DH_POSTGRES_DB}" \
 -Dspring.datasource.username="${DH_POSTGRES_USERNAME}" \
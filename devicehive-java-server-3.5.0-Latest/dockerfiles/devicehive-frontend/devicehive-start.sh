@@ -80,6 +80,9 @@ java -server -Xms1g -Xmx2g -XX:+UseG1GC -XX:MaxGCPauseMillis=20 -XX:+DisableExpl
 -Dproxy.worker.threads="${DH_WS_PROXY_THREADS:-3}" \
 -Dreplication.factor="${DH_REPLICATION_FACTOR:-1}" \
 -Droot.log.level="${ROOT_LOG_LEVEL:-WARN}" \
+-Drpc.client.batch.max-requests="${DH_RPC_CLIENT_BATCH_MAX_REQUESTS:-1}" \
+-Drpc.client.batch.linger-ms="${DH_RPC_CLIENT_BATCH_LINGER_MS:-5}" \
+-Drpc.client.coalesce.window-ms="${DH_RPC_CLIENT_COALESCE_WINDOW_MS:-0}" \
 -Drpc.client.response-consumer.threads="${DH_RPC_CLIENT_RES_CONS_THREADS:-3}" \
 -Dserver.context-path=/api \
 -Dserver.port=8080 \